@@ -21,6 +21,7 @@
   */
 package org.jboss.aop;
 
+import gnu.trove.TLongArrayList;
 import gnu.trove.TLongObjectHashMap;
 
 import java.lang.ref.WeakReference;
@@ -29,8 +30,10 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -64,9 +67,12 @@ import org.jboss.aop.joinpoint.MethodInvocation;
 import org.jboss.aop.joinpoint.MethodJoinpoint;
 import org.jboss.aop.metadata.ClassMetaDataBinding;
 import org.jboss.aop.metadata.ConstructorMetaData;
+import org.jboss.aop.metadata.CopyOnWriteMetaData;
 import org.jboss.aop.metadata.FieldMetaData;
 import org.jboss.aop.metadata.MethodMetaData;
 import org.jboss.aop.metadata.SimpleMetaData;
+import org.jboss.aop.pointcut.Pointcut;
+import org.jboss.aop.pointcut.PointcutExpression;
 import org.jboss.util.NotImplementedException;
 
 import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
@@ -120,10 +126,10 @@ public abstract class Advisor
    protected HashSet adviceBindings = new HashSet();
    protected ArrayList interfaceIntroductions = new ArrayList();
    protected ArrayList classMetaDataBindings = new ArrayList();
-   protected SimpleMetaData defaultMetaData = new SimpleMetaData();
+   protected SimpleMetaData defaultMetaData = new CopyOnWriteMetaData();
    protected MethodMetaData methodMetaData = new MethodMetaData();
    protected FieldMetaData fieldMetaData = new FieldMetaData();
-   protected SimpleMetaData classMetaData = new SimpleMetaData();
+   protected SimpleMetaData classMetaData = new CopyOnWriteMetaData();
    protected ConstructorMetaData constructorMetaData = new ConstructorMetaData();
    protected HashMap classAnnotations = new HashMap();
    protected AnnotationRepository annotations = new AnnotationRepository();
@@ -134,9 +140,15 @@ public abstract class Advisor
    protected HashMap adviceInterceptors = new HashMap();
    protected CopyOnWriteArraySet perInstanceAspectDefinitions = new CopyOnWriteArraySet();
    protected ConcurrentReaderHashMap perInstanceJoinpointAspectDefinitions = new ConcurrentReaderHashMap();
+   // AspectDefinition -> AspectSlot, by identity since redeployed definitions have the same name. Copied on write
+   private volatile Map aspectSlots = new IdentityHashMap();
+   private final Object aspectSlotLock = new Object();
+   private int aspectSlotGenerations;
 
    static Class cl = java.lang.String.class;
    protected TLongObjectHashMap advisedMethods = new TLongObjectHashMap();
+   // advisedMethods hashes by method name, rebuilt whenever advisedMethods is replaced or changes size
+   private volatile AdvisedMethodsByName advisedMethodsByName;
    // The method signatures are sorted at transformation and load time to
    // make sure the tables line up.
    protected TLongObjectHashMap methodInterceptors = new TLongObjectHashMap();
@@ -151,6 +163,9 @@ public abstract class Advisor
    /** @deprecated Use constructorInfos instead */
    protected Interceptor[][] constructionInterceptors;
    protected ConstructionInfo[] constructionInfos;
+
+   /** Incremented whenever the interceptor chains are rebuilt */
+   protected volatile int interceptorChainVersion;
    
    public Advisor(String name, AspectManager manager)
    {
@@ -458,6 +473,15 @@ public abstract class Advisor
       return name;
    }
 
+   /**
+    * Instance advisors use this to discard merged chains that were built on top
+    * of interceptor chains which have since been replaced
+    */
+   public int getInterceptorChainVersion()
+   {
+      return interceptorChainVersion;
+   }
+
    public final boolean hasAspects()
    {
       return doesHaveAspects;
@@ -553,6 +577,55 @@ public abstract class Advisor
       return perInstanceJoinpointAspectDefinitions;
    }
 
+   /**
+    * The per instance and per joinpoint aspects of the instances of this advisor are kept in
+    * arrays indexed by the slot of their definition. Slots are numbered per advisor, handed
+    * out on first use, and reused once their definition has been undeployed.
+    *
+    * @return the slot, or null if the definition has been undeployed
+    */
+   AspectSlot getAspectSlot(AspectDefinition def)
+   {
+      if (!def.isDeployed()) return null;
+      AspectSlot slot = (AspectSlot) aspectSlots.get(def);
+      if (slot != null) return slot;
+      synchronized (aspectSlotLock)
+      {
+         slot = (AspectSlot) aspectSlots.get(def);
+         if (slot != null) return slot;
+         IdentityHashMap slots = new IdentityHashMap();
+         BitSet used = new BitSet();
+         for (Iterator it = aspectSlots.entrySet().iterator(); it.hasNext();)
+         {
+            Map.Entry entry = (Map.Entry) it.next();
+            if (!((AspectDefinition) entry.getKey()).isDeployed()) continue;
+            AspectSlot other = (AspectSlot) entry.getValue();
+            slots.put(entry.getKey(), other);
+            used.set(other.index);
+         }
+         slot = new AspectSlot(used.nextClearBit(0), ++aspectSlotGenerations);
+         slots.put(def, slot);
+         aspectSlots = slots;
+         return slot;
+      }
+   }
+
+   /**
+    * The slot of an aspect definition within an advisor. The generation tells apart the
+    * definitions that have used the same slot, and starts at 1.
+    */
+   static final class AspectSlot
+   {
+      final int index;
+      final int generation;
+
+      AspectSlot(int index, int generation)
+      {
+         this.index = index;
+         this.generation = generation;
+      }
+   }
+
    public Object getPerClassAspect(AspectDefinition def)
    {
       return aspects.get(def.getName());
@@ -619,9 +692,73 @@ public abstract class Advisor
       }
    }
 
+   /**
+    * Returns the hashes of the advised methods that can match the binding's pointcut,
+    * using the exact method names found in the pointcut expression if any
+    */
+   protected long[] getAdvisedMethodCandidates(AdviceBinding binding)
+   {
+      Pointcut pointcut = binding.getPointcut();
+      if (!(pointcut instanceof PointcutExpression)) return advisedMethods.keys();
+      Set names = ((PointcutExpression) pointcut).getFilter().getMethodNames();
+      if (names == null) return advisedMethods.keys();
+
+      TLongObjectHashMap methods = advisedMethods;
+      AdvisedMethodsByName byName = advisedMethodsByName;
+      if (byName == null || byName.methods != methods || byName.size != methods.size())
+      {
+         byName = new AdvisedMethodsByName(methods);
+         advisedMethodsByName = byName;
+      }
+
+      TLongArrayList candidates = new TLongArrayList();
+      for (Iterator it = names.iterator(); it.hasNext();)
+      {
+         long[] hashes = (long[]) byName.hashes.get(it.next());
+         if (hashes != null) candidates.add(hashes);
+      }
+      return candidates.toNativeArray();
+   }
+
+   /**
+    * Immutable index of the hashes of a map of advised methods by method name,
+    * together with the map and the size it was built from
+    */
+   private static class AdvisedMethodsByName
+   {
+      final TLongObjectHashMap methods;
+      final int size;
+      /** method name -> long[] of hashes */
+      final HashMap hashes = new HashMap();
+
+      AdvisedMethodsByName(TLongObjectHashMap methods)
+      {
+         this.methods = methods;
+         long[] keys = methods.keys();
+         this.size = keys.length;
+         HashMap lists = new HashMap();
+         for (int i = 0; i < keys.length; i++)
+         {
+            String methodName = ((Method) methods.get(keys[i])).getName();
+            TLongArrayList list = (TLongArrayList) lists.get(methodName);
+            if (list == null)
+            {
+               list = new TLongArrayList();
+               lists.put(methodName, list);
+            }
+            list.add(keys[i]);
+         }
+         for (Iterator it = lists.entrySet().iterator(); it.hasNext();)
+         {
+            Map.Entry entry = (Map.Entry) it.next();
+            hashes.put(entry.getKey(), ((TLongArrayList) entry.getValue()).toNativeArray());
+         }
+      }
+   }
+
    protected void resolveMethodPointcut(TLongObjectHashMap newMethodInterceptors, AdviceBinding binding)
    {
-      long[] keys = advisedMethods.keys();
+      long[] keys = getAdvisedMethodCandidates(binding);
       for (int i = 0; i < keys.length; i++)
       {
          Method method = (Method) advisedMethods.get(keys[i]);
@@ -55,6 +55,8 @@ import org.jboss.aop.pointcut.CFlow;
 import org.jboss.aop.pointcut.CFlowStack;
 import org.jboss.aop.pointcut.DeclareDef;
 import org.jboss.aop.pointcut.DynamicCFlow;
+import org.jboss.aop.pointcut.StableDynamicCFlow;
+import org.jboss.aop.pointcut.StatefulDynamicCFlow;
 import org.jboss.aop.pointcut.Pointcut;
 import org.jboss.aop.pointcut.PointcutExpression;
 import org.jboss.aop.pointcut.Typedef;
@@ -330,7 +332,9 @@ public class AspectAnnotationLoader
          boolean foundDCFlow = false;
          for (int i = 0; i < interfaces.length; i++)
          {
-            if (interfaces[i].equals(DynamicCFlow.class.getName()))
+            if (interfaces[i].equals(DynamicCFlow.class.getName())
+                  || interfaces[i].equals(StatefulDynamicCFlow.class.getName())
+                  || interfaces[i].equals(StableDynamicCFlow.class.getName()))
             {
                foundDCFlow = true;
                break;
@@ -1010,7 +1014,7 @@ public class AspectAnnotationLoader
       else
       {
          ASTStart start = new TypeExpressionParser(new StringReader(typeExpression)).Start();
-         intro = new InterfaceIntroduction(name, start, interfaces, constructorClass, constructorMethod);
+         intro = new InterfaceIntroduction(name, start, typeExpression, interfaces, constructorClass, constructorMethod);
       }
 
       return intro;
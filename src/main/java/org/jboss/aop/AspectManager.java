@@ -21,21 +21,27 @@
   */
 package org.jboss.aop;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
 import java.util.List;
 import org.jboss.aop.advice.AdviceBinding;
@@ -46,16 +52,23 @@ import org.jboss.aop.advice.DynamicCFlowDefinition;
 import org.jboss.aop.advice.InterceptorFactory;
 import org.jboss.aop.advice.PrecedenceDef;
 import org.jboss.aop.advice.PrecedenceDefEntry;
+import org.jboss.aop.advice.PrecedenceRanking;
 import org.jboss.aop.advice.PrecedenceSorter;
 import org.jboss.aop.advice.Scope;
 import org.jboss.aop.classpool.AOPClassPool;
 import org.jboss.aop.classpool.AOPClassPoolRepository;
 import org.jboss.aop.classpool.AOPScopedClassLoaderHelper;
+import org.jboss.aop.instrument.GeneratedFieldAccessorFactory;
+import org.jboss.aop.instrument.GeneratedMethodInvokerFactory;
 import org.jboss.aop.instrument.Instrumentor;
 import org.jboss.aop.instrument.InstrumentorFactory;
 import org.jboss.aop.instrument.TransformerCommon;
+import org.jboss.aop.instrument.WeaveCache;
 import org.jboss.aop.introduction.AnnotationIntroduction;
 import org.jboss.aop.introduction.InterfaceIntroduction;
+import org.jboss.aop.joinpoint.FieldAccessorFactory;
+import org.jboss.aop.joinpoint.MethodInvokerFactory;
+import org.jboss.aop.joinpoint.ReflectionMethodInvoker;
 import org.jboss.aop.metadata.ClassMetaDataBinding;
 import org.jboss.aop.metadata.ClassMetaDataLoader;
 import org.jboss.aop.metadata.SimpleClassMetaDataLoader;
@@ -66,11 +79,13 @@ import org.jboss.aop.pointcut.Pointcut;
 import org.jboss.aop.pointcut.PointcutExpression;
 import org.jboss.aop.pointcut.PointcutInfo;
 import org.jboss.aop.pointcut.PointcutStats;
+import org.jboss.aop.pointcut.TypeMatchCache;
 import org.jboss.aop.pointcut.Typedef;
 import org.jboss.aop.pointcut.ast.ClassExpression;
 import org.jboss.util.loading.Translatable;
 import org.jboss.util.loading.Translator;
 import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+import EDU.oswego.cs.dl.util.concurrent.FutureResult;
 import javassist.ByteArrayClassPath;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -161,6 +176,7 @@ public class AspectManager
    protected final HashMap containers = new HashMap();
    protected final LinkedHashMap precedenceDefs = new LinkedHashMap();
    protected PrecedenceDefEntry[] sortedPrecedenceDefEntries;
+   protected volatile PrecedenceRanking precedenceRanking;
 
    protected final ConcurrentReaderHashMap convertableReference = new ConcurrentReaderHashMap();
    protected final ConcurrentReaderHashMap hasFieldInterception = new ConcurrentReaderHashMap();
@@ -171,8 +187,20 @@ public class AspectManager
    protected final ConcurrentReaderHashMap skipConstructorInterception = new ConcurrentReaderHashMap();
 
    protected DynamicAOPStrategy dynamicStrategy = new LoadInterceptedClassesStrategy();
+   protected MethodInvokerFactory methodInvokerFactory = ReflectionMethodInvoker.FACTORY;
+   protected FieldAccessorFactory fieldAccessorFactory = new GeneratedFieldAccessorFactory();
    // indicates that the transformation process has begun
    protected boolean transformationStarted = false;
+   // fingerprint of the weaving configuration and the weaveConfigurationVersion it was computed for
+   private volatile String weaveFingerprint;
+   private volatile int weaveFingerprintVersion = -1;
+   // incremented whenever the definitions that domains merge with those of their parent change
+   private volatile int definitionsVersion;
+   private final Object definitionsVersionLock = new Object();
+   // the binding values as of the definitionsVersion they were copied at
+   private volatile BindingsSnapshot bindingsSnapshot;
+   // Class -> AdvisorInitialization, for the advisors getAdvisor(Class) is creating
+   private final HashMap advisorInitializations = new HashMap();
 
    //This will be set by the AspectManagerService if running in JBoss
    public static AOPScopedClassLoaderHelper scopedCLHelper;
@@ -231,6 +259,13 @@ public class AspectManager
    protected static AspectManager manager;
    public static boolean optimize = true;
    public static boolean debugClasses;//If true, the generated advisor instrumentor will output the generated classes
+   /** Persistent cache of load-time weaving results, set through jboss.aop.weave.cache */
+   public static WeaveCache weaveCache;
+   private static int weaveConfigurationVersion;
+   /** Generate the joinpoint classes of generated advisors in the background, set through jboss.aop.joinpoint.warmup */
+   public static boolean warmUpJoinPoints;
+   /** Match pointcuts through CompiledPointcut rather than the AST matchers, set through jboss.aop.pointcut.compile */
+   public static boolean compilePointcuts = true;
    public static ClassLoaderValidation classLoaderValidator;
 
    /**
@@ -323,6 +358,37 @@ public class AspectManager
                   debugClasses = (new Boolean(debugClass)).booleanValue();
                }
 
+               String compilePointcut = System.getProperty("jboss.aop.pointcut.compile", null);
+               if (compilePointcut != null)
+               {
+                  compilePointcuts = (new Boolean(compilePointcut)).booleanValue();
+               }
+
+               String warmUp = System.getProperty("jboss.aop.joinpoint.warmup", null);
+               if (warmUp != null)
+               {
+                  warmUpJoinPoints = (new Boolean(warmUp)).booleanValue();
+               }
+
+               String generatedInvokers = System.getProperty("jboss.aop.generated.invokers", null);
+               if (generatedInvokers != null && (new Boolean(generatedInvokers)).booleanValue())
+               {
+                  manager.setMethodInvokerFactory(new GeneratedMethodInvokerFactory());
+               }
+
+               String weaveCacheDir = System.getProperty("jboss.aop.weave.cache", null);
+               if (weaveCacheDir != null && weaveCache == null)
+               {
+                  try
+                  {
+                     weaveCache = new WeaveCache(new File(weaveCacheDir));
+                  }
+                  catch (IOException e)
+                  {
+                     System.err.println("[warn] Unable to open weave cache in " + weaveCacheDir + ": " + e);
+                  }
+               }
+
                Deployment.deploy();
                return null;
             }
@@ -377,20 +443,31 @@ public class AspectManager
    public void addCFlowStack(CFlowStack stack)
    {
       cflowStacks.put(stack.getName(), stack);
+      definitionsChanged();
    }
 
    public void removeCFlowStack(String name)
    {
       cflowStacks.remove(name);
+      definitionsChanged();
    }
 
    public DynamicCFlow getDynamicCFlow(String name)
+   {
+      return getDynamicCFlow(name, null);
+   }
+
+   /**
+    * Returns the dynamic cflow instance to evaluate for the given advisor, see
+    * {@link DynamicCFlowDefinition#getInstance(Advisor)}
+    */
+   public DynamicCFlow getDynamicCFlow(String name, Advisor advisor)
    {
       DynamicCFlowDefinition def = (DynamicCFlowDefinition) dynamicCFlows.get(name);
 
       if (def != null)
       {
-         return def.create();
+         return def.getInstance(advisor);
       }
       return null;
    }
@@ -401,12 +478,22 @@ public class AspectManager
     */
    public void addDynamicCFlow(String name, DynamicCFlowDefinition cflow)
    {
-      dynamicCFlows.put(name, cflow);
+      DynamicCFlowDefinition old = (DynamicCFlowDefinition) dynamicCFlows.put(name, cflow);
+      definitionsChanged();
+      if (old != null && old != cflow)
+      {
+         old.invalidate();
+      }
    }
 
    public void removeDynamicCFlow(String name)
    {
-      dynamicCFlows.remove(name);
+      DynamicCFlowDefinition old = (DynamicCFlowDefinition) dynamicCFlows.remove(name);
+      definitionsChanged();
+      if (old != null)
+      {
+         old.invalidate();
+      }
    }
 
    /**
@@ -455,6 +542,7 @@ public class AspectManager
    public void addClassMetaDataLoader(String group, ClassMetaDataLoader loader)
    {
       classMetaDataLoaders.put(group, loader);
+      definitionsChanged();
    }
 
    /**
@@ -463,6 +551,7 @@ public class AspectManager
    public void removeClassMetaDataLoader(String group)
    {
       classMetaDataLoaders.remove(group);
+      definitionsChanged();
    }
 
    public Map getAdvisors()
@@ -567,22 +656,58 @@ public class AspectManager
     * @param clazz
     * @return
     */
-   public synchronized ClassAdvisor getAdvisor(Class clazz)
+   public ClassAdvisor getAdvisor(Class clazz)
    {
-      ClassAdvisor advisor = null;
-      // See if one already exists
-      advisor = (ClassAdvisor)findAdvisor(clazz);
-      // if one does not
-      if (advisor == null)
+      AdvisorInitialization initialization;
+      boolean create = false;
+      synchronized (advisorInitializations)
       {
-         advisor = new ClassAdvisor(clazz.getName(), this);
-         initialiseClassAdvisor(clazz, advisor);
+         initialization = (AdvisorInitialization) advisorInitializations.get(clazz);
+         if (initialization == null)
+         {
+            // See if one already exists
+            ClassAdvisor advisor = (ClassAdvisor)findAdvisor(clazz);
+            if (advisor != null) return advisor;
+            initialization = new AdvisorInitialization(new ClassAdvisor(clazz.getName(), this));
+            advisorInitializations.put(clazz, initialization);
+            create = true;
+         }
       }
-      return advisor;
+      if (!create)
+      {
+         // Only callers asking for this class are held up while it is being attached
+         return initialization.await();
+      }
+
+      try
+      {
+         initialiseClassAdvisor(clazz, initialization.advisor);
+         initialization.result.set(initialization.advisor);
+      }
+      catch (RuntimeException e)
+      {
+         initialization.result.setException(e);
+         throw e;
+      }
+      catch (Error e)
+      {
+         initialization.result.setException(e);
+         throw e;
+      }
+      finally
+      {
+         synchronized (advisorInitializations)
+         {
+            advisorInitializations.remove(clazz);
+         }
+      }
+      return initialization.advisor;
    }
 
-   public synchronized void initialiseClassAdvisor(Class clazz, ClassAdvisor advisor)
+   public void initialiseClassAdvisor(Class clazz, ClassAdvisor advisor)
    {
+      // Published before attaching, so that bindings added meanwhile rebuild its chains
+      // once attachClass() has released the advisor's lock
       synchronized (advisors)
       {
          advisors.put(clazz, new WeakReference(advisor));
@@ -597,6 +722,44 @@ public class AspectManager
       }
    }
 
+   /**
+    * An advisor being created by {@link AspectManager#getAdvisor(Class)}. The creating thread
+    * may ask for it again while attaching, and gets the partially initialised advisor as it did
+    * when creation held the manager lock, other threads wait for it to be attached.
+    */
+   private static class AdvisorInitialization
+   {
+      final ClassAdvisor advisor;
+      final Thread owner = Thread.currentThread();
+      final FutureResult result = new FutureResult();
+
+      AdvisorInitialization(ClassAdvisor advisor)
+      {
+         this.advisor = advisor;
+      }
+
+      ClassAdvisor await()
+      {
+         if (owner == Thread.currentThread()) return advisor;
+         try
+         {
+            return (ClassAdvisor)result.get();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for the advisor of " + advisor.getName(), e);
+         }
+         catch (InvocationTargetException e)
+         {
+            Throwable t = e.getTargetException();
+            if (t instanceof RuntimeException) throw (RuntimeException)t;
+            if (t instanceof Error) throw (Error)t;
+            throw new RuntimeException(t);
+         }
+      }
+   }
+
    // Public -------------------------------------------------------
 
    public static Map getRegisteredCLs()
@@ -681,6 +844,7 @@ public class AspectManager
 
    public void setExclude(ArrayList exclude)
    {
+      weaveConfigurationChanged();
       this.exclude.clear();
       this.exclude.addAll(exclude);
    }
@@ -692,6 +856,7 @@ public class AspectManager
 
    public void setInclude(ArrayList include)
    {
+      weaveConfigurationChanged();
       this.include.clear();
       this.include.addAll(include);
    }
@@ -708,6 +873,7 @@ public class AspectManager
 
    public void setIgnore(ArrayList ignore)
    {
+      weaveConfigurationChanged();
       this.ignore.clear();
       this.ignore.addAll(ignore);
       ignoreExpressions = new ClassExpression[ignore.size()];
@@ -853,6 +1019,7 @@ public class AspectManager
       }
       setReEntry();
       this.transformationStarted = true;
+      Object cacheKey = null;
       try
       {
          if (isNonAdvisableClassName(className))
@@ -860,6 +1027,22 @@ public class AspectManager
             return null;
          }
          AOPClassPool pool = (AOPClassPool) registerClassLoader(loader);
+         WeaveCache cache = getWeaveCache();
+         if (cache != null && classfileBuffer != null)
+         {
+            String fingerprint = getWeaveFingerprint();
+            if (fingerprint != null)
+            {
+               cacheKey = cache.createKey(className, classfileBuffer, fingerprint);
+               WeaveCache.Entry entry = cache.get(cacheKey);
+               if (entry != null)
+               {
+                  if (verbose) System.out.println("[weave cache] " + className);
+                  return cache.apply(entry, pool, className);
+               }
+               WeaveCache.startRecording();
+            }
+         }
          CtClass clazz = null;
          try
          {
@@ -913,11 +1096,19 @@ public class AspectManager
             pool.lockInCache(clazz);
             byte[] rtn = clazz.toBytecode();
             if (AspectManager.getPrune()) clazz.prune();
+            if (cacheKey != null)
+            {
+               cache.put(cacheKey, rtn, WeaveCache.stopRecording());
+            }
             return rtn;
          }
          else
          {
             pool.soften(clazz);
+            if (cacheKey != null)
+            {
+               cache.put(cacheKey, null, WeaveCache.stopRecording());
+            }
          }
          return null;
       }
@@ -935,10 +1126,189 @@ public class AspectManager
       }
       finally
       {
+         if (cacheKey != null)
+         {
+            WeaveCache.stopRecording();
+         }
          clearReEntry();
       }
    }
 
+   /**
+    * @return the weave cache to use for load-time weaving, or null if classes are always woven
+    */
+   protected WeaveCache getWeaveCache()
+   {
+      if (weaveCache == null || TransformerCommon.isCompileTime()) return null;
+      // hot swapping needs to observe every transformation
+      if (!(getDynamicAOPStrategy() instanceof LoadInterceptedClassesStrategy)) return null;
+      return weaveCache;
+   }
+
+   static synchronized void weaveConfigurationChanged()
+   {
+      weaveConfigurationVersion++;
+   }
+
+   protected void definitionsChanged()
+   {
+      synchronized (definitionsVersionLock)
+      {
+         definitionsVersion++;
+      }
+   }
+
+   /**
+    * @return the bindings of {@link #getBindings()} as an unmodifiable list, which later
+    *         deployments do not change so it can be iterated without holding the bindings lock
+    */
+   public List getBindingsSnapshot()
+   {
+      int version = getDefinitionsVersion();
+      BindingsSnapshot snapshot = bindingsSnapshot;
+      if (snapshot == null || snapshot.version != version)
+      {
+         LinkedHashMap bindings = getBindings();
+         synchronized (bindings)
+         {
+            snapshot = new BindingsSnapshot(version, Collections.unmodifiableList(new ArrayList(bindings.values())));
+         }
+         bindingsSnapshot = snapshot;
+      }
+      return snapshot.bindings;
+   }
+
+   private static class BindingsSnapshot
+   {
+      final int version;
+      final List bindings;
+
+      BindingsSnapshot(int version, List bindings)
+      {
+         this.version = version;
+         this.bindings = bindings;
+      }
+   }
+
+   /**
+    * @return a number that changes whenever bindings, pointcuts, introductions or any other
+    *         definitions are added to or removed from this manager, or from the managers it
+    *         inherits definitions from
+    */
+   public int getDefinitionsVersion()
+   {
+      return definitionsVersion;
+   }
+
+   /**
+    * Describes everything deployed that influences how a class is woven. Used as part
+    * of the weave cache key.
+    *
+    * @return the fingerprint, or null if the configuration can not be described
+    */
+   protected String getWeaveFingerprint()
+   {
+      int version;
+      synchronized (AspectManager.class)
+      {
+         version = weaveConfigurationVersion;
+      }
+      if (weaveFingerprintVersion == version)
+      {
+         return weaveFingerprint;
+      }
+
+      // Class metadata is free form, so there is nothing to compare it by
+      if (!getClassMetaData().isEmpty())
+      {
+         weaveFingerprint = null;
+         weaveFingerprintVersion = version;
+         return null;
+      }
+
+      StringBuffer buf = new StringBuffer();
+      buf.append("instrumentor=").append(InstrumentorFactory.getInstrumentorName());
+      buf.append(";optimize=").append(optimize);
+      buf.append(";include=").append(getInclude());
+      buf.append(";exclude=").append(getExclude());
+      buf.append(";ignore=").append(getIgnore());
+      synchronized (pointcuts)
+      {
+         for (Iterator it = getPointcuts().values().iterator(); it.hasNext();)
+         {
+            Pointcut pointcut = (Pointcut) it.next();
+            buf.append(";pointcut:").append(pointcut.getName()).append('=').append(pointcut.getExpr());
+         }
+      }
+      synchronized (bindings)
+      {
+         for (Iterator it = getBindings().values().iterator(); it.hasNext();)
+         {
+            AdviceBinding binding = (AdviceBinding) it.next();
+            buf.append(";binding:").append(binding.getName()).append('=').append(binding.getPointcut().getExpr());
+         }
+      }
+      for (Iterator it = getInterfaceIntroductions().values().iterator(); it.hasNext();)
+      {
+         InterfaceIntroduction intro = (InterfaceIntroduction) it.next();
+         String expr = intro.getClassExpr();
+         if (expr == null) expr = intro.getTypeExpression();
+         if (expr == null)
+         {
+            weaveFingerprint = null;
+            weaveFingerprintVersion = version;
+            return null;
+         }
+         buf.append(";introduction:").append(intro.getName()).append('=').append(expr);
+         appendArray(buf, intro.getInterfaces());
+         buf.append(',').append(intro.getConstructorClass()).append(',').append(intro.getConstructorMethod());
+         for (Iterator mixins = intro.getMixins().iterator(); mixins.hasNext();)
+         {
+            InterfaceIntroduction.Mixin mixin = (InterfaceIntroduction.Mixin) mixins.next();
+            buf.append(";mixin:").append(mixin.getClassName()).append(',').append(mixin.getConstruction());
+            buf.append(',').append(mixin.isTransient());
+            appendArray(buf, mixin.getInterfaces());
+         }
+      }
+      appendAnnotationIntroductions(buf, "annotation-introduction", getAnnotationIntroductions());
+      appendAnnotationIntroductions(buf, "annotation-override", getAnnotationOverrides());
+      for (Iterator it = getTypedefs().values().iterator(); it.hasNext();)
+      {
+         Typedef typedef = (Typedef) it.next();
+         buf.append(";typedef:").append(typedef.getName()).append('=').append(typedef.getExpr());
+      }
+      for (Iterator it = getDeclares(); it.hasNext();)
+      {
+         DeclareDef declare = (DeclareDef) it.next();
+         buf.append(";declare:").append(declare.getName()).append('=').append(declare.getExpr());
+         buf.append(',').append(declare.getWarning()).append(',').append(declare.getMsg());
+      }
+
+      String fingerprint = buf.toString();
+      weaveFingerprint = fingerprint;
+      weaveFingerprintVersion = version;
+      return fingerprint;
+   }
+
+   private static void appendArray(StringBuffer buf, String[] values)
+   {
+      if (values == null) return;
+      for (int i = 0; i < values.length; i++)
+      {
+         buf.append(',').append(values[i]);
+      }
+   }
+
+   private static void appendAnnotationIntroductions(StringBuffer buf, String type, List introductions)
+   {
+      for (Iterator it = introductions.iterator(); it.hasNext();)
+      {
+         AnnotationIntroduction intro = (AnnotationIntroduction) it.next();
+         buf.append(';').append(type).append(':').append(intro.getOriginalExpression());
+         buf.append('=').append(intro.getOriginalAnnotationExpr()).append(',').append(intro.isInvisible());
+      }
+   }
+
    /**
     * Add an interceptor factory that can be referenced by name.
     */
@@ -983,6 +1353,7 @@ public class AspectManager
       synchronized (precedenceDefs)
       {
          precedenceDefs.put(precedenceDef.getName(), precedenceDef);
+         definitionsChanged();
       }
       forceResortPrecedenceDefs();
    }
@@ -993,6 +1364,7 @@ public class AspectManager
       synchronized (precedenceDefs)
       {
          precedenceDefs.remove(name);
+         definitionsChanged();
       }
 
       forceResortPrecedenceDefs();
@@ -1003,6 +1375,7 @@ public class AspectManager
       synchronized (precedenceDefs)
       {
          sortedPrecedenceDefEntries = null;
+         precedenceRanking = null;
       }
       synchronized (subscribedSubDomains)
       {
@@ -1040,6 +1413,28 @@ public class AspectManager
       return sortedPrecedenceDefEntries;
    }
 
+   /**
+    * Returns the rank of each interceptor and advice in the sorted precedence
+    * definitions, used to sort interceptor chains
+    */
+   public PrecedenceRanking getPrecedenceRanking()
+   {
+      PrecedenceRanking ranking = precedenceRanking;
+      if (ranking == null)
+      {
+         synchronized (precedenceDefs)
+         {
+            ranking = precedenceRanking;
+            if (ranking == null)
+            {
+               ranking = new PrecedenceRanking(getSortedPrecedenceDefEntries());
+               precedenceRanking = ranking;
+            }
+         }
+      }
+      return ranking;
+   }
+
    /**
     * Add a referencable InterceptorStack( &lt;stack&gt; )
     */
@@ -1048,6 +1443,7 @@ public class AspectManager
       synchronized (interceptorStacks)
       {
          interceptorStacks.put(stack.getName(), stack);
+         definitionsChanged();
       }
    }
 
@@ -1059,6 +1455,7 @@ public class AspectManager
       synchronized (interceptorStacks)
       {
          interceptorStacks.remove(name);
+         definitionsChanged();
       }
    }
 
@@ -1184,10 +1581,12 @@ public class AspectManager
     */
    public void removePointcut(String name)
    {
+      weaveConfigurationChanged();
       synchronized (pointcuts)
       {
          pointcuts.remove(name);
          pointcutInfos.remove(name);
+         definitionsChanged();
       }
    }
 
@@ -1196,11 +1595,13 @@ public class AspectManager
     */
    public synchronized void addPointcut(Pointcut pointcut)
    {
+      weaveConfigurationChanged();
       removePointcut(pointcut.getName());
       synchronized (pointcuts)
       {
          pointcuts.put(pointcut.getName(), pointcut);
          pointcutInfos.put(pointcut.getName(), new PointcutInfo(pointcut, this.transformationStarted));
+         definitionsChanged();
       }
       updatePointcutStats(pointcut);
    }
@@ -1329,6 +1730,7 @@ public class AspectManager
             ArrayList ads = binding.getAdvisors();
             bindingAdvisors.addAll(ads);
             bindings.remove(binding.getName());
+            definitionsChanged();
             Pointcut pointcut = binding.getPointcut();
             this.removePointcut(pointcut.getName());
             removedBindings.add(binding);
@@ -1363,6 +1765,7 @@ public class AspectManager
     */
    public synchronized void addBinding(AdviceBinding binding)
    {
+      weaveConfigurationChanged();
       AdviceBinding removedBinding = internalRemoveBinding(binding.getName());
       Set affectedAdvisors = removedBinding == null? new HashSet(): new HashSet(removedBinding.getAdvisors());
       synchronized (bindings)
@@ -1374,53 +1777,140 @@ public class AspectManager
          Pointcut pointcut = binding.getPointcut();
          pointcuts.put(pointcut.getName(), pointcut);
          pointcutInfos.put(pointcut.getName(), new PointcutInfo(pointcut, binding, this.transformationStarted));
+         definitionsChanged();
          updatePointcutStats(pointcut);
       }
 
-      synchronized (advisors)
+      // The advisors are called without holding the advisors lock, since an advisor being
+      // attached holds its own lock while looking up the advisors of its superclasses
+      updateAdvisorsForAddedBinding(binding);
+
+      for (Iterator i = affectedAdvisors.iterator(); i.hasNext(); )
       {
-         updateAdvisorsForAddedBinding(binding);
+         Advisor advisor = (Advisor) i.next();
+         if (isAdvisorRegistered(advisor))
+            advisor.removeAdviceBinding(removedBinding);
+      }
+      this.dynamicStrategy.interceptorChainsUpdated();
+   }
 
-         for (Iterator i = affectedAdvisors.iterator(); i.hasNext(); )
+
+   /**
+    * Add several interceptor pointcuts at once. Each affected advisor rebuilds its
+    * interceptor chains once instead of once per binding.
+    */
+   public synchronized void addBindings(ArrayList newBindings)
+   {
+      weaveConfigurationChanged();
+      HashMap removedBindingsByAdvisor = new HashMap();
+      for (int i = 0; i < newBindings.size(); i++)
+      {
+         AdviceBinding binding = (AdviceBinding) newBindings.get(i);
+         AdviceBinding removedBinding = internalRemoveBinding(binding.getName());
+         if (removedBinding != null)
          {
-            Advisor advisor = (Advisor) i.next();
-            if (isAdvisorRegistered(advisor))
-               advisor.removeAdviceBinding(removedBinding);
+            for (Iterator it = new ArrayList(removedBinding.getAdvisors()).iterator(); it.hasNext();)
+            {
+               Advisor advisor = (Advisor) it.next();
+               ArrayList removed = (ArrayList) removedBindingsByAdvisor.get(advisor);
+               if (removed == null)
+               {
+                  removed = new ArrayList();
+                  removedBindingsByAdvisor.put(advisor, removed);
+               }
+               removed.add(removedBinding);
+            }
+         }
+         synchronized (bindings)
+         {
+            bindings.put(binding.getName(), binding);
+         }
+         synchronized (pointcuts)
+         {
+            Pointcut pointcut = binding.getPointcut();
+            pointcuts.put(pointcut.getName(), pointcut);
+            pointcutInfos.put(pointcut.getName(), new PointcutInfo(pointcut, binding, this.transformationStarted));
+            definitionsChanged();
+            updatePointcutStats(pointcut);
          }
       }
+
+      updateAdvisorsForAddedBindings(newBindings);
+
+      for (Iterator i = removedBindingsByAdvisor.entrySet().iterator(); i.hasNext(); )
+      {
+         Map.Entry entry = (Map.Entry) i.next();
+         Advisor advisor = (Advisor) entry.getKey();
+         if (isAdvisorRegistered(advisor))
+            advisor.removeAdviceBindings((ArrayList) entry.getValue());
+      }
       this.dynamicStrategy.interceptorChainsUpdated();
    }
 
-
    public void updateAdvisorsForAddedBinding(AdviceBinding binding)
    {
+      updateAdvisorsForAddedBindings(Collections.singletonList(binding));
+   }
+
+   /**
+    * Recalculates the interceptors of all advisors matched by any of the bindings, once
+    * per advisor. Advisors whose name does not start with one of the class name prefixes
+    * found in a binding's pointcut are skipped before running softMatch().
+    * <p/>
+    * The matched advisors are rebuilt after releasing the advisors lock. An advisor that
+    * getAdvisor(Class) is still attaching is already in the advisors map, so it is matched
+    * too, and its rebuild waits on the advisor's lock until the class has been attached.
+    */
+   public void updateAdvisorsForAddedBindings(Collection newBindings)
+   {
+      LinkedHashSet matched = new LinkedHashSet();
       synchronized (advisors)
       {
          //System.out.println("******* addBinding to possibly this many advisors: " + advisors.size());
-         Collection keys = advisors.keySet();
-         if (keys.size() > 0)
+         TreeMap advisorsByName = new TreeMap();
+         for (Iterator it = advisors.keySet().iterator(); it.hasNext(); )
          {
-            Iterator it = keys.iterator();
-            while (it.hasNext())
+            Advisor advisor = getAdvisorFromAdvisorsKeySetIterator(it);
+            if (advisor == null) continue;
+            ArrayList list = (ArrayList) advisorsByName.get(advisor.getName());
+            if (list == null)
             {
-               Advisor advisor = getAdvisorFromAdvisorsKeySetIterator(it);
-               if (advisor == null) continue;
+               list = new ArrayList(1);
+               advisorsByName.put(advisor.getName(), list);
+            }
+            list.add(advisor);
+         }
 
-               if (binding.getPointcut().softMatch(advisor))
-               {
-                  if (AspectManager.verbose)
-                     System.out.println("[debug] softmatch succeeded for : " + advisor.getName() + " " + binding + " " + binding.getPointcut().getExpr());
-                  advisor.newBindingAdded();
-                  //affectedAdvisors.remove(advisor);
-               }
-               else
+         for (Iterator it = newBindings.iterator(); it.hasNext(); )
+         {
+            AdviceBinding binding = (AdviceBinding) it.next();
+            for (Iterator candidates = getCandidateAdvisors(advisorsByName, binding.getPointcut()).iterator(); candidates.hasNext(); )
+            {
+               ArrayList list = (ArrayList) candidates.next();
+               for (int i = 0; i < list.size(); i++)
                {
-                  if (AspectManager.verbose)
-                     System.out.println("[debug] softmatch failed for : " + advisor.getName() + " " + binding + " " + binding.getPointcut().getExpr());
+                  Advisor advisor = (Advisor) list.get(i);
+                  if (matched.contains(advisor)) continue;
+                  if (binding.getPointcut().softMatch(advisor))
+                  {
+                     if (AspectManager.verbose)
+                        System.out.println("[debug] softmatch succeeded for : " + advisor.getName() + " " + binding + " " + binding.getPointcut().getExpr());
+                     matched.add(advisor);
+                  }
+                  else
+                  {
+                     if (AspectManager.verbose)
+                        System.out.println("[debug] softmatch failed for : " + advisor.getName() + " " + binding + " " + binding.getPointcut().getExpr());
+                  }
                }
             }
          }
       }
+
+      for (Iterator it = matched.iterator(); it.hasNext(); )
+      {
+         ((Advisor) it.next()).newBindingAdded();
+      }
       synchronized (subscribedSubDomains)
       {
          copySubDomainsFromQueue(true);
@@ -1434,7 +1924,7 @@ public class AspectManager
                for (Iterator it = keys.iterator() ; it.hasNext() ; )
                {
                   Domain domain = (Domain)it.next();
-                  domain.updateAdvisorsForAddedBinding(binding);
+                  domain.updateAdvisorsForAddedBindings(newBindings);
                }
             }
             newSubscribers = copySubDomainsFromQueue(false);
@@ -1442,11 +1932,33 @@ public class AspectManager
       }
    }
 
+   /**
+    * Returns the lists of advisors, keyed by advisor name, whose name starts with one of
+    * the class name prefixes of the pointcut
+    */
+   private Collection getCandidateAdvisors(TreeMap advisorsByName, Pointcut pointcut)
+   {
+      if (!(pointcut instanceof PointcutExpression)) return advisorsByName.values();
+      List prefixes = ((PointcutExpression) pointcut).getFilter().getClassPrefixes();
+      if (prefixes == null) return advisorsByName.values();
+
+      ArrayList candidates = new ArrayList();
+      for (int i = 0; i < prefixes.size(); i++)
+      {
+         String prefix = (String) prefixes.get(i);
+         candidates.addAll(advisorsByName.subMap(prefix, prefix + Character.MAX_VALUE).values());
+      }
+      return candidates;
+   }
+
    public void removeClassMetaData(String name)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       synchronized (classMetaData)
       {
          ClassMetaDataBinding meta = (ClassMetaDataBinding) classMetaData.remove(name);
+         definitionsChanged();
          if (meta == null) return;
          meta.clearAdvisors();
       }
@@ -1454,6 +1966,8 @@ public class AspectManager
 
    public void addClassMetaData(ClassMetaDataBinding meta)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       removeClassMetaData(meta.getName());
 
       updateAdvisorsForAddedClassMetaData(meta);
@@ -1461,6 +1975,7 @@ public class AspectManager
       synchronized (classMetaData)
       {
          classMetaData.put(meta.getName(), meta);
+         definitionsChanged();
       }
    }
 
@@ -1532,10 +2047,13 @@ public class AspectManager
     */
    public synchronized void addInterfaceIntroduction(InterfaceIntroduction pointcut)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       removeInterfaceIntroduction(pointcut.getName());
       synchronized (interfaceIntroductions)
       {
          interfaceIntroductions.put(pointcut.getName(), pointcut);
+         definitionsChanged();
       }
    }
 
@@ -1544,9 +2062,12 @@ public class AspectManager
     */
    public void removeInterfaceIntroduction(String name)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       synchronized (interfaceIntroductions)
       {
          InterfaceIntroduction pointcut = (InterfaceIntroduction) interfaceIntroductions.remove(name);
+         definitionsChanged();
          if (pointcut == null) return;
          pointcut.clearAdvisors();
       }
@@ -1557,11 +2078,14 @@ public class AspectManager
     */
    public synchronized void addAnnotationIntroduction(AnnotationIntroduction pointcut)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       String name = pointcut.getOriginalAnnotationExpr() + pointcut.getOriginalExpression();
       removeAnnotationIntroduction(pointcut);
       synchronized (annotationIntroductions)
       {
          annotationIntroductions.put(name, pointcut);
+         definitionsChanged();
       }
    }
 
@@ -1570,10 +2094,13 @@ public class AspectManager
     */
    public void removeAnnotationIntroduction(AnnotationIntroduction pointcut)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       String name = pointcut.getOriginalAnnotationExpr() + pointcut.getOriginalExpression();
       synchronized (annotationIntroductions)
       {
          annotationIntroductions.remove(name);
+         definitionsChanged();
       }
    }
 
@@ -1587,6 +2114,7 @@ public class AspectManager
 
    public synchronized void addDeclare(DeclareDef declare)
    {
+      weaveConfigurationChanged();
       removeDeclare(declare.getName());
       synchronized (declares)
       {
@@ -1603,6 +2131,7 @@ public class AspectManager
 
    public void removeDeclare(String name)
    {
+      weaveConfigurationChanged();
       synchronized (declares)
       {
          declares.remove(name);
@@ -1654,10 +2183,13 @@ public class AspectManager
     */
    public synchronized void addAnnotationOverride(AnnotationIntroduction pointcut)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       String name = pointcut.getOriginalAnnotationExpr() + pointcut.getOriginalExpression();
       synchronized (annotationOverrides)
       {
          annotationOverrides.put(name, pointcut);
+         definitionsChanged();
       }
       updateAdvisorsForAddedAnnotationOverride(pointcut);
    }
@@ -1698,10 +2230,13 @@ public class AspectManager
     */
    public void removeAnnotationOverride(AnnotationIntroduction pointcut)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       String name = pointcut.getOriginalAnnotationExpr() + pointcut.getOriginalExpression();
       synchronized (annotationOverrides)
       {
          annotationOverrides.remove(name);
+         definitionsChanged();
       }
    }
 
@@ -1745,6 +2280,7 @@ public class AspectManager
             }
             instance = adef.getFactory().createPerVM();
             perVMAspects.put(def, instance);
+            definitionsChanged();
          }
          finally
          {
@@ -1763,6 +2299,7 @@ public class AspectManager
       if (def.getScope() == Scope.PER_VM)
       {
          perVMAspects.put(def.getName(), def);
+         definitionsChanged();
       }
       aspectDefinitions.put(def.getName(), def);
    }
@@ -1779,6 +2316,7 @@ public class AspectManager
       {
          def.undeploy();
          if (def.getScope() == Scope.PER_VM) perVMAspects.remove(def.getName());
+         definitionsChanged();
       }
       return def;
    }
@@ -1795,18 +2333,24 @@ public class AspectManager
 
    public synchronized void addTypedef(Typedef def) throws Exception
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       removeTypedef(def.getName());
       synchronized (typedefs)
       {
          typedefs.put(def.getName(), def);
+         definitionsChanged();
       }
    }
 
    public void removeTypedef(String name)
    {
+      weaveConfigurationChanged();
+      TypeMatchCache.invalidate();
       synchronized (typedefs)
       {
          typedefs.remove(name);
+         definitionsChanged();
       }
    }
 
@@ -1881,6 +2425,45 @@ public class AspectManager
       this.dynamicStrategy = strategy;
    }
 
+   /**
+    * Returns the factory of the invokers used by method invocations once
+    * their interceptor chain is exhausted.
+    */
+   public MethodInvokerFactory getMethodInvokerFactory()
+   {
+      return this.methodInvokerFactory;
+   }
+
+   /**
+    * Sets the factory of the invokers used by method invocations. Reflection is
+    * used by default, {@link org.jboss.aop.instrument.GeneratedMethodInvokerFactory}
+    * generates direct calls and is enabled with the <code>jboss.aop.generated.invokers</code>
+    * system property. Invokers already handed out are not replaced.
+    */
+   public void setMethodInvokerFactory(MethodInvokerFactory factory)
+   {
+      this.methodInvokerFactory = factory;
+   }
+
+   /**
+    * Returns the factory of the accessors used by field invocations once
+    * their interceptor chain is exhausted.
+    */
+   public FieldAccessorFactory getFieldAccessorFactory()
+   {
+      return this.fieldAccessorFactory;
+   }
+
+   /**
+    * Sets the factory of the accessors used by field invocations, e.g.
+    * {@link org.jboss.aop.joinpoint.ReflectionFieldAccessor#FACTORY} to always
+    * use reflection. Accessors already handed out are not replaced.
+    */
+   public void setFieldAccessorFactory(FieldAccessorFactory factory)
+   {
+      this.fieldAccessorFactory = factory;
+   }
+
    /**
     * Removes an AdviceBinding without notifying dynamic aop strategy.
     * @param name the binding to be removed.
@@ -1890,6 +2473,7 @@ public class AspectManager
       synchronized (bindings)
       {
          AdviceBinding binding = (AdviceBinding) bindings.remove(name);
+         definitionsChanged();
          if (binding == null)
          {
             return null;
@@ -1928,8 +2512,10 @@ public class AspectManager
 
    public void setBindings(LinkedHashMap bindings)
    {
+      weaveConfigurationChanged();
       this.bindings.clear();
       this.bindings.putAll(bindings);
+      definitionsChanged();
    }
 
    public void addSubDomainPerClass(Class clazz, Domain domain)
@@ -88,6 +88,8 @@ public class AspectXmlLoader implements XmlLoader
    protected ArrayList bindings = new ArrayList();
    protected ArrayList factories = new ArrayList();
    protected ArrayList aspects = new ArrayList();
+   // bindings are added to the manager in one go once the document has been read
+   protected ArrayList deployedBindings;
 
    public AspectXmlLoader()
    {
@@ -283,7 +285,14 @@ public class AspectXmlLoader implements XmlLoader
          throw new RuntimeException("<bind> pointcut expression failed: " + pointcut, ex);
       }
       AdviceBinding binding = new AdviceBinding(name, p, cflowExpression, cflow, inters);
-      manager.addBinding(binding);
+      if (deployedBindings != null)
+      {
+         deployedBindings.add(binding);
+      }
+      else
+      {
+         manager.addBinding(binding);
+      }
    }
 
    public void undeployBinding(Element element) throws Exception
@@ -767,7 +776,7 @@ public class AspectXmlLoader implements XmlLoader
       else
       {
          ASTStart start = new TypeExpressionParser(new StringReader(ast)).Start();
-         pcut = new InterfaceIntroduction(name, start, ifaces);
+         pcut = new InterfaceIntroduction(name, start, ast, ifaces);
       }
       Iterator it = XmlHelper.getChildrenByTagName(pointcut, "mixin");
       while (it.hasNext())
@@ -881,9 +890,12 @@ public class AspectXmlLoader implements XmlLoader
    {
       setupDefaultName(url);
       Element top = doc.getDocumentElement();
+      ArrayList oldDeployedBindings = deployedBindings;
       try
       {
+         deployedBindings = new ArrayList();
          deployTopElements(top);
+         bulkDeploy();
       }
       catch (Exception e)
       {
@@ -891,6 +903,10 @@ public class AspectXmlLoader implements XmlLoader
          if (AspectManager.verbose) e.printStackTrace();
          throw new RuntimeException(e);
       }
+      finally
+      {
+         deployedBindings = oldDeployedBindings;
+      }
    }
 
    public void deployDomain(Element element) throws Exception
@@ -946,14 +962,18 @@ public class AspectXmlLoader implements XmlLoader
 
       DomainDefinition def = new DomainDefinition(name, parent, parentFirst, inheritDefs, inheritBindings);
       AspectManager push = manager;
+      ArrayList oldDeployedBindings = deployedBindings;
       try
       {
          manager = def.getManager();
+         deployedBindings = new ArrayList();
          deployTopElements(element);
+         bulkDeploy();
       }
       finally
       {
          manager = push;
+         deployedBindings = oldDeployedBindings;
       }
       push.addContainer(def);
    }
@@ -1096,6 +1116,16 @@ public class AspectXmlLoader implements XmlLoader
 
    }
 
+   private void bulkDeploy()
+   {
+      // deploy bindings last so that the interceptor chains of each advisor
+      // are only rebuilt once for the whole document
+      if (deployedBindings.size() > 0)
+      {
+         manager.addBindings(deployedBindings);
+      }
+   }
+
    private void bulkUndeploy()
    {
       // undeploy bindings last because it takes a lot of effort to rebuild
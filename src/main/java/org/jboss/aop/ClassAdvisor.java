@@ -51,6 +51,7 @@ import org.jboss.aop.joinpoint.ConstructorCalledByConstructorJoinpoint;
 import org.jboss.aop.joinpoint.ConstructorCalledByMethodInvocation;
 import org.jboss.aop.joinpoint.ConstructorCalledByMethodJoinpoint;
 import org.jboss.aop.joinpoint.ConstructorInvocation;
+import org.jboss.aop.joinpoint.FieldAccessor;
 import org.jboss.aop.joinpoint.FieldJoinpoint;
 import org.jboss.aop.joinpoint.FieldReadInvocation;
 import org.jboss.aop.joinpoint.FieldWriteInvocation;
@@ -119,6 +120,8 @@ public class ClassAdvisor extends Advisor
    
    
    protected Field[] advisedFields;
+   // accessors of the advisedFields, created on first use by the manager's FieldAccessorFactory
+   private volatile FieldAccessor[] fieldAccessors;
    //PER_JOINPOINT aspects for static fields or PER_CLASS_JOINPOINT aspects
    //all apply to fields, and we need this since the same aspect should be used for 
    //read and write
@@ -456,6 +459,8 @@ public class ClassAdvisor extends Advisor
          info.setUnadvisedMethod(umethod);
          info.setHash(keys[i]);
          info.setAdvisor(this);
+         // Create the invoker here rather than in the first invocation
+         info.getInvoker();
          newInterceptors.put(keys[i], info);
          try
          {
@@ -597,19 +602,16 @@ public class ClassAdvisor extends Advisor
       ArrayList newConstructorInfos = initializeConstructorChain();
       ArrayList newConstructionInfos = initializeConstructionChain();
       
-      synchronized (manager.getBindings())
+      Iterator it = manager.getBindingsSnapshot().iterator();
+      while (it.hasNext())
       {
-         Iterator it = manager.getBindings().values().iterator();
-         while (it.hasNext())
-         {
-            AdviceBinding binding = (AdviceBinding) it.next();
-            if (AspectManager.verbose) System.out.println("iterate binding " + binding.getName());
-            resolveMethodPointcut(newMethodInfos, binding);
-            resolveFieldPointcut(newFieldReadInfos, binding, false);
-            resolveFieldPointcut(newFieldWriteInfos, binding, true);
-            resolveConstructorPointcut(newConstructorInfos, binding);
-            resolveConstructionPointcut(newConstructionInfos, binding);
-         }
+         AdviceBinding binding = (AdviceBinding) it.next();
+         if (AspectManager.verbose) System.out.println("iterate binding " + binding.getName());
+         resolveMethodPointcut(newMethodInfos, binding);
+         resolveFieldPointcut(newFieldReadInfos, binding, false);
+         resolveFieldPointcut(newFieldWriteInfos, binding, true);
+         resolveConstructorPointcut(newConstructorInfos, binding);
+         resolveConstructionPointcut(newConstructionInfos, binding);
       }
       finalizeMethodChain(newMethodInfos);
       finalizeFieldReadChain(newFieldReadInfos);
@@ -623,6 +625,7 @@ public class ClassAdvisor extends Advisor
       constructionInfos = (ConstructionInfo[]) newConstructionInfos.toArray(new ConstructionInfo[newConstructionInfos.size()]);
       
       populateInterceptorsFromInfos();
+      interceptorChainVersion++;
       
       doesHaveAspects = adviceBindings.size() > 0;
       // Notify observer about this change
@@ -1391,6 +1394,7 @@ public class ClassAdvisor extends Advisor
       populateFieldTable(fields, clazz);
 
       advisedFields = (Field[]) fields.toArray(new Field[fields.size()]);
+      fieldAccessors = null;
 
    }
 
@@ -1478,7 +1482,7 @@ public class ClassAdvisor extends Advisor
          Method calledMethod = MethodHashing.findMethodByHash(called, calledMethodHash);
          if (calledMethod == null) throw new RuntimeException("Unable to figure out calledmethod of a caller pointcut");
 
-         Iterator it = manager.getBindings().values().iterator();
+         Iterator it = manager.getBindingsSnapshot().iterator();
          boolean matched = false;
          while (it.hasNext())
          {
@@ -1518,17 +1522,14 @@ public class ClassAdvisor extends Advisor
          if (calledCon == null) throw new RuntimeException("Unable to figure out calledcon of a constructor caller pointcut");
 
          boolean matched = false;
-         synchronized (manager.getBindings())
+         Iterator it = manager.getBindingsSnapshot().iterator();
+         while (it.hasNext())
          {
-            Iterator it = manager.getBindings().values().iterator();
-            while (it.hasNext())
+            AdviceBinding binding = (AdviceBinding) it.next();
+            if (binding.getPointcut().matchesCall(this, callingMethod, called, calledCon))
             {
-               AdviceBinding binding = (AdviceBinding) it.next();
-               if (binding.getPointcut().matchesCall(this, callingMethod, called, calledCon))
-               {
-                  addConstructorCalledByMethodPointcut(callingMethodHash, calledClass, calledConHash, binding);
-                  matched = true;
-               }
+               addConstructorCalledByMethodPointcut(callingMethodHash, calledClass, calledConHash, binding);
+               matched = true;
             }
          }
          if (!matched) initializeConCalledByMethodEmptyChain(callingMethodHash, calledClass, calledConHash);
@@ -1561,17 +1562,14 @@ public class ClassAdvisor extends Advisor
 
          boolean matched = false;
          
-         synchronized (manager.getBindings())
+         Iterator it = manager.getBindingsSnapshot().iterator();
+         while (it.hasNext())
          {
-            Iterator it = manager.getBindings().values().iterator();
-            while (it.hasNext())
+            AdviceBinding binding = (AdviceBinding) it.next();
+            if (binding.getPointcut().matchesCall(this, callingConstructor, called, calledMethod))
             {
-               AdviceBinding binding = (AdviceBinding) it.next();
-               if (binding.getPointcut().matchesCall(this, callingConstructor, called, calledMethod))
-               {
-                  addConstructorCallerPointcut(callingIndex, calledClass, calledMethodHash, binding);
-                  matched = true;
-               }
+               addConstructorCallerPointcut(callingIndex, calledClass, calledMethodHash, binding);
+               matched = true;
             }
          }
          if (!matched) initializeEmptyConstructorCallerChain(callingIndex, calledClass, calledMethodHash);
@@ -1603,17 +1601,14 @@ public class ClassAdvisor extends Advisor
          if (calledCon == null) throw new RuntimeException("Unable to figure out calledcon of a caller pointcut");
 
          boolean matched = false;
-         synchronized (manager.getBindings())
+         Iterator it = manager.getBindingsSnapshot().iterator();
+         while (it.hasNext())
          {
-            Iterator it = manager.getBindings().values().iterator();
-            while (it.hasNext())
+            AdviceBinding binding = (AdviceBinding) it.next();
+            if (binding.getPointcut().matchesCall(this, callingConstructor, called, calledCon))
             {
-               AdviceBinding binding = (AdviceBinding) it.next();
-               if (binding.getPointcut().matchesCall(this, callingConstructor, called, calledCon))
-               {
-                  addConstructorCalledByConPointcut(callingIndex, calledClass, calledConHash, binding);
-                  matched = true;
-               }
+               addConstructorCalledByConPointcut(callingIndex, calledClass, calledConHash, binding);
+               matched = true;
             }
          }
          if (!matched) initializeConCalledByConEmptyChain(callingIndex, calledClass, calledConHash);
@@ -1881,6 +1876,35 @@ public class ClassAdvisor extends Advisor
       return invocation.invokeNext();
    }
 
+   /**
+    * Returns the accessor reading and writing the advised field with the given index
+    * at the end of the interceptor chain
+    */
+   public FieldAccessor getFieldAccessor(int index)
+   {
+      FieldAccessor[] accessors = fieldAccessors;
+      if (accessors == null)
+      {
+         accessors = manager.getFieldAccessorFactory().getAccessors(clazz, advisedFields);
+         fieldAccessors = accessors;
+      }
+      return accessors[index];
+   }
+
+   /**
+    * Returns true if the field access needs an invocation, i.e. there are class or
+    * instance interceptors for it
+    */
+   private boolean hasFieldInterceptors(FieldInfo info, Object target)
+   {
+      info.initialiseInterceptors();
+      Interceptor[] aspects = info.getInterceptors();
+      if (aspects != null && aspects.length > 0) return true;
+      if (target == null) return false;
+      InstanceAdvisor advisor = ((InstanceAdvised) target)._getInstanceAdvisor();
+      return advisor != null && advisor.hasInterceptors();
+   }
+
    /**
     * Invokes interceptor chain.
     * This is the beginning
@@ -1901,12 +1925,34 @@ public class ClassAdvisor extends Advisor
             aspects = advisor.getInterceptors(aspects);
          }
       }
+      if (aspects.length == 0) return getFieldAccessor(index).get(target);
       invocation = new FieldReadInvocation(advisedFields[index], index, aspects);
       invocation.setAdvisor(this);
       invocation.setTargetObject(target);
+      invocation.setAccessor(getFieldAccessor(index));
       return invocation.invokeNext();
    }
 
+   /**
+    * Reads an int field without boxing its value unless there are interceptors
+    */
+   public int invokeReadInt(Object target, int index)
+   throws Throwable
+   {
+      if (!hasFieldInterceptors(fieldReadInfos[index], target)) return getFieldAccessor(index).getInt(target);
+      return ((Integer) invokeRead(target, index)).intValue();
+   }
+
+   /**
+    * Reads a long field without boxing its value unless there are interceptors
+    */
+   public long invokeReadLong(Object target, int index)
+   throws Throwable
+   {
+      if (!hasFieldInterceptors(fieldReadInfos[index], target)) return getFieldAccessor(index).getLong(target);
+      return ((Long) invokeRead(target, index)).longValue();
+   }
+
    /**
     * Invokes interceptor chain.
     * This is the beginning
@@ -1927,12 +1973,46 @@ public class ClassAdvisor extends Advisor
             aspects = advised._getInstanceAdvisor().getInterceptors(aspects);
          }
       }
+      if (aspects.length == 0)
+      {
+         getFieldAccessor(index).set(target, value);
+         return null;
+      }
       invocation = new FieldWriteInvocation(advisedFields[index], index, value, aspects);
       invocation.setAdvisor(this);
       invocation.setTargetObject(target);
+      invocation.setAccessor(getFieldAccessor(index));
       return invocation.invokeNext();
    }
 
+   /**
+    * Writes an int field without boxing the value unless there are interceptors
+    */
+   public void invokeWriteInt(Object target, int index, int value)
+   throws Throwable
+   {
+      if (!hasFieldInterceptors(fieldWriteInfos[index], target))
+      {
+         getFieldAccessor(index).setInt(target, value);
+         return;
+      }
+      invokeWrite(target, index, new Integer(value));
+   }
+
+   /**
+    * Writes a long field without boxing the value unless there are interceptors
+    */
+   public void invokeWriteLong(Object target, int index, long value)
+   throws Throwable
+   {
+      if (!hasFieldInterceptors(fieldWriteInfos[index], target))
+      {
+         getFieldAccessor(index).setLong(target, value);
+         return;
+      }
+      invokeWrite(target, index, new Long(value));
+   }
+
    /**
     * Invokes interceptor chain.
     * This is the beginning
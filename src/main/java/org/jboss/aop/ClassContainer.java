@@ -27,7 +27,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 
 import org.jboss.aop.advice.AdviceBinding;
 import org.jboss.aop.metadata.ClassMetaDataBinding;
@@ -212,6 +211,8 @@ public class ClassContainer extends Advisor
          info.setUnadvisedMethod(amethod);
          info.setHash(keys[i]);
          info.setAdvisor(this);
+         // Create the invoker here rather than in the first invocation
+         info.getInvoker();
          newInterceptors.put(keys[i], info);
       }
       return newInterceptors;
@@ -235,20 +236,13 @@ public class ClassContainer extends Advisor
       TLongObjectHashMap newMethodInfos = initializeMethodChain();
       ArrayList newConstructorInfos = initializeConstructorChain();
       
-      LinkedHashMap bindings = manager.getBindings();
-      synchronized (bindings)
+      Iterator it = manager.getBindingsSnapshot().iterator();
+      while (it.hasNext())
       {
-         if (bindings.size() > 0)
-         {
-            Iterator it = bindings.values().iterator();
-            while (it.hasNext())
-            {
-               AdviceBinding binding = (AdviceBinding) it.next();
-               if (AspectManager.verbose) System.out.println("iterate binding " + binding.getName());
-               resolveMethodPointcut(newMethodInfos, binding);
-               resolveConstructorPointcut(newConstructorInfos, binding);
-            }
-         }
+         AdviceBinding binding = (AdviceBinding) it.next();
+         if (AspectManager.verbose) System.out.println("iterate binding " + binding.getName());
+         resolveMethodPointcut(newMethodInfos, binding);
+         resolveConstructorPointcut(newConstructorInfos, binding);
       }
       finalizeConstructorChain(newConstructorInfos);
       finalizeMethodChain(newMethodInfos);
@@ -258,6 +252,7 @@ public class ClassContainer extends Advisor
       methodInterceptors = newMethodInfos;
       
       populateInterceptorsFromInfos();
+      interceptorChainVersion++;
       
       doesHaveAspects = adviceBindings.size() > 0;
    }
@@ -54,6 +54,8 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
     */
    private InterceptorChainObserver interceptorChainObserver;
    InstanceAdvisorDelegate delegate;
+   // merged chains handed out by getInterceptors(Interceptor[]), recreated lazily after deserialization
+   private transient volatile InstanceChainCache chainCache;
    public ClassInstanceAdvisor()
    {
       delegate = new InstanceAdvisorDelegate(null, this);
@@ -116,14 +118,43 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
    public Interceptor[] getInterceptors(Interceptor[] advisorChain)
    {
       if (insertedInterceptors == null && appendedInterceptors == null) return advisorChain;
-      ArrayList newlist = new ArrayList();
-      if (insertedInterceptors != null) newlist.addAll(insertedInterceptors);
-      if (advisorChain != null)
+      InstanceChainCache cache = getChainCache();
+      int classVersion = getClassAdvisorChainVersion();
+      Interceptor[] merged = cache.get(advisorChain, classVersion);
+      if (merged != null) return merged;
+      synchronized (cache)
       {
-         newlist.addAll(Arrays.asList(advisorChain));
+         ArrayList newlist = new ArrayList();
+         if (insertedInterceptors != null) newlist.addAll(insertedInterceptors);
+         if (advisorChain != null)
+         {
+            newlist.addAll(Arrays.asList(advisorChain));
+         }
+         if (appendedInterceptors != null) newlist.addAll(appendedInterceptors);
+         merged = (Interceptor[]) newlist.toArray(new Interceptor[newlist.size()]);
+         cache.put(advisorChain, classVersion, merged);
       }
-      if (appendedInterceptors != null) newlist.addAll(appendedInterceptors);
-      return (Interceptor[]) newlist.toArray(new Interceptor[newlist.size()]);
+      return merged;
+   }
+
+   private int getClassAdvisorChainVersion()
+   {
+      Advisor advisor = (classAdvisorRef != null) ? (Advisor) classAdvisorRef.get() : null;
+      return (advisor != null) ? advisor.getInterceptorChainVersion() : 0;
+   }
+
+   private InstanceChainCache getChainCache()
+   {
+      InstanceChainCache cache = chainCache;
+      if (cache == null)
+      {
+         synchronized (this)
+         {
+            if (chainCache == null) chainCache = new InstanceChainCache();
+            cache = chainCache;
+         }
+      }
+      return cache;
    }
 
    public void insertInterceptor(int index, Interceptor interceptor)
@@ -135,6 +166,7 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
       }
       newList.add(index, interceptor);
       insertedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -151,6 +183,7 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
       }
       newList.add(interceptor);
       insertedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -167,6 +200,7 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
       }
       newList.add(interceptor);
       appendedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -183,6 +217,7 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
       }
       newList.add(index, interceptor);
       appendedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -239,6 +274,7 @@ public class ClassInstanceAdvisor implements InstanceAdvisor, java.io.Serializab
             }
          }
       }
+      if (interceptorsRemoved > 0) getChainCache().invalidate();
       hasInstanceAspects = ((insertedInterceptors != null && insertedInterceptors.size() > 0)
       || (appendedInterceptors != null && appendedInterceptors.size() > 0));
       return interceptorsRemoved;
@@ -33,6 +33,8 @@ import javassist.ClassPool;
 import org.jboss.aop.advice.AdviceStack;
 import org.jboss.aop.advice.AspectDefinition;
 import org.jboss.aop.advice.InterceptorFactory;
+import org.jboss.aop.joinpoint.FieldAccessorFactory;
+import org.jboss.aop.joinpoint.MethodInvokerFactory;
 import org.jboss.aop.metadata.ClassMetaDataLoader;
 import org.jboss.aop.pointcut.CFlowStack;
 import org.jboss.aop.pointcut.DynamicCFlow;
@@ -50,10 +52,29 @@ import org.jboss.aop.pointcut.ast.ClassExpression;
  */
 public class Domain extends AspectManager
 {
+   // indexes of the merged views
+   private static final int BINDINGS = 0;
+   private static final int POINTCUTS = 1;
+   private static final int POINTCUT_INFOS = 2;
+   private static final int ANNOTATION_INTRODUCTIONS = 3;
+   private static final int ANNOTATION_OVERRIDES = 4;
+   private static final int INTERFACE_INTRODUCTIONS = 5;
+   private static final int TYPEDEFS = 6;
+   private static final int INTERCEPTOR_STACKS = 7;
+   private static final int CLASS_META_DATA_LOADERS = 8;
+   private static final int CFLOW_STACKS = 9;
+   private static final int DYNAMIC_CFLOWS = 10;
+   private static final int PER_VM_ASPECTS = 11;
+   private static final int CLASS_META_DATA = 12;
+   private static final int PRECEDENCE_DEFS = 13;
+   private static final int VIEW_COUNT = 14;
+
    protected AspectManager parent;
    protected boolean parentFirst;
    protected boolean inheritsDeclarations = true;
    protected boolean inheritsBindings = false;
+   /** The merged definitions of this domain and its parent, rebuilt when getDefinitionsVersion() changes */
+   private final View[] views = new View[VIEW_COUNT];
 
 
    public Domain(AspectManager manager, boolean parentFirst)
@@ -94,6 +115,23 @@ public class Domain extends AspectManager
    }
 
    
+   public int getDefinitionsVersion()
+   {
+      return super.getDefinitionsVersion() + parent.getDefinitionsVersion();
+   }
+
+   private Object getView(int index, int version)
+   {
+      View view = views[index];
+      if (view == null || view.version != version) return null;
+      return view.value;
+   }
+
+   private void setView(int index, int version, Object value)
+   {
+      views[index] = new View(version, value);
+   }
+
    public void removeBindings(ArrayList binds)
    {
       super.removeBindings(binds);
@@ -103,337 +141,490 @@ public class Domain extends AspectManager
    {
       if (inheritsBindings)
       {
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         LinkedHashMap view = (LinkedHashMap) getView(BINDINGS, version);
+         if (view == null)
          {
-            // when child first, parent bindings go in first so that they can be overridden by child.
-            LinkedHashMap map = new LinkedHashMap(parent.getBindings());
-            map.putAll(this.bindings);
-            return map;
-         }
-         else
-         {
-            LinkedHashMap map = new LinkedHashMap(this.bindings);
-            map.putAll(parent.getBindings());
-            return map;
+            view = mergeBindings();
+            setView(BINDINGS, version, view);
          }
+         return view;
       }
       return super.getBindings();
    }
 
+   private LinkedHashMap mergeBindings()
+   {
+      if (!parentFirst)
+      {
+         // when child first, parent bindings go in first so that they can be overridden by child.
+         LinkedHashMap map = new LinkedHashMap(parent.getBindings());
+         map.putAll(this.bindings);
+         return map;
+      }
+      else
+      {
+         LinkedHashMap map = new LinkedHashMap(this.bindings);
+         map.putAll(parent.getBindings());
+         return map;
+      }
+   }
+
    public LinkedHashMap getPointcuts()
    {
       if (inheritsBindings)
       {
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         LinkedHashMap view = (LinkedHashMap) getView(POINTCUTS, version);
+         if (view == null)
          {
-            // when child first, parent bindings go in first so that they can be overridden by child.
-            LinkedHashMap map = new LinkedHashMap(parent.getPointcuts());
-            map.putAll(this.pointcuts);
-            return map;
-         }
-         else
-         {
-            LinkedHashMap map = new LinkedHashMap(this.pointcuts);
-            map.putAll(parent.getPointcuts());
-            return map;
+            view = mergePointcuts();
+            setView(POINTCUTS, version, view);
          }
+         return view;
       }
       return super.getPointcuts();
    }
 
+   private LinkedHashMap mergePointcuts()
+   {
+      if (!parentFirst)
+      {
+         // when child first, parent bindings go in first so that they can be overridden by child.
+         LinkedHashMap map = new LinkedHashMap(parent.getPointcuts());
+         map.putAll(this.pointcuts);
+         return map;
+      }
+      else
+      {
+         LinkedHashMap map = new LinkedHashMap(this.pointcuts);
+         map.putAll(parent.getPointcuts());
+         return map;
+      }
+   }
+
    public LinkedHashMap getPointcutInfos()
    {
       if (inheritsBindings)
       {
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         LinkedHashMap view = (LinkedHashMap) getView(POINTCUT_INFOS, version);
+         if (view == null)
          {
-            // when child first, parent bindings go in first so that they can be overridden by child.
-            LinkedHashMap map = new LinkedHashMap(parent.getPointcutInfos());
-            map.putAll(this.pointcutInfos);
-            return map;
-         }
-         else
-         {
-            LinkedHashMap map = new LinkedHashMap(this.pointcutInfos);
-            map.putAll(parent.getPointcutInfos());
-            return map;
+            view = mergePointcutInfos();
+            setView(POINTCUT_INFOS, version, view);
          }
+         return view;
       }
       return super.getPointcutInfos();
    }
 
-   public List getAnnotationIntroductions()
+   private LinkedHashMap mergePointcutInfos()
    {
+      if (!parentFirst)
+      {
+         // when child first, parent bindings go in first so that they can be overridden by child.
+         LinkedHashMap map = new LinkedHashMap(parent.getPointcutInfos());
+         map.putAll(this.pointcutInfos);
+         return map;
+      }
+      else
+      {
+         LinkedHashMap map = new LinkedHashMap(this.pointcutInfos);
+         map.putAll(parent.getPointcutInfos());
+         return map;
+      }
+   }
 
+   public List getAnnotationIntroductions()
+   {
       if (inheritsBindings)
       {
-         List result = new ArrayList();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         List view = (List) getView(ANNOTATION_INTRODUCTIONS, version);
+         if (view == null)
          {
-            // when child first, parent bindings go in first so that they can be overridden by child.
-            result.addAll(parent.getAnnotationIntroductions());
-            synchronized (annotationIntroductions)
-            {
-               result = new ArrayList(annotationIntroductions.values());
-            }
-            return result;
-         }
-         else
-         {
-            synchronized (annotationIntroductions)
-            {
-               result = new ArrayList(annotationIntroductions.values());
-            }
-            result.addAll(parent.getAnnotationIntroductions());
-            return result;
+            view = mergeAnnotationIntroductions();
+            setView(ANNOTATION_INTRODUCTIONS, version, view);
          }
+         return view;
       }
-
       return super.getAnnotationIntroductions();
+   }
 
+   private List mergeAnnotationIntroductions()
+   {
+      List result = new ArrayList();
+      if (!parentFirst)
+      {
+         // when child first, parent bindings go in first so that they can be overridden by child.
+         result.addAll(parent.getAnnotationIntroductions());
+         synchronized (annotationIntroductions)
+         {
+            result = new ArrayList(annotationIntroductions.values());
+         }
+         return result;
+      }
+      else
+      {
+         synchronized (annotationIntroductions)
+         {
+            result = new ArrayList(annotationIntroductions.values());
+         }
+         result.addAll(parent.getAnnotationIntroductions());
+         return result;
+      }
    }
 
    public List getAnnotationOverrides()
    {
       if (inheritsBindings)
       {
-         ArrayList list = new ArrayList();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         List view = (List) getView(ANNOTATION_OVERRIDES, version);
+         if (view == null)
          {
-            list.addAll(parent.getAnnotationOverrides());
-            synchronized (annotationOverrides)
-            {
-               list.addAll(annotationOverrides.values());
-            }
-            return list;
+            view = mergeAnnotationOverrides();
+            setView(ANNOTATION_OVERRIDES, version, view);
          }
-         else
+         return view;
+      }
+      return super.getAnnotationOverrides();
+   }
+
+   private List mergeAnnotationOverrides()
+   {
+      ArrayList list = new ArrayList();
+      if (!parentFirst)
+      {
+         list.addAll(parent.getAnnotationOverrides());
+         synchronized (annotationOverrides)
          {
-            synchronized (annotationOverrides)
-            {
-               list.addAll(annotationOverrides.values());
-            }
-            list.addAll(parent.getAnnotationOverrides());
-            return list;
+            list.addAll(annotationOverrides.values());
          }
+         return list;
+      }
+      else
+      {
+         synchronized (annotationOverrides)
+         {
+            list.addAll(annotationOverrides.values());
+         }
+         list.addAll(parent.getAnnotationOverrides());
+         return list;
       }
-      return super.getAnnotationOverrides();
    }
 
    public Map getInterfaceIntroductions()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(INTERFACE_INTRODUCTIONS, version);
+         if (view == null)
          {
-            map.putAll(parent.getInterfaceIntroductions());
-            synchronized (interfaceIntroductions)
-            {
-               map.putAll(interfaceIntroductions);
-            }
-            return map;
+            view = mergeInterfaceIntroductions();
+            setView(INTERFACE_INTRODUCTIONS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getInterfaceIntroductions();
+   }
+
+   private Map mergeInterfaceIntroductions()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getInterfaceIntroductions());
+         synchronized (interfaceIntroductions)
          {
-            synchronized (interfaceIntroductions)
-            {
-               map.putAll(interfaceIntroductions);
-            }
-            map.putAll(parent.getInterfaceIntroductions());
-            return map;
+            map.putAll(interfaceIntroductions);
          }
+         return map;
+      }
+      else
+      {
+         synchronized (interfaceIntroductions)
+         {
+            map.putAll(interfaceIntroductions);
+         }
+         map.putAll(parent.getInterfaceIntroductions());
+         return map;
       }
-      return super.getInterfaceIntroductions();
    }
 
    public Map getTypedefs()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(TYPEDEFS, version);
+         if (view == null)
          {
-            map.putAll(parent.getTypedefs());
-            synchronized (typedefs)
-            {
-               map.putAll(typedefs);
-            }
-            return map;
+            view = mergeTypedefs();
+            setView(TYPEDEFS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getTypedefs();
+   }
+
+   private Map mergeTypedefs()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getTypedefs());
+         synchronized (typedefs)
          {
-            synchronized (typedefs)
-            {
-               map.putAll(typedefs);
-            }
-            map.putAll(parent.getTypedefs());
-            return map;
+            map.putAll(typedefs);
          }
+         return map;
+      }
+      else
+      {
+         synchronized (typedefs)
+         {
+            map.putAll(typedefs);
+         }
+         map.putAll(parent.getTypedefs());
+         return map;
       }
-      return super.getTypedefs();
    }
 
    public Map getInterceptorStacks()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(INTERCEPTOR_STACKS, version);
+         if (view == null)
          {
-            map.putAll(parent.getInterceptorStacks());
-            synchronized (interceptorStacks)
-            {
-               map.putAll(interceptorStacks);
-            }
-            return map;
+            view = mergeInterceptorStacks();
+            setView(INTERCEPTOR_STACKS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getInterceptorStacks();
+   }
+
+   private Map mergeInterceptorStacks()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getInterceptorStacks());
+         synchronized (interceptorStacks)
          {
-            synchronized (interceptorStacks)
-            {
-               map.putAll(interceptorStacks);
-            }
-            map.putAll(parent.getInterceptorStacks());
-            return map;
+            map.putAll(interceptorStacks);
          }
+         return map;
+      }
+      else
+      {
+         synchronized (interceptorStacks)
+         {
+            map.putAll(interceptorStacks);
+         }
+         map.putAll(parent.getInterceptorStacks());
+         return map;
       }
-      return super.getInterceptorStacks();
    }
 
    public Map getClassMetaDataLoaders()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(CLASS_META_DATA_LOADERS, version);
+         if (view == null)
          {
-            map.putAll(parent.getClassMetaDataLoaders());
-            synchronized (classMetaDataLoaders)
-            {
-               map.putAll(classMetaDataLoaders);
-            }
-            return map;
+            view = mergeClassMetaDataLoaders();
+            setView(CLASS_META_DATA_LOADERS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getClassMetaDataLoaders();
+   }
+
+   private Map mergeClassMetaDataLoaders()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getClassMetaDataLoaders());
+         synchronized (classMetaDataLoaders)
          {
-            synchronized (classMetaDataLoaders)
-            {
-               map.putAll(classMetaDataLoaders);
-            }
-            map.putAll(parent.getClassMetaDataLoaders());
-            return map;
+            map.putAll(classMetaDataLoaders);
          }
+         return map;
+      }
+      else
+      {
+         synchronized (classMetaDataLoaders)
+         {
+            map.putAll(classMetaDataLoaders);
+         }
+         map.putAll(parent.getClassMetaDataLoaders());
+         return map;
       }
-      return super.getClassMetaDataLoaders();
    }
 
    public Map getCflowStacks()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(CFLOW_STACKS, version);
+         if (view == null)
          {
-            map.putAll(parent.getCflowStacks());
-            synchronized (cflowStacks)
-            {
-               map.putAll(cflowStacks);
-            }
-            return map;
+            view = mergeCflowStacks();
+            setView(CFLOW_STACKS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getCflowStacks();
+   }
+
+   private Map mergeCflowStacks()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getCflowStacks());
+         synchronized (cflowStacks)
          {
-            synchronized (cflowStacks)
-            {
-               map.putAll(cflowStacks);
-            }
-            map.putAll(parent.getCflowStacks());
-            return map;
+            map.putAll(cflowStacks);
          }
+         return map;
+      }
+      else
+      {
+         synchronized (cflowStacks)
+         {
+            map.putAll(cflowStacks);
+         }
+         map.putAll(parent.getCflowStacks());
+         return map;
       }
-      return super.getCflowStacks();
    }
 
    public Map getDynamicCFlows()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(DYNAMIC_CFLOWS, version);
+         if (view == null)
          {
-            map.putAll(parent.getDynamicCFlows());
-            synchronized (dynamicCFlows)
-            {
-               map.putAll(dynamicCFlows);
-            }
-            return map;
+            view = mergeDynamicCFlows();
+            setView(DYNAMIC_CFLOWS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getDynamicCFlows();
+   }
+
+   private Map mergeDynamicCFlows()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getDynamicCFlows());
+         synchronized (dynamicCFlows)
          {
-            synchronized (dynamicCFlows)
-            {
-               map.putAll(dynamicCFlows);
-            }
-            map.putAll(parent.getDynamicCFlows());
-            return map;
+            map.putAll(dynamicCFlows);
+         }
+         return map;
+      }
+      else
+      {
+         synchronized (dynamicCFlows)
+         {
+            map.putAll(dynamicCFlows);
          }
+         map.putAll(parent.getDynamicCFlows());
+         return map;
       }
-      return super.getDynamicCFlows();   
    }
 
    public Map getPerVMAspects()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(PER_VM_ASPECTS, version);
+         if (view == null)
          {
-            map.putAll(parent.getPerVMAspects());
-            synchronized (perVMAspects)
-            {
-               map.putAll(perVMAspects);
-            }
-            return map;
+            view = mergePerVMAspects();
+            setView(PER_VM_ASPECTS, version, view);
          }
-         else
+         return view;
+      }
+      return super.getPerVMAspects();
+   }
+
+   private Map mergePerVMAspects()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getPerVMAspects());
+         synchronized (perVMAspects)
          {
-            synchronized (perVMAspects)
-            {
-               map.putAll(perVMAspects);
-            }
-            map.putAll(parent.getPerVMAspects());
-            return map;
+            map.putAll(perVMAspects);
+         }
+         return map;
+      }
+      else
+      {
+         synchronized (perVMAspects)
+         {
+            map.putAll(perVMAspects);
          }
+         map.putAll(parent.getPerVMAspects());
+         return map;
       }
-      return super.getPerVMAspects();   
    }
 
    public Map getClassMetaData()
    {
       if (inheritsBindings)
       {
-         HashMap map = new HashMap();
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         Map view = (Map) getView(CLASS_META_DATA, version);
+         if (view == null)
          {
-            map.putAll(parent.getClassMetaData());
-            synchronized (classMetaData)
-            {
-               map.putAll(classMetaData);
-            }
-            return map;
+            view = mergeClassMetaData();
+            setView(CLASS_META_DATA, version, view);
          }
-         else
+         return view;
+      }
+      return super.getClassMetaData();
+   }
+
+   private Map mergeClassMetaData()
+   {
+      HashMap map = new HashMap();
+      if (!parentFirst)
+      {
+         map.putAll(parent.getClassMetaData());
+         synchronized (classMetaData)
          {
-            synchronized (classMetaData)
-            {
-               map.putAll(classMetaData);
-            }
-            map.putAll(parent.getClassMetaData());
-            return map;
+            map.putAll(classMetaData);
+         }
+         return map;
+      }
+      else
+      {
+         synchronized (classMetaData)
+         {
+            map.putAll(classMetaData);
          }
+         map.putAll(parent.getClassMetaData());
+         return map;
       }
-      return super.getClassMetaData();   
    }
 
    public InterceptorFactory getInterceptorFactory(String name)
@@ -604,32 +795,32 @@ public class Domain extends AspectManager
    }
 
 
-   public DynamicCFlow getDynamicCFlow(String name)
+   public DynamicCFlow getDynamicCFlow(String name, Advisor advisor)
    {      
       if (inheritsBindings)
       {
          if (!parentFirst)
          {
-            DynamicCFlow cflow = super.getDynamicCFlow(name);
+            DynamicCFlow cflow = super.getDynamicCFlow(name, advisor);
             if (cflow == null)
             {
-               cflow = parent.getDynamicCFlow(name);
+               cflow = parent.getDynamicCFlow(name, advisor);
             }
             return cflow;
          }
          else
          {
-            DynamicCFlow cflow = parent.getDynamicCFlow(name);
+            DynamicCFlow cflow = parent.getDynamicCFlow(name, advisor);
             if (cflow == null)
             {
-               cflow = super.getDynamicCFlow(name);
+               cflow = super.getDynamicCFlow(name, advisor);
             }
             return cflow;
          }
       }
       else
       {
-         return super.getDynamicCFlow(name);
+         return super.getDynamicCFlow(name, advisor);
       }
    }
 
@@ -637,22 +828,34 @@ public class Domain extends AspectManager
    {
       if (inheritsDeclarations)
       {
-         if (!parentFirst)
+         int version = getDefinitionsVersion();
+         LinkedHashMap view = (LinkedHashMap) getView(PRECEDENCE_DEFS, version);
+         if (view == null)
          {
-            // when child first, parent bindings go in first so that they can be overridden by child.
-            LinkedHashMap map = new LinkedHashMap(parent.getPrecedenceDefs());
-            map.putAll(this.precedenceDefs);
-            return map;
-         }
-         else
-         {
-            LinkedHashMap map = new LinkedHashMap(this.precedenceDefs);
-            map.putAll(parent.getPrecedenceDefs());
-            return map;
+            view = mergePrecedenceDefs();
+            setView(PRECEDENCE_DEFS, version, view);
          }
+         return view;
       }
       return super.getPrecedenceDefs();
    }
+
+   private LinkedHashMap mergePrecedenceDefs()
+   {
+      if (!parentFirst)
+      {
+         // when child first, parent bindings go in first so that they can be overridden by child.
+         LinkedHashMap map = new LinkedHashMap(parent.getPrecedenceDefs());
+         map.putAll(this.precedenceDefs);
+         return map;
+      }
+      else
+      {
+         LinkedHashMap map = new LinkedHashMap(this.precedenceDefs);
+         map.putAll(parent.getPrecedenceDefs());
+         return map;
+      }
+   }
    
    public ClassMetaDataLoader findClassMetaDataLoader(String group)
    {
@@ -770,6 +973,26 @@ public class Domain extends AspectManager
       parent.setDynamicAOPStrategy(strategy);
    }
 
+   public MethodInvokerFactory getMethodInvokerFactory()
+   {
+      return parent.getMethodInvokerFactory();
+   }
+
+   public void setMethodInvokerFactory(MethodInvokerFactory factory)
+   {
+      parent.setMethodInvokerFactory(factory);
+   }
+
+   public FieldAccessorFactory getFieldAccessorFactory()
+   {
+      return parent.getFieldAccessorFactory();
+   }
+
+   public void setFieldAccessorFactory(FieldAccessorFactory factory)
+   {
+      parent.setFieldAccessorFactory(factory);
+   }
+
    protected void updatePointcutStats(Pointcut pointcut)
    {
       parent.updatePointcutStats(pointcut);
@@ -815,4 +1038,18 @@ public class Domain extends AspectManager
       return parent.isSet();
    }
 
+   /**
+    * A merged map or list, and the definitions version it was built for
+    */
+   private static class View
+   {
+      final int version;
+      final Object value;
+
+      View(int version, Object value)
+      {
+         this.version = version;
+         this.value = value;
+      }
+   }
 }
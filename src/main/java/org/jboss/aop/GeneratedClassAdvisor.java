@@ -25,6 +25,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,9 +41,11 @@ import org.jboss.aop.instrument.ConstructionJoinPointGenerator;
 import org.jboss.aop.instrument.ConstructorJoinPointGenerator;
 import org.jboss.aop.instrument.FieldJoinPointGenerator;
 import org.jboss.aop.instrument.JoinPointGenerator;
+import org.jboss.aop.instrument.JoinPointWarmer;
 import org.jboss.aop.instrument.MethodByConJoinPointGenerator;
 import org.jboss.aop.instrument.MethodByMethodJoinPointGenerator;
 import org.jboss.aop.instrument.MethodJoinPointGenerator;
+import org.jboss.aop.instrument.TransformerCommon;
 import org.jboss.aop.joinpoint.Joinpoint;
 
 import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
@@ -91,6 +94,49 @@ public class GeneratedClassAdvisor extends ClassAdvisor
    {
       super.setManager(manager);
       manager.initialiseClassAdvisor(clazz, this);
+      if (AspectManager.warmUpJoinPoints && !(this instanceof InstanceAdvisor) && !TransformerCommon.isCompileTime())
+      {
+         JoinPointWarmer.submit(this);
+      }
+   }
+
+   /**
+    * @return all the joinpoint generators created so far, including those of callers
+    */
+   public List getJoinPointGenerators()
+   {
+      ArrayList generators = new ArrayList();
+      generators.addAll(constructorJoinPoinGenerators.values());
+      generators.addAll(constructionJoinPoinGenerators.values());
+      generators.addAll(fieldReadJoinPoinGenerators.values());
+      generators.addAll(fieldWriteJoinPoinGenerators.values());
+      generators.addAll(methodJoinPoinGenerators.values());
+      generators.addAll(conByConJoinPoinGenerators.values());
+      generators.addAll(conByMethodJoinPoinGenerators.values());
+      //The caller of method generators are mapped by called class
+      for (Iterator it = methodByConJoinPoinGenerators.values().iterator() ; it.hasNext() ; )
+      {
+         generators.addAll(((Map)it.next()).values());
+      }
+      for (Iterator it = methodByMethodJoinPoinGenerators.values().iterator() ; it.hasNext() ; )
+      {
+         generators.addAll(((Map)it.next()).values());
+      }
+      return generators;
+   }
+
+   /**
+    * Generates the joinpoint classes of all advised joinpoints, so that the first invocation of
+    * each does not have to. Joinpoints whose bindings change later are regenerated lazily as usual.
+    * The context classloader must be able to see the aspects, as on a normal invocation.
+    */
+   public void generateJoinPointClasses()
+   {
+      List generators = getJoinPointGenerators();
+      for (int i = 0 ; i < generators.size() ; i++)
+      {
+         ((JoinPointGenerator)generators.get(i)).pregenerateJoinPointClass();
+      }
    }
 
    protected void addMethodInfo(MethodInfo mi)
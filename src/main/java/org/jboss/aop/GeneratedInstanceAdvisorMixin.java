@@ -50,6 +50,8 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
    public boolean hasInstanceAspects = false;
    private InterceptorChainObserver interceptorChainObserver;
    InstanceAdvisorDelegate delegate;
+   // merged chains handed out by getInterceptors(Interceptor[]), recreated lazily after deserialization
+   private transient volatile InstanceChainCache chainCache;
    
    public GeneratedInstanceAdvisorMixin()
    {
@@ -114,26 +116,50 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
    public Interceptor[] getInterceptors(Interceptor[] advisorChain)
    {
       if (insertedInterceptors == null && appendedInterceptors == null) return advisorChain;
-      ArrayList newlist = new ArrayList();
-      if (insertedInterceptors != null) 
-      {
-         for (Iterator it = insertedInterceptors.iterator() ; it.hasNext() ; )
+      InstanceChainCache cache = getChainCache();
+      Advisor advisor = (delegate != null) ? delegate.getAdvisor() : null;
+      int classVersion = (advisor != null) ? advisor.getInterceptorChainVersion() : 0;
+      Interceptor[] merged = cache.get(advisorChain, classVersion);
+      if (merged != null) return merged;
+      synchronized (cache)
+      {
+         ArrayList newlist = new ArrayList();
+         if (insertedInterceptors != null) 
          {
-            newlist.add(((InterceptorFactoryWrapper)it.next()).create(null, null));
+            for (Iterator it = insertedInterceptors.iterator() ; it.hasNext() ; )
+            {
+               newlist.add(((InterceptorFactoryWrapper)it.next()).create(null, null));
+            }
          }
+         if (advisorChain != null)
+         {
+            newlist.addAll(Arrays.asList(advisorChain));
+         }
+         if (appendedInterceptors != null) 
+         {
+            for (Iterator it = appendedInterceptors.iterator() ; it.hasNext() ; )
+            {
+               newlist.add(((InterceptorFactoryWrapper)it.next()).create(null, null));
+            }
+         }
+         merged = (Interceptor[]) newlist.toArray(new Interceptor[newlist.size()]);
+         cache.put(advisorChain, classVersion, merged);
       }
-      if (advisorChain != null)
-      {
-         newlist.addAll(Arrays.asList(advisorChain));
-      }
-      if (appendedInterceptors != null) 
+      return merged;
+   }
+
+   private InstanceChainCache getChainCache()
+   {
+      InstanceChainCache cache = chainCache;
+      if (cache == null)
       {
-         for (Iterator it = appendedInterceptors.iterator() ; it.hasNext() ; )
+         synchronized (this)
          {
-            newlist.add(((InterceptorFactoryWrapper)it.next()).create(null, null));
+            if (chainCache == null) chainCache = new InstanceChainCache();
+            cache = chainCache;
          }
       }
-      return (Interceptor[]) newlist.toArray(new Interceptor[newlist.size()]);
+      return cache;
    }
 
    public InterceptorFactoryWrapper[] getWrappers()
@@ -169,6 +195,7 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
       }
       newList.add(index, createWrapper(interceptor));
       insertedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -185,6 +212,7 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
       }
       newList.add(createWrapper(interceptor));
       insertedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -201,6 +229,7 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
       }
       newList.add(createWrapper(interceptor));
       appendedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {      
@@ -217,6 +246,7 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
       }
       newList.add(index, createWrapper(interceptor));
       appendedInterceptors = newList;
+      getChainCache().invalidate();
       hasInstanceAspects = true;
       if (interceptorChainObserver != null)
       {
@@ -273,6 +303,7 @@ public class GeneratedInstanceAdvisorMixin implements InstanceAdvisor, java.io.S
             }
          }
       }
+      if (interceptorsRemoved > 0) getChainCache().invalidate();
       hasInstanceAspects = ((insertedInterceptors != null && insertedInterceptors.size() > 0)
       || (appendedInterceptors != null && appendedInterceptors.size() > 0));
       return interceptorsRemoved;
@@ -23,6 +23,7 @@ package org.jboss.aop;
 
 import java.io.Serializable;
 import java.lang.ref.WeakReference;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +31,7 @@ import java.util.WeakHashMap;
 
 import org.jboss.aop.advice.AspectDefinition;
 import org.jboss.aop.joinpoint.Joinpoint;
+import org.jboss.aop.metadata.CopyOnWriteMetaData;
 import org.jboss.aop.metadata.SimpleMetaData;
 
 import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
@@ -44,11 +46,16 @@ import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
 public class InstanceAdvisorDelegate implements Serializable
 {
    private static final long serialVersionUID = -5421366346785427537L;
+   private static final AspectSlots NO_ASPECTS = new AspectSlots(new Object[0], new int[0]);
    
    protected transient WeakReference classAdvisor;
    InstanceAdvisor instanceAdvisor;
-   protected transient WeakHashMap aspects;
-   protected transient WeakHashMap joinpointAspects;
+   /** The per instance aspects, indexed by the aspect slots of the class advisor */
+   private transient volatile AspectSlots aspects;
+   /** Maps of joinpoint to per joinpoint aspect, indexed by the aspect slots of the class advisor */
+   private transient volatile AspectSlots joinpointAspects;
+   /** Aspects of definitions undeployed after the chains calling them were built */
+   private transient WeakHashMap unslottedAspects;
    protected SimpleMetaData metadata;
 
 
@@ -77,97 +84,129 @@ public class InstanceAdvisorDelegate implements Serializable
    {
       return getAdvisor();
    }
+
+   private Advisor.AspectSlot getSlot(AspectDefinition def)
+   {
+      Advisor advisor = getClassAdvisor();
+      return (advisor == null) ? null : advisor.getAspectSlot(def);
+   }
    
    private synchronized void initializeAspects()
    {
       if (getClassAdvisor() == null) return;
       if (aspects != null) return; // doublecheck I know, but I don't want to do synchronization if not needed
-      //ClassAdvisor cadvisor = (ClassAdvisor) classAdvisor;
-      Set defs = getClassAdvisor().getPerInstanceAspectDefinitions();
+      AspectSlots slots = createAspects(NO_ASPECTS, getClassAdvisor().getPerInstanceAspectDefinitions());
       if (instanceAdvisor instanceof Advisor)
       {
          Advisor ia = (Advisor)instanceAdvisor;
-         Set instanceDefs = ia.getPerInstanceAspectDefinitions();
-         defs.addAll(instanceDefs);
+         slots = createAspects(slots, ia.getPerInstanceAspectDefinitions());
       }
-      if (defs.size() > 0)
+      aspects = slots;
+   }
+
+   private AspectSlots createAspects(AspectSlots slots, Set defs)
+   {
+      Iterator it = defs.iterator();
+      while (it.hasNext())
       {
-         aspects = new WeakHashMap();
-         Iterator it = defs.iterator();
-         while (it.hasNext())
-         {
-            AspectDefinition def = (AspectDefinition) it.next();
-            Object aspect = def.getFactory().createPerInstance(getClassAdvisor(), instanceAdvisor);
-            aspects.put(def, aspect);
-         }
+         AspectDefinition def = (AspectDefinition) it.next();
+         Advisor.AspectSlot slot = getSlot(def);
+         if (slot == null || slots.get(slot) != null) continue;
+         Object aspect = def.getFactory().createPerInstance(getClassAdvisor(), instanceAdvisor);
+         slots = slots.with(slot, aspect);
       }
+      return slots;
    }
 
    private synchronized void initializeJoinpointAspects()
    {
       if (getClassAdvisor() == null) return;
       if (joinpointAspects != null) return; // doublecheck I know, but I don't want to do synchronization if not needed
-      Map jpAspects = getClassAdvisor().getPerInstanceJoinpointAspectDefinitions();
+      AspectSlots slots = createJoinpointAspects(NO_ASPECTS, getClassAdvisor().getPerInstanceJoinpointAspectDefinitions());
       if (instanceAdvisor instanceof Advisor)
       {
          Advisor ia = (Advisor)instanceAdvisor;
-         Map instanceJpAspects = ia.getPerInstanceJoinpointAspectDefinitions();
-         jpAspects.putAll(instanceJpAspects);
+         slots = createJoinpointAspects(slots, ia.getPerInstanceJoinpointAspectDefinitions());
       }
-      
-      if (jpAspects.size() > 0)
+      joinpointAspects = slots;
+   }
+
+   private AspectSlots createJoinpointAspects(AspectSlots slots, Map jpAspects)
+   {
+      Iterator it = jpAspects.keySet().iterator();
+      while (it.hasNext())
       {
-         joinpointAspects = new WeakHashMap();
-         Iterator it = jpAspects.keySet().iterator();
-         while (it.hasNext())
+         AspectDefinition def = (AspectDefinition) it.next();
+         Advisor.AspectSlot slot = getSlot(def);
+         if (slot == null) continue;
+         ConcurrentReaderHashMap joins = (ConcurrentReaderHashMap) slots.get(slot);
+         if (joins == null)
          {
-            AspectDefinition def = (AspectDefinition) it.next();
-            ConcurrentReaderHashMap joins = new ConcurrentReaderHashMap();
-            joinpointAspects.put(def, joins);
-            Set joinpoints = (Set) jpAspects.get(def);
-            Iterator jps = joinpoints.iterator();
-            while (jps.hasNext())
-            {
-               Object joinpoint = jps.next();
-               joins.put(joinpoint, def.getFactory().createPerJoinpoint(getClassAdvisor(), instanceAdvisor, (Joinpoint) joinpoint));
-            }
+            joins = new ConcurrentReaderHashMap();
+            slots = slots.with(slot, joins);
+         }
+         Set joinpoints = (Set) jpAspects.get(def);
+         Iterator jps = joinpoints.iterator();
+         while (jps.hasNext())
+         {
+            Object joinpoint = jps.next();
+            joins.put(joinpoint, def.getFactory().createPerJoinpoint(getClassAdvisor(), instanceAdvisor, (Joinpoint) joinpoint));
          }
       }
+      return slots;
    }
    
    public Object getPerInstanceAspect(String def)
    {
-      Iterator it = aspects.keySet().iterator();
+      AspectSlots slots = aspects;
+      Advisor advisor = getClassAdvisor();
+      if (slots == null || advisor == null) return null;
+      Object aspect = findPerInstanceAspect(slots, advisor.getPerInstanceAspectDefinitions(), def);
+      if (aspect == null && instanceAdvisor instanceof Advisor)
+      {
+         aspect = findPerInstanceAspect(slots, ((Advisor) instanceAdvisor).getPerInstanceAspectDefinitions(), def);
+      }
+      return aspect;
+   }
+
+   private Object findPerInstanceAspect(AspectSlots slots, Set defs, String name)
+   {
+      Iterator it = defs.iterator();
       while (it.hasNext())
       {
          AspectDefinition d = (AspectDefinition) it.next();
-         if (d.getName().equals(def)) return aspects.get(d);
+         if (d.getName().equals(name))
+         {
+            Advisor.AspectSlot slot = getSlot(d);
+            return (slot == null) ? null : slots.get(slot);
+         }
       }
       return null;
    }
+
    public Object getPerInstanceAspect(AspectDefinition def)
    {
-      // aspects is a weak hash map of AspectDefinitions so that perinstance advices can be undeployed/redeployed
+      // aspects are looked up by the slot and generation of the AspectDefinition so that perinstance advices can be undeployed/redeployed
       if (aspects == null)
       {
          initializeAspects();
-         return aspects.get(def);
+         if (aspects == null) return null;
       }
-      Object aspect = aspects.get(def);
+      Advisor.AspectSlot slot = getSlot(def);
+      if (slot == null) return getUnslottedAspect(def, null);
+      Object aspect = aspects.get(slot);
       if (aspect == null)
       {
          synchronized (this) // doublecheck, but I don't want to synchronize everywhere and dynamic aspects are rare
          {
-            aspect = aspects.get(def);
+            aspect = aspects.get(slot);
             if (aspect != null) return aspect;
             if (classAdvisor != null && getClassAdvisor() instanceof ClassAdvisor)
             {
                ClassAdvisor cadvisor = (ClassAdvisor) getClassAdvisor();
                cadvisor.getPerInstanceAspectDefinitions().add(def);
                aspect = def.getFactory().createPerInstance(null, null);
-               WeakHashMap copy = new WeakHashMap(aspects);
-               copy.put(def, aspect);
-               aspects = copy;
+               aspects = aspects.with(slot, aspect);
             }
          }
       }
@@ -176,43 +215,77 @@ public class InstanceAdvisorDelegate implements Serializable
 
    public Object getPerInstanceJoinpointAspect(Joinpoint joinpoint, AspectDefinition def)
    {
-      // aspects is a weak hash map of AspectDefinitions so that perinstance advices can be undeployed/redeployed
+      // aspects are looked up by the slot and generation of the AspectDefinition so that perinstance advices can be undeployed/redeployed
       if (joinpointAspects == null)
       {
          initializeJoinpointAspects();
-         return getJoinpointAspect(def, joinpoint);
       }
-      Object aspect = getJoinpointAspect(def, joinpoint);
+      Advisor.AspectSlot slot = getSlot(def);
+      if (slot == null) return getUnslottedAspect(def, joinpoint);
+      Object aspect = getJoinpointAspect(slot, joinpoint);
       if (aspect == null)
       {
          synchronized (this) // doublecheck, but I don't want to synchronize everywhere and dynamic aspects are rare
          {
-            aspect = getJoinpointAspect(def, joinpoint);
+            aspect = getJoinpointAspect(slot, joinpoint);
             if (aspect != null) return aspect;
             if (classAdvisor != null && getClassAdvisor() instanceof ClassAdvisor)
             {
                ClassAdvisor cadvisor = (ClassAdvisor) getClassAdvisor();
                cadvisor.addPerInstanceJoinpointAspect(joinpoint, def);
                aspect = def.getFactory().createPerJoinpoint(getClassAdvisor(), instanceAdvisor, joinpoint);
-               WeakHashMap copy = new WeakHashMap(joinpointAspects);
-               Map map = (Map) copy.get(def);
+               AspectSlots slots = (joinpointAspects == null) ? NO_ASPECTS : joinpointAspects;
+               Map map = (Map) slots.get(slot);
                if (map == null)
                {
                   map = new ConcurrentReaderHashMap();
+                  slots = slots.with(slot, map);
                }
                map.put(joinpoint, aspect);
-               joinpointAspects = copy;
+               joinpointAspects = slots;
             }
          }
       }
       return aspect;
    }
 
-   private Object getJoinpointAspect(AspectDefinition def, Joinpoint joinpoint)
+   private Object getJoinpointAspect(Advisor.AspectSlot slot, Joinpoint joinpoint)
+   {
+      AspectSlots slots = joinpointAspects;
+      if (slots == null) return null;
+      Map map = (Map) slots.get(slot);
+      if (map == null) return null;
+      return map.get(joinpoint);
+   }
+
+   /**
+    * Calls already on their way through a chain built before the definition was undeployed
+    * still get an aspect, which is kept apart from the slotted ones
+    *
+    * @param joinpoint the joinpoint of a per joinpoint aspect, or null for a per instance aspect
+    */
+   private synchronized Object getUnslottedAspect(AspectDefinition def, Joinpoint joinpoint)
    {
-      if (joinpointAspects == null) return null;
-      Map map = (Map) joinpointAspects.get(def);
-      Object aspect = map.get(joinpoint);
+      if (unslottedAspects == null) unslottedAspects = new WeakHashMap();
+      HashMap defAspects = (HashMap) unslottedAspects.get(def);
+      if (defAspects == null)
+      {
+         defAspects = new HashMap();
+         unslottedAspects.put(def, defAspects);
+      }
+      Object aspect = defAspects.get(joinpoint);
+      if (aspect == null)
+      {
+         if (joinpoint == null)
+         {
+            aspect = def.getFactory().createPerInstance(getClassAdvisor(), instanceAdvisor);
+         }
+         else
+         {
+            aspect = def.getFactory().createPerJoinpoint(getClassAdvisor(), instanceAdvisor, joinpoint);
+         }
+         defAspects.put(joinpoint, aspect);
+      }
       return aspect;
    }
    
@@ -224,11 +297,47 @@ public class InstanceAdvisorDelegate implements Serializable
          {
             if (metadata == null)
             {
-               metadata = new SimpleMetaData();
+               metadata = new CopyOnWriteMetaData();
             }
          }
       }
       return metadata;
    }
 
+   /**
+    * Immutable array of values indexed by the slot of their AspectDefinition in the class
+    * advisor. The generation of the slot is kept next to each value, so that a value left behind
+    * by an undeployed definition is not mistaken for one of the definition that took over its slot.
+    */
+   private static class AspectSlots
+   {
+      private final Object[] values;
+      private final int[] generations;
+
+      AspectSlots(Object[] values, int[] generations)
+      {
+         this.values = values;
+         this.generations = generations;
+      }
+
+      Object get(Advisor.AspectSlot slot)
+      {
+         int index = slot.index;
+         if (index >= values.length || generations[index] != slot.generation) return null;
+         return values[index];
+      }
+
+      AspectSlots with(Advisor.AspectSlot slot, Object value)
+      {
+         int index = slot.index;
+         int length = Math.max(values.length, index + 1);
+         Object[] newValues = new Object[length];
+         int[] newGenerations = new int[length];
+         System.arraycopy(values, 0, newValues, 0, values.length);
+         System.arraycopy(generations, 0, newGenerations, 0, generations.length);
+         newValues[index] = value;
+         newGenerations[index] = slot.generation;
+         return new AspectSlots(newValues, newGenerations);
+      }
+   }
 }
@@ -0,0 +1,88 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop;
+
+import java.util.IdentityHashMap;
+
+import org.jboss.aop.advice.Interceptor;
+
+/**
+ * Caches the chains an instance advisor builds by merging its own interceptors
+ * with the chains of the class advisor, so that invocations on an object with
+ * instance interceptors do not assemble a new chain every time.
+ * <p/>
+ * Merged chains are keyed on the identity of the class advisor's chain, which is
+ * replaced rather than modified when the advisor rebuilds its interceptors. The
+ * cache is dropped as a whole when the instance interceptors change or when the
+ * class advisor's chain version moves on. Lookups don't lock, the caller has to
+ * merge and {@link #put} while holding the lock on this cache and
+ * {@link #invalidate()} after changing its interceptors.
+ *
+ * @version $Revision$
+ */
+final class InstanceChainCache
+{
+   private volatile Snapshot snapshot;
+
+   private static final class Snapshot
+   {
+      final int classVersion;
+      final IdentityHashMap chains;
+
+      Snapshot(int classVersion, IdentityHashMap chains)
+      {
+         this.classVersion = classVersion;
+         this.chains = chains;
+      }
+   }
+
+   /**
+    * @return the cached merged chain, or null if it has to be built
+    */
+   Interceptor[] get(Interceptor[] advisorChain, int classVersion)
+   {
+      Snapshot current = snapshot;
+      if (current == null || current.classVersion != classVersion) return null;
+      return (Interceptor[]) current.chains.get(advisorChain);
+   }
+
+   synchronized void put(Interceptor[] advisorChain, int classVersion, Interceptor[] merged)
+   {
+      Snapshot current = snapshot;
+      IdentityHashMap chains;
+      if (current == null || current.classVersion != classVersion)
+      {
+         chains = new IdentityHashMap();
+      }
+      else
+      {
+         chains = new IdentityHashMap(current.chains);
+      }
+      chains.put(advisorChain, merged);
+      snapshot = new Snapshot(classVersion, chains);
+   }
+
+   synchronized void invalidate()
+   {
+      snapshot = null;
+   }
+}
@@ -21,6 +21,8 @@
   */
 package org.jboss.aop;
 
+import java.util.ArrayList;
+
 import org.jboss.aop.advice.AdviceBinding;
 import org.jboss.aop.metadata.ClassMetaDataBinding;
 
@@ -56,6 +58,22 @@ public class InstanceDomain extends Domain
       {
          bindings.put(binding.getName(), binding);
       }
+      definitionsChanged();
+      if (advisor != null) advisor.newBindingAdded();
+   }
+
+   public synchronized void addBindings(ArrayList newBindings)
+   {
+      for (int i = 0; i < newBindings.size(); i++)
+      {
+         AdviceBinding binding = (AdviceBinding) newBindings.get(i);
+         removeBinding(binding.getName());
+         synchronized (bindings)
+         {
+            bindings.put(binding.getName(), binding);
+         }
+      }
+      definitionsChanged();
       if (advisor != null) advisor.newBindingAdded();
    }
 
@@ -23,8 +23,10 @@ package org.jboss.aop;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.jboss.aop.advice.Interceptor;
+import org.jboss.aop.advice.InterceptorChainInterner;
 import org.jboss.aop.advice.InterceptorFactoryWrapper;
 import org.jboss.aop.joinpoint.Joinpoint;
 
@@ -33,14 +35,14 @@ public abstract class JoinPointInfo
    //These get set for generated advisors
    /** @deprecated use accessors instead */
    public InterceptorFactoryWrapper[] factories;
-   /** @deprecated use accessors instead */
-   public ArrayList factoryChain = new ArrayList();
+   /** @deprecated use accessors instead, created on demand and released once the factories are set */
+   public ArrayList factoryChain;
 
    //These get set for old school advisors
    /** @deprecated use accessors instead */
    public Interceptor[] interceptors;
-   /** @deprecated use accessors instead */
-   public ArrayList interceptorChain = new ArrayList();
+   /** @deprecated use accessors instead, created on demand and released once the interceptors are set */
+   public ArrayList interceptorChain;
    
    private WeakReference advisor;
    
@@ -67,19 +69,19 @@ public abstract class JoinPointInfo
          this.factories = new InterceptorFactoryWrapper[other.factories.length];
          System.arraycopy(other.factories, 0, this.factories, 0, other.factories.length);
       }
-      if (other.factoryChain != null)this.factoryChain = (ArrayList)factoryChain.clone();
+      if (other.factoryChain != null)this.factoryChain = (ArrayList)other.factoryChain.clone();
       if (other.interceptors != null)
       {
          this.interceptors = new Interceptor[other.interceptors.length];
          System.arraycopy(other.interceptors, 0, this.interceptors, 0, other.interceptors.length);
       }
-      if (other.interceptorChain != null)this.interceptorChain = (ArrayList)interceptorChain.clone();
+      if (other.interceptorChain != null)this.interceptorChain = (ArrayList)other.interceptorChain.clone();
    }
 
    protected void clear()
    {
-      factoryChain.clear();
-      interceptorChain.clear();
+      factoryChain = null;
+      interceptorChain = null;
       interceptors = null;
       factories = null;
    }
@@ -114,13 +116,15 @@ public abstract class JoinPointInfo
          return this;
       }
 
-      interceptors = new Interceptor[factories.length];
+      Interceptor[] created = new Interceptor[factories.length];
       
       for (int i = 0 ; i < factories.length ; i++)
       {
          //TODO: Handle CFlow
-         interceptors[i] = factories[i].create(getAdvisor(), getJoinpoint());
+         created[i] = factories[i].create(getAdvisor(), getJoinpoint());
       }
+      interceptors = InterceptorChainInterner.intern(created);
+      interceptorChain = null;
       return this;
    }
    
@@ -147,7 +151,17 @@ public abstract class JoinPointInfo
       return joinpoint;
    }
    
+   /**
+    * Returns the list the interceptor chain is built up in. It is released by
+    * {@link #setInterceptors(Interceptor[])}, and recreated from the interceptors
+    * if it is asked for again.
+    */
    public ArrayList getInterceptorChain() {
+      if (interceptorChain == null)
+      {
+         interceptorChain = new ArrayList();
+         if (interceptors != null) interceptorChain.addAll(Arrays.asList(interceptors));
+      }
       return interceptorChain;
    }
 
@@ -159,8 +173,13 @@ public abstract class JoinPointInfo
       return interceptors;
    }
 
+   /**
+    * Sets the finished chain, which is replaced by an identical chain that is already
+    * in use by another joinpoint if there is one
+    */
    public void setInterceptors(Interceptor[] interceptors) {
-      this.interceptors = interceptors;
+      this.interceptors = InterceptorChainInterner.intern(interceptors);
+      this.interceptorChain = null;
    }
 
    public InterceptorFactoryWrapper[] getFactories()
@@ -171,10 +190,21 @@ public abstract class JoinPointInfo
    public void setFactories(InterceptorFactoryWrapper[] factories)
    {
       this.factories = factories;
+      this.factoryChain = null;
    }
 
+   /**
+    * Returns the list the factory chain is built up in. It is released by
+    * {@link #setFactories(InterceptorFactoryWrapper[])}, and recreated from the
+    * factories if it is asked for again.
+    */
    public ArrayList getFactoryChain()
    {
+      if (factoryChain == null)
+      {
+         factoryChain = new ArrayList();
+         if (factories != null) factoryChain.addAll(Arrays.asList(factories));
+      }
       return factoryChain;
    }
 
@@ -22,7 +22,9 @@
 package org.jboss.aop;
 
 import org.jboss.aop.joinpoint.Joinpoint;
+import org.jboss.aop.joinpoint.MethodInvoker;
 import org.jboss.aop.joinpoint.MethodJoinpoint;
+import org.jboss.aop.joinpoint.ReflectionMethodInvoker;
 import org.jboss.aop.util.MethodHashing;
 
 import java.lang.reflect.Method;
@@ -38,6 +40,7 @@ public class MethodInfo extends JoinPointInfo
    public Method unadvisedMethod;
    /** @deprecated use accessors instead */
    public long hash;
+   private volatile MethodInvoker invoker;
    
    public MethodInfo()
    {
@@ -71,6 +74,7 @@ public class MethodInfo extends JoinPointInfo
       this.advisedMethod = other.advisedMethod;
       this.unadvisedMethod = other.unadvisedMethod;
       this.hash = other.hash;
+      this.invoker = other.invoker;
    }
    
    protected Joinpoint internalGetJoinpoint()
@@ -109,6 +113,35 @@ public class MethodInfo extends JoinPointInfo
 
    public void setUnadvisedMethod(Method unadvisedMethod) {
       this.unadvisedMethod = unadvisedMethod;
+      this.invoker = null;
+   }
+
+   /**
+    * Returns the invoker calling the unadvised method, created on first use by
+    * the manager's {@link org.jboss.aop.joinpoint.MethodInvokerFactory}
+    */
+   public MethodInvoker getInvoker()
+   {
+      MethodInvoker current = invoker;
+      if (current == null && unadvisedMethod != null)
+      {
+         Advisor advisor = getAdvisor();
+         if (advisor != null && advisor.getManager() != null)
+         {
+            current = advisor.getManager().getMethodInvokerFactory().getInvoker(unadvisedMethod);
+         }
+         else
+         {
+            current = new ReflectionMethodInvoker(unadvisedMethod);
+         }
+         invoker = current;
+      }
+      return current;
+   }
+
+   public void setInvoker(MethodInvoker invoker)
+   {
+      this.invoker = invoker;
    }
    
    public String toString()
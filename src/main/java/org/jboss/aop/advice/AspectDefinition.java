@@ -40,7 +40,7 @@ public class AspectDefinition
    protected String name;
    protected Scope scope = Scope.PER_VM;
    protected AspectFactory factory;
-   protected boolean deployed = true;
+   protected volatile boolean deployed = true;
    /**
     * @deprecated Should not access from outside this class
     */
@@ -56,12 +56,20 @@ public class CFlowInterceptor implements Interceptor
 
    public Object invoke(Invocation invocation) throws Throwable
    {
-      if (new CFlowMatcher().matches(expr, invocation))
+      CFlowMatcher.enterInvocation();
+      try
       {
-         Invocation wrapper = invocation.getWrapper(chain);
-         return wrapper.invokeNext();
+         if (new CFlowMatcher().matches(expr, invocation))
+         {
+            Invocation wrapper = invocation.getWrapper(chain);
+            return wrapper.invokeNext();
+         }
+         // no match for cflow so just go down chain
+         return invocation.invokeNext();
+      }
+      finally
+      {
+         CFlowMatcher.exitInvocation();
       }
-      // no match for cflow so just go down chain
-      return invocation.invokeNext();
    }
 }
@@ -21,7 +21,11 @@
   */
 package org.jboss.aop.advice;
 
+import java.util.WeakHashMap;
+
+import org.jboss.aop.Advisor;
 import org.jboss.aop.pointcut.DynamicCFlow;
+import org.jboss.aop.pointcut.StatefulDynamicCFlow;
 import org.jboss.util.xml.XmlLoadable;
 import org.w3c.dom.Element;
 
@@ -37,6 +41,8 @@ public class DynamicCFlowDefinition
    private String className;
    private Element element;
    private Class pClass;
+   private volatile DynamicCFlow shared;
+   private WeakHashMap perAdvisor;
 
    public DynamicCFlowDefinition(Element element, String className, String name)
    {
@@ -55,22 +61,65 @@ public class DynamicCFlowDefinition
       return className;
    }
 
-   public DynamicCFlow create()
+   /**
+    * Returns the instance to evaluate for the given advisor. A single instance is
+    * shared unless the implementation is a {@link StatefulDynamicCFlow}, in which case
+    * there is one per advisor, or a new one each time if the advisor is not known.
+    */
+   public DynamicCFlow getInstance(Advisor advisor)
    {
-      if (pClass == null)
+      if (!StatefulDynamicCFlow.class.isAssignableFrom(getCFlowClass()))
       {
-         try
+         DynamicCFlow cflow = shared;
+         if (cflow == null)
          {
-            pClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            synchronized (this)
+            {
+               cflow = shared;
+               if (cflow == null)
+               {
+                  cflow = create();
+                  shared = cflow;
+               }
+            }
          }
-         catch (ClassNotFoundException e)
+         return cflow;
+      }
+
+      if (advisor == null)
+      {
+         return create();
+      }
+      synchronized (this)
+      {
+         if (perAdvisor == null)
          {
-            throw new RuntimeException("dynamic cflow class not found: " + className);
+            perAdvisor = new WeakHashMap();
+         }
+         DynamicCFlow cflow = (DynamicCFlow) perAdvisor.get(advisor);
+         if (cflow == null)
+         {
+            cflow = create();
+            perAdvisor.put(advisor, cflow);
          }
+         return cflow;
       }
+   }
+
+   /**
+    * Drops the cached instances, called when the definition is replaced or removed
+    */
+   public synchronized void invalidate()
+   {
+      shared = null;
+      perAdvisor = null;
+   }
+
+   public DynamicCFlow create()
+   {
       try
       {
-         DynamicCFlow cflow = (DynamicCFlow) pClass.newInstance();
+         DynamicCFlow cflow = (DynamicCFlow) getCFlowClass().newInstance();
          if (cflow instanceof XmlLoadable)
          {
             ((XmlLoadable) cflow).importXml(element);
@@ -88,4 +137,20 @@ public class DynamicCFlowDefinition
 
    }
 
+   private Class getCFlowClass()
+   {
+      if (pClass == null)
+      {
+         try
+         {
+            pClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+         }
+         catch (ClassNotFoundException e)
+         {
+            throw new RuntimeException("dynamic cflow class not found: " + className);
+         }
+      }
+      return pClass;
+   }
+
 }
@@ -0,0 +1,170 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.advice;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+/**
+ * Table of canonical interceptor chains. Joinpoints matched by the same bindings end up
+ * with the same PER_VM and PER_CLASS interceptor instances in the same order, and share
+ * one array instead of each holding a copy. Chains are compared by the identity of their
+ * interceptors, so chains containing per joinpoint interceptors are never shared.
+ * <p/>
+ * The table only references the chains weakly, a chain is dropped once no joinpoint uses
+ * it any more. Shared chains must not be modified.
+ *
+ * @version $Revision$
+ */
+public class InterceptorChainInterner
+{
+   // object header plus array length, and the size of a reference
+   private static final int ARRAY_OVERHEAD = 16;
+   private static final int REFERENCE_SIZE = 4;
+
+   private static final ReferenceQueue collected = new ReferenceQueue();
+   /** Chain -> the same Chain, referencing the canonical array */
+   private static final HashMap chains = new HashMap();
+   private static long interned;
+   private static long shared;
+   private static long savedBytes;
+
+   /**
+    * @return the canonical chain with the same interceptors, which is the passed in chain
+    *         if there was none
+    */
+   public static Interceptor[] intern(Interceptor[] interceptors)
+   {
+      if (interceptors == null || interceptors.length == 0) return interceptors;
+
+      Chain key = new Chain(interceptors, null);
+      synchronized (chains)
+      {
+         purge();
+         interned++;
+         Chain chain = (Chain) chains.get(key);
+         Interceptor[] canonical = (chain != null) ? (Interceptor[]) chain.get() : null;
+         if (canonical != null)
+         {
+            shared++;
+            savedBytes += ARRAY_OVERHEAD + REFERENCE_SIZE * interceptors.length;
+            return canonical;
+         }
+         chain = new Chain(interceptors, collected);
+         chains.put(chain, chain);
+         return interceptors;
+      }
+   }
+
+   private static void purge()
+   {
+      Object chain;
+      while ((chain = collected.poll()) != null)
+      {
+         chains.remove(chain);
+      }
+   }
+
+   /**
+    * @return the number of distinct chains currently in use
+    */
+   public static int getChainCount()
+   {
+      synchronized (chains)
+      {
+         purge();
+         return chains.size();
+      }
+   }
+
+   /**
+    * @return the number of chains passed to {@link #intern(Interceptor[])}
+    */
+   public static long getInternedCount()
+   {
+      synchronized (chains)
+      {
+         return interned;
+      }
+   }
+
+   /**
+    * @return the number of chains replaced by an existing canonical chain
+    */
+   public static long getSharedCount()
+   {
+      synchronized (chains)
+      {
+         return shared;
+      }
+   }
+
+   /**
+    * @return an estimate of the heap used by the chains that were replaced by a canonical chain
+    */
+   public static long getSavedBytes()
+   {
+      synchronized (chains)
+      {
+         return savedBytes;
+      }
+   }
+
+   private static class Chain extends WeakReference
+   {
+      private int hashCode;
+
+      Chain(Interceptor[] interceptors, ReferenceQueue queue)
+      {
+         super(interceptors, queue);
+         int hash = interceptors.length;
+         for (int i = 0; i < interceptors.length; i++)
+         {
+            hash = 31 * hash + System.identityHashCode(interceptors[i]);
+         }
+         this.hashCode = hash;
+      }
+
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this) return true;
+         if (!(obj instanceof Chain)) return false;
+         Chain other = (Chain) obj;
+         if (hashCode != other.hashCode) return false;
+         Interceptor[] interceptors = (Interceptor[]) get();
+         Interceptor[] otherInterceptors = (Interceptor[]) other.get();
+         if (interceptors == null || otherInterceptors == null) return false;
+         if (interceptors.length != otherInterceptors.length) return false;
+         for (int i = 0; i < interceptors.length; i++)
+         {
+            if (interceptors[i] != otherInterceptors[i]) return false;
+         }
+         return true;
+      }
+   }
+}
@@ -49,6 +49,10 @@ public class InterceptorFactoryWrapper
    volatile Object instance; 
    String cflowString;
    ASTCFlowExpression cflowExpression;
+   // see getPrecedenceRank()
+   private String precedenceKey;
+   private PrecedenceRanking rankedBy;
+   private int precedenceRank;
    
    
    public InterceptorFactoryWrapper(
@@ -90,6 +94,24 @@ public class InterceptorFactoryWrapper
       }
    }
 
+   /**
+    * Returns the rank of the wrapped interceptor or advice in the precedence ranking,
+    * remembered until the precedence definitions change
+    */
+   synchronized int getPrecedenceRank(PrecedenceRanking ranking)
+   {
+      if (rankedBy != ranking)
+      {
+         if (precedenceKey == null)
+         {
+            precedenceKey = PrecedenceSorter.getPrecedenceKey(this);
+         }
+         precedenceRank = ranking.getRank(precedenceKey);
+         rankedBy = ranking;
+      }
+      return precedenceRank;
+   }
+
    public Interceptor create(Advisor advisor, Joinpoint joinpoint)
    {
       return factory.create(advisor, joinpoint);
@@ -38,8 +38,11 @@ import org.jboss.aop.joinpoint.Invocation;
 import org.jboss.aop.joinpoint.Joinpoint;
 import org.jboss.aop.joinpoint.MethodInvocation;
 import org.jboss.aop.joinpoint.MethodJoinpoint;
+import org.jboss.aop.proxy.ProxyClassCache;
 import org.jboss.aop.util.ReflectToJavassist;
 
+import EDU.oswego.cs.dl.util.concurrent.Callable;
+
 /**
  * Comment
  *
@@ -49,14 +52,28 @@ import org.jboss.aop.util.ReflectToJavassist;
 public class PerVmAdvice
 {
    private static long counter = 0;
+   /** aspect class -> generated interceptor classes, keyed on the code of their invoke() method */
+   private static ProxyClassCache interceptorClasses = new ProxyClassCache(true);
 
-   public static synchronized Interceptor generateOptimized(Joinpoint joinpoint, AspectManager manager, String adviceName, AspectDefinition a) throws Exception
+   public static Interceptor generateOptimized(Joinpoint joinpoint, AspectManager manager, String adviceName, AspectDefinition a) throws Exception
    {
       Object aspect = manager.getPerVMAspect(a);
       return generateInterceptor(joinpoint, aspect, adviceName);
 
    }
 
+   /**
+    * Generated interceptor classes only depend on the aspect class and the code calling the
+    * advice, so joinpoints that call an advice the same way share one class.
+    *
+    * @return the cache of generated interceptor classes, its hits are the interceptors that
+    *         reused a class and its misses the classes that were generated
+    */
+   public static ProxyClassCache getInterceptorClassCache()
+   {
+      return interceptorClasses;
+   }
+
    public static Interceptor generateInterceptor(Joinpoint joinpoint, Object aspect, String adviceName) throws Exception
    {
       Method[] methods = aspect.getClass().getMethods();
@@ -79,30 +96,6 @@ public class PerVmAdvice
          }
       }
 
-      ClassPool pool = AspectManager.instance().findClassPool(aspect.getClass().getClassLoader());
-      CtClass clazz = pool.makeClass("org.jboss.aop.advice." + aspect.getClass().getName() + counter++);
-      
-      // We need to know whether this Interceptor is actually advice.
-      CtClass interceptorInterface = pool.get("org.jboss.aop.advice.Interceptor");
-      CtClass abstractAdviceClass = pool.get("org.jboss.aop.advice.AbstractAdvice");
-      clazz.setSuperclass(abstractAdviceClass);
-
-      // aspect field
-      CtClass aspectClass = pool.get(aspect.getClass().getName());
-      CtField field = new CtField(aspectClass, "aspectField", clazz);
-      field.setModifiers(javassist.Modifier.PUBLIC);
-      clazz.addField(field);
-      // getName()
-      CtMethod getNameTemplate = interceptorInterface.getDeclaredMethod("getName");
-      CtMethod getName = CtNewMethod.make(getNameTemplate.getReturnType(), "getName", getNameTemplate.getParameterTypes(), getNameTemplate.getExceptionTypes(), null, clazz);
-      String getNameBody =
-      "{ " +
-      "   return \"" + aspect.getClass().getName() + "." + adviceName + "\"; " +
-      "}";
-      getName.setBody(getNameBody);
-      getName.setModifiers(javassist.Modifier.PUBLIC);
-      clazz.addMethod(getName);
-
       // invoke
       String invokeBody =
       "public Object invoke(org.jboss.aop.joinpoint.Invocation invocation) throws java.lang.Throwable " +
@@ -124,42 +117,11 @@ public class PerVmAdvice
          invokeBody += "return aspectField." + adviceName + "((" + param + ")invocation); ";
       }
       invokeBody += "}";
-      CtMethod invoke = CtNewMethod.make(invokeBody, clazz);
-      invoke.setModifiers(javassist.Modifier.PUBLIC);
-      clazz.addMethod(invoke);
-      Class iclass = clazz.toClass();
-
-      Interceptor rtn = (Interceptor) iclass.newInstance();
-      Field f = iclass.getField("aspectField");
-      f.set(rtn, aspect);
-      return rtn;
+      return createInterceptor(aspect, adviceName, invokeBody, true);
    }
 
    public static Interceptor generateArgsInterceptor(Object aspect, Method advice, Joinpoint joinpoint) throws Exception
    {
-      ClassPool pool = AspectManager.instance().findClassPool(aspect.getClass().getClassLoader());
-      CtClass clazz = pool.makeClass("org.jboss.aop.advice." + aspect.getClass().getName() + counter++);
-
-      // We need to know whether this Interceptor is actually advice.
-      CtClass interceptorInterface = pool.get("org.jboss.aop.advice.Interceptor");
-      clazz.addInterface(interceptorInterface);
-
-      // aspect field
-      CtClass aspectClass = pool.get(aspect.getClass().getName());
-      CtField field = new CtField(aspectClass, "aspectField", clazz);
-      field.setModifiers(javassist.Modifier.PUBLIC);
-      clazz.addField(field);
-      // getName()
-      CtMethod getNameTemplate = interceptorInterface.getDeclaredMethod("getName");
-      CtMethod getName = CtNewMethod.make(getNameTemplate.getReturnType(), "getName", getNameTemplate.getParameterTypes(), getNameTemplate.getExceptionTypes(), null, clazz);
-      String getNameBody =
-      "{ " +
-      "   return \"" + aspect.getClass().getName() + "." + advice.getName() + "\"; " +
-      "}";
-      getName.setBody(getNameBody);
-      getName.setModifiers(javassist.Modifier.PUBLIC);
-      clazz.addMethod(getName);
-
       // invoke
       Method method = ((MethodJoinpoint) joinpoint).getMethod();
       String invocationType = null;
@@ -189,10 +151,72 @@ public class PerVmAdvice
          fillThreadStackBody(invokeBody, advice, method);
       }
       invokeBody.append('}');
+      return createInterceptor(aspect, advice.getName(), invokeBody.toString(), false);
+   }
+
+   /**
+    * Instantiates the interceptor class with the given <code>invoke()</code> method for the
+    * aspect, generating the class if no other joinpoint has needed it yet.
+    *
+    * @param abstractAdvice true if the class should extend {@link AbstractAdvice}, false if it
+    *                       should only implement {@link Interceptor}
+    */
+   private static Interceptor createInterceptor(final Object aspect, final String adviceName, final String invokeBody, final boolean abstractAdvice) throws Exception
+   {
+      final Class aspectClass = aspect.getClass();
+      String key = (abstractAdvice ? "advice " : "interceptor ") + adviceName + " " + invokeBody;
+      Class iclass = interceptorClasses.getProxyClass(aspectClass, key, new Callable()
+      {
+         public Object call() throws Exception
+         {
+            return generateInterceptorClass(aspectClass, adviceName, invokeBody, abstractAdvice);
+         }
+      });
+
+      Interceptor rtn = (Interceptor) iclass.newInstance();
+      Field f = iclass.getField("aspectField");
+      f.set(rtn, aspect);
+      return rtn;
+   }
+
+   private static Class generateInterceptorClass(Class aspectClass, String adviceName, String invokeBody, boolean abstractAdvice) throws Exception
+   {
+      ClassPool pool = AspectManager.instance().findClassPool(aspectClass.getClassLoader());
+      CtClass clazz = pool.makeClass("org.jboss.aop.advice." + aspectClass.getName() + nextCounter());
+
+      // We need to know whether this Interceptor is actually advice.
+      CtClass interceptorInterface = pool.get("org.jboss.aop.advice.Interceptor");
+      if (abstractAdvice)
+      {
+         CtClass abstractAdviceClass = pool.get("org.jboss.aop.advice.AbstractAdvice");
+         clazz.setSuperclass(abstractAdviceClass);
+      }
+      else
+      {
+         clazz.addInterface(interceptorInterface);
+      }
+
+      // aspect field
+      CtClass aspectCtClass = pool.get(aspectClass.getName());
+      CtField field = new CtField(aspectCtClass, "aspectField", clazz);
+      field.setModifiers(javassist.Modifier.PUBLIC);
+      clazz.addField(field);
+      // getName()
+      CtMethod getNameTemplate = interceptorInterface.getDeclaredMethod("getName");
+      CtMethod getName = CtNewMethod.make(getNameTemplate.getReturnType(), "getName", getNameTemplate.getParameterTypes(), getNameTemplate.getExceptionTypes(), null, clazz);
+      String getNameBody =
+      "{ " +
+      "   return \"" + aspectClass.getName() + "." + adviceName + "\"; " +
+      "}";
+      getName.setBody(getNameBody);
+      getName.setModifiers(javassist.Modifier.PUBLIC);
+      clazz.addMethod(getName);
+
+      // invoke
       CtMethod invoke = null;
       try
       {
-         invoke = CtNewMethod.make(invokeBody.toString(), clazz);
+         invoke = CtNewMethod.make(invokeBody, clazz);
       }
       catch(CannotCompileException e)
       {
@@ -201,23 +225,24 @@ public class PerVmAdvice
       }
       invoke.setModifiers(javassist.Modifier.PUBLIC);
       clazz.addMethod(invoke);
-      Class iclass = clazz.toClass();
+      return clazz.toClass();
+   }
 
-      Interceptor rtn = (Interceptor) iclass.newInstance();
-      Field f = iclass.getField("aspectField");
-      f.set(rtn, aspect);
-      return rtn;
+   private static synchronized long nextCounter()
+   {
+      return counter++;
    }
 
    private static void fillThreadStackBody(StringBuffer invokeBody, Method advice, Method method) throws Exception
    {
-      invokeBody.append("   org.jboss.aop.joinpoint.CurrentInvocation.push(invocation); ");
+      invokeBody.append("   org.jboss.aop.util.ThreadStack invocationStack = org.jboss.aop.joinpoint.CurrentInvocation.getStack(); ");
+      invokeBody.append("   invocationStack.push(invocation); ");
       invokeBody.append("   try {");
       invokeBody.append("return ($w)aspectField.").append(advice.getName());
       invokeBody.append("(");
       appendParamList(invokeBody, 0, advice.getParameterTypes(), method.getParameterTypes());
       invokeBody.append(");");
-      invokeBody.append("   } finally { org.jboss.aop.joinpoint.CurrentInvocation.pop(); }");
+      invokeBody.append("   } finally { invocationStack.pop(); }");
    }
 
    private static void fillInvocationBody(StringBuffer invokeBody, Method advice, Method method)
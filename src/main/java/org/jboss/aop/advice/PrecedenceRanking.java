@@ -0,0 +1,173 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.advice;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+
+/**
+ * The position of each interceptor class and advice in the overall precedence of a
+ * manager. It is computed once per change of the precedence definitions, so sorting
+ * a chain only needs a lookup per interceptor. Interceptor chains with the same ranks
+ * are sorted the same way, so the resulting order is remembered per sequence of ranks.
+ *
+ * @see PrecedenceSorter
+ * @version $Revision$
+ */
+public class PrecedenceRanking
+{
+   private static final int MAX_ORDERS = 1024;
+   private static final int[] UNCHANGED = new int[0];
+
+   /** interceptor class and advice method -> Integer index of the first matching precedence entry */
+   private HashMap ranks = new HashMap();
+   /** Ranks -> int[] index in the chain of each interceptor of the sorted chain, or UNCHANGED */
+   private Map orders = new ConcurrentReaderHashMap();
+
+   public PrecedenceRanking(PrecedenceDefEntry[] entries)
+   {
+      for (int i = 0; i < entries.length; i++)
+      {
+         String key = getKey(entries[i].interceptorClass, entries[i].adviceMethod);
+         if (!ranks.containsKey(key))
+         {
+            ranks.put(key, new Integer(i));
+         }
+      }
+   }
+
+   static String getKey(String classname, String method)
+   {
+      return (method == null) ? classname : classname + ' ' + method;
+   }
+
+   public boolean isEmpty()
+   {
+      return ranks.isEmpty();
+   }
+
+   /**
+    * @return the rank of the interceptor class or advice, or -1 if it has no precedence
+    */
+   int getRank(String key)
+   {
+      Integer rank = (Integer) ranks.get(key);
+      return (rank == null) ? -1 : rank.intValue();
+   }
+
+   /**
+    * @param chainRanks the rank of each interceptor in a chain
+    * @return the index in the chain of each interceptor of the sorted chain, or null if
+    *         sorting does not change the chain
+    */
+   int[] getOrder(int[] chainRanks)
+   {
+      Ranks key = new Ranks(chainRanks);
+      int[] order = (int[]) orders.get(key);
+      if (order == null)
+      {
+         order = sort(chainRanks);
+         if (orders.size() < MAX_ORDERS)
+         {
+            orders.put(key, order);
+         }
+      }
+      return (order == UNCHANGED) ? null : order;
+   }
+
+   /**
+    * The interceptors with a precedence are sorted by rank among the positions they
+    * occupy, keeping the original order for equal ranks. Interceptors without a
+    * precedence keep their position.
+    */
+   private static int[] sort(int[] chainRanks)
+   {
+      int count = 0;
+      for (int i = 0; i < chainRanks.length; i++)
+      {
+         if (chainRanks[i] >= 0) count++;
+      }
+      if (count < 2) return UNCHANGED;
+
+      int[] positions = new int[count];
+      int[] sorted = new int[count];
+      for (int i = 0, j = 0; i < chainRanks.length; i++)
+      {
+         if (chainRanks[i] < 0) continue;
+         positions[j] = i;
+
+         // insertion sort, chains are short
+         int k = j++;
+         while (k > 0 && chainRanks[sorted[k - 1]] > chainRanks[i])
+         {
+            sorted[k] = sorted[k - 1];
+            k--;
+         }
+         sorted[k] = i;
+      }
+
+      boolean changed = false;
+      int[] order = new int[chainRanks.length];
+      for (int i = 0; i < order.length; i++)
+      {
+         order[i] = i;
+      }
+      for (int j = 0; j < count; j++)
+      {
+         order[positions[j]] = sorted[j];
+         changed |= positions[j] != sorted[j];
+      }
+      return changed ? order : UNCHANGED;
+   }
+
+   private static class Ranks
+   {
+      int[] ranks;
+      int hashCode;
+
+      Ranks(int[] ranks)
+      {
+         this.ranks = ranks;
+         int hash = 1;
+         for (int i = 0; i < ranks.length; i++)
+         {
+            hash = 31 * hash + ranks[i];
+         }
+         this.hashCode = hash;
+      }
+
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this) return true;
+         if (!(obj instanceof Ranks)) return false;
+         return Arrays.equals(ranks, ((Ranks) obj).ranks);
+      }
+   }
+}
@@ -22,8 +22,6 @@
 package org.jboss.aop.advice;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 
@@ -36,135 +34,82 @@ import org.jboss.aop.AspectManager;
  */
 public class PrecedenceSorter
 {
-   static Comparator interceptorComparator = new Comparator()
+   /**
+    * @return the interceptor class and advice method the precedence entries are matched against
+    */
+   static String getPrecedenceKey(InterceptorFactoryWrapper factoryWrapper)
    {
-      public int compare(Object objA, Object objB)
-      {
-         InterceptorEntry entryA = (InterceptorEntry)objA;
-         InterceptorEntry entryB = (InterceptorEntry)objB;
-         
-         return entryA.precedenceOrder - entryB.precedenceOrder;
-      }
-   };
-   
-   static class InterceptorEntry
-   {
-      Interceptor interceptor;
-      InterceptorFactoryWrapper factoryWrapper;
-      int originalOrder;
-      int precedenceOrder = -1;
       String classname;
-      String method;
-      
-      InterceptorEntry(InterceptorFactoryWrapper factoryWrapper)
+      String method = null;
+      InterceptorFactory ifac = factoryWrapper.getDelegate();
+
+      if (ifac instanceof GenericInterceptorFactory)
       {
-         this.factoryWrapper = factoryWrapper;
-         classname = factoryWrapper.getName();
-         
-         InterceptorFactory ifac = factoryWrapper.getDelegate();
-         
-         if (ifac instanceof GenericInterceptorFactory)
-         {
-            //Dynamically added interceptors
-            classname = ((GenericInterceptorFactory)ifac).getClassName();
-         }
-         else 
-         {
-            AspectFactory af = factoryWrapper.getAspect().getFactory();
-            
-            if (af instanceof AspectFactoryDelegator)
-            {
-               classname = ((AspectFactoryDelegator)af).getName();
-            }
-            else
-            {
-               classname = ((GenericAspectFactory)af).getName();
-            }
-         }
-         
-         if (ifac instanceof AdviceFactory)
-         {
-            method = ((AdviceFactory)ifac).getAdvice();
-         }
+         //Dynamically added interceptors
+         classname = ((GenericInterceptorFactory)ifac).getClassName();
       }
-      
-      
-      InterceptorEntry(Interceptor interceptor)
+      else 
       {
-         this.interceptor = interceptor;
-
-         String interceptorName = null;
-         if (interceptor instanceof PerInstanceInterceptor)
-         {
-            PerInstanceInterceptor icptr = (PerInstanceInterceptor)interceptor;
-            interceptorName = icptr.getName();
-         }
-         else if (interceptor instanceof PerJoinpointInterceptor)
-         {
-            PerJoinpointInterceptor icptr = (PerJoinpointInterceptor)interceptor;
-            interceptorName = icptr.getName();
-         }
-         else if (interceptor instanceof CFlowInterceptor)
+         AspectFactory af = factoryWrapper.getAspect().getFactory();
+         
+         if (af instanceof AspectFactoryDelegator)
          {
-            CFlowInterceptor icptr = (CFlowInterceptor)interceptor;
-            interceptorName = icptr.getName();
+            classname = ((AspectFactoryDelegator)af).getName();
          }
          else
          {
-            interceptorName = interceptor.getClass().getName();
-         }
-         
-         try
-         {
-            boolean isAdvice = interceptorName.startsWith("org.jboss.aop.advice.");
-            if (isAdvice)
-            {
-               String name = interceptor.getName();
-               int index = name.lastIndexOf(".");
-               classname = name.substring(0, index);
-               method = name.substring(index + 1);
-            }
-            else
-            {
-               classname = interceptorName;
-            }
-         } 
-         catch (RuntimeException e)
-         {
-            System.err.print(interceptor.getName());
-            throw e;
+            classname = ((GenericAspectFactory)af).getName();
          }
       }
       
-      public String toString()
+      if (ifac instanceof AdviceFactory)
       {
-         return "Entry: " + precedenceOrder + " (" + originalOrder + ")interceptorClass=" + classname + "; adviceMethod=" + method;
+         method = ((AdviceFactory)ifac).getAdvice();
       }
-      
+      return PrecedenceRanking.getKey(classname, method);
    }
    
-   private static boolean matches(InterceptorEntry ientry, PrecedenceDefEntry pentry)
+   static String getPrecedenceKey(Interceptor interceptor)
    {
-      if (ientry.classname.equals(pentry.interceptorClass))
+      String interceptorName = null;
+      if (interceptor instanceof PerInstanceInterceptor)
       {
-         if (ientry.method == null)
-         {
-            if (pentry.adviceMethod == null)
-            {
-               return true;
-            }
-         }
-         else if (pentry.adviceMethod != null)
+         PerInstanceInterceptor icptr = (PerInstanceInterceptor)interceptor;
+         interceptorName = icptr.getName();
+      }
+      else if (interceptor instanceof PerJoinpointInterceptor)
+      {
+         PerJoinpointInterceptor icptr = (PerJoinpointInterceptor)interceptor;
+         interceptorName = icptr.getName();
+      }
+      else if (interceptor instanceof CFlowInterceptor)
+      {
+         CFlowInterceptor icptr = (CFlowInterceptor)interceptor;
+         interceptorName = icptr.getName();
+      }
+      else
+      {
+         interceptorName = interceptor.getClass().getName();
+      }
+      
+      try
+      {
+         boolean isAdvice = interceptorName.startsWith("org.jboss.aop.advice.");
+         if (isAdvice)
          {
-            //This was:
-            //return ientry.classname.equals(pentry.interceptorClass);
-            return ientry.method.equals(pentry.adviceMethod);
+            String name = interceptor.getName();
+            int index = name.lastIndexOf(".");
+            return PrecedenceRanking.getKey(name.substring(0, index), name.substring(index + 1));
          }
+         return PrecedenceRanking.getKey(interceptorName, null);
+      } 
+      catch (RuntimeException e)
+      {
+         System.err.print(interceptor.getName());
+         throw e;
       }
-      return false;
    }
    
-   
    public static PrecedenceDefEntry[] createOverallPrecedence(AspectManager manager)
    {
       ArrayList overall = new ArrayList();
@@ -250,98 +195,55 @@ public class PrecedenceSorter
    
    public static Interceptor[] applyPrecedence(Interceptor[] interceptors, AspectManager manager)
    {
-      if (interceptors.length == 0)
+      if (interceptors.length < 2)
          return interceptors;
       
-      ArrayList all = new ArrayList(interceptors.length);
-      ArrayList precedence = new ArrayList(interceptors.length);
-      PrecedenceDefEntry[] precedenceEntries = manager.getSortedPrecedenceDefEntries();
+      PrecedenceRanking ranking = manager.getPrecedenceRanking();
+      if (ranking.isEmpty())
+         return interceptors;
       
-      //Figure out what interceptors have precedence
+      int[] ranks = new int[interceptors.length];
       for (int i = 0 ; i < interceptors.length ; i++)
       {
-         InterceptorEntry interceptorEntry = new InterceptorEntry(interceptors[i]);
-         all.add(interceptorEntry);
-         for (int j = 0 ; j < precedenceEntries.length ; j++)
-         {
-            if (matches(interceptorEntry, precedenceEntries[j]))
-            {
-               //This interceptor is defined in the precedence
-               interceptorEntry.originalOrder = i;
-               interceptorEntry.precedenceOrder = j;
-               precedence.add(interceptorEntry);
-               break;
-            }
-         }
+         ranks[i] = ranking.getRank(getPrecedenceKey(interceptors[i]));
       }
       
-      //Sort the interceptors having precedence
-      Collections.sort(precedence, interceptorComparator);
-      Interceptor[] sortedInterceptors = new Interceptor[interceptors.length];
-      
-      //Build up new array of interceptors depending on their precedence 
-      int prec = 0;
-      int allSize = all.size();
-      int precedenceSize = precedence.size();
+      int[] order = ranking.getOrder(ranks);
+      if (order == null)
+         return interceptors;
       
-      for (int i = 0 ; i < allSize ; i++)
+      Interceptor[] sortedInterceptors = new Interceptor[interceptors.length];
+      for (int i = 0 ; i < order.length ; i++)
       {
-         InterceptorEntry entry = (InterceptorEntry)all.get(i);
-         
-         if (entry.precedenceOrder >= 0 && prec < precedenceSize)
-         {
-            entry = (InterceptorEntry)precedence.get(prec++);
-         }
-         sortedInterceptors[i] = entry.interceptor;
+         sortedInterceptors[i] = interceptors[order[i]];
       }
-      
       return sortedInterceptors;
    }
    
    public static InterceptorFactoryWrapper[] applyPrecedence(InterceptorFactoryWrapper[] interceptors, AspectManager manager)
    {
-      ArrayList all = new ArrayList(interceptors.length);
-      ArrayList precedence = new ArrayList(interceptors.length);
-      PrecedenceDefEntry[] precedenceEntries = manager.getSortedPrecedenceDefEntries();
+      if (interceptors.length < 2)
+         return interceptors;
       
-      //Figure out what interceptors have precedence
+      PrecedenceRanking ranking = manager.getPrecedenceRanking();
+      if (ranking.isEmpty())
+         return interceptors;
+      
+      int[] ranks = new int[interceptors.length];
       for (int i = 0 ; i < interceptors.length ; i++)
       {
-         InterceptorEntry interceptorEntry = new InterceptorEntry(interceptors[i]);
-         all.add(interceptorEntry);
-         for (int j = 0 ; j < precedenceEntries.length ; j++)
-         {
-            if (matches(interceptorEntry, precedenceEntries[j]))
-            {
-               //This interceptor is defined in the precedence
-               interceptorEntry.originalOrder = i;
-               interceptorEntry.precedenceOrder = j;
-               precedence.add(interceptorEntry);
-               break;
-            }
-         }
+         ranks[i] = interceptors[i].getPrecedenceRank(ranking);
       }
       
-      //Sort the interceptors having precedence
-      Collections.sort(precedence, interceptorComparator);
-      InterceptorFactoryWrapper[] sortedInterceptors = new InterceptorFactoryWrapper[interceptors.length];
-      
-      //Build up new array of interceptors depending on their precedence 
-      int prec = 0;
-      int allSize = all.size();
-      int precedenceSize = precedence.size();
+      int[] order = ranking.getOrder(ranks);
+      if (order == null)
+         return interceptors;
       
-      for (int i = 0 ; i < allSize ; i++)
+      InterceptorFactoryWrapper[] sortedInterceptors = new InterceptorFactoryWrapper[interceptors.length];
+      for (int i = 0 ; i < order.length ; i++)
       {
-         InterceptorEntry entry = (InterceptorEntry)all.get(i);
-         
-         if (entry.precedenceOrder >= 0 && prec < precedenceSize)
-         {
-            entry = (InterceptorEntry)precedence.get(prec++);
-         }
-         sortedInterceptors[i] = entry.factoryWrapper;
+         sortedInterceptors[i] = interceptors[order[i]];
       }
-      
       return sortedInterceptors;
    }
    
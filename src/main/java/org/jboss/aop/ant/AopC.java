@@ -64,6 +64,10 @@ public class AopC extends MatchingTask
    private boolean report = false;
    private boolean optimized = true;
    private String maxmemory = null;
+   private int threads = 1;
+   private boolean incremental = false;
+   private File manifest;
+   private boolean joinpoints = false;
    ArrayList sysproperties = new ArrayList();
 
    File sourceFiles;
@@ -129,6 +133,60 @@ public class AopC extends MatchingTask
       return optimized;
    }
 
+   /**
+    * Set the number of threads used to weave the classes
+    */
+   public void setThreads(int threads)
+   {
+      this.threads = threads;
+   }
+
+   public int getThreads()
+   {
+      return threads;
+   }
+
+   /**
+    * Only weave classes that have changed since the last run, or all of them if
+    * the aspect definitions have changed
+    */
+   public void setIncremental(boolean incremental)
+   {
+      this.incremental = incremental;
+   }
+
+   public boolean getIncremental()
+   {
+      return incremental;
+   }
+
+   /**
+    * Set the file used to record the state of an incremental run. Defaults to
+    * aopc.manifest in the project base directory
+    */
+   public void setManifest(File manifest)
+   {
+      this.manifest = manifest;
+   }
+
+   public File getManifest()
+   {
+      return manifest;
+   }
+
+   /**
+    * Generate the joinpoint classes of the generated advisor instrumentor at build time
+    */
+   public void setJoinpoints(boolean joinpoints)
+   {
+      this.joinpoints = joinpoints;
+   }
+
+   public boolean getJoinpoints()
+   {
+      return joinpoints;
+   }
+
    /**
     * Set the maxmemory of the Java task forked to apply the AOP
     */
@@ -305,6 +363,19 @@ public class AopC extends MatchingTask
          cmd.createArgument().setValue("-noopt");
       if (report)
          cmd.createArgument().setValue("-report");
+      if (threads > 1)
+      {
+         cmd.createArgument().setValue("-threads");
+         cmd.createArgument().setValue(String.valueOf(threads));
+      }
+      if (incremental)
+      {
+         File manifestFile = (manifest != null) ? manifest : new File(getProject().getBaseDir(), "aopc.manifest");
+         cmd.createArgument().setValue("-incremental");
+         cmd.createArgument().setValue(manifestFile.getAbsolutePath());
+      }
+      if (joinpoints)
+         cmd.createArgument().setValue("-joinpoints");
       if (aoppath != null && aoppath.size() > 0)
       {
          cmd.createArgument().setValue("-aoppath");
@@ -136,13 +136,17 @@ public class AOPClassPoolRepository implements ScopedClassPoolRepository
    
    public void registerClass(Class clazz)
    {
-      HashSet classes = (HashSet) ucl2classes.get(clazz.getClassLoader());
-      if (classes == null)
+      // advisors are no longer created while holding the AspectManager lock
+      synchronized (delegate.getRegisteredCLs())
       {
-         classes = new HashSet();
-         ucl2classes.put(clazz.getClassLoader(), classes);
+         HashSet classes = (HashSet) ucl2classes.get(clazz.getClassLoader());
+         if (classes == null)
+         {
+            classes = new HashSet();
+            ucl2classes.put(clazz.getClassLoader(), classes);
+         }
+         classes.add(clazz);
       }
-      classes.add(clazz);
    }
 
    public void perfomUnregisterClassLoader(ClassLoader cl)
@@ -159,6 +163,7 @@ public class AOPClassPoolRepository implements ScopedClassPoolRepository
    
    private void doUnregisterClassLoader(ClassLoader cl)
    {
+      Instrumentor.unregisterClassLoader(cl);
       synchronized (delegate.getRegisteredCLs())
       {
          HashSet classes = (HashSet) ucl2classes.remove(cl);
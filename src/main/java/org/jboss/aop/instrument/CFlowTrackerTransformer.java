@@ -0,0 +1,99 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.instrument;
+
+import org.jboss.aop.ClassAdvisor;
+import org.jboss.aop.pointcut.CFlowTracker;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+
+/**
+ * Wraps the methods referenced by tracked cflow expressions in calls to the
+ * {@link CFlowTracker} depth counters.
+ *
+ * @version $Revision$
+ */
+public class CFlowTrackerTransformer
+{
+   final static String CFLOW_TRACKER_CLASS_NAME = CFlowTracker.class.getName();
+
+   /**
+    * @return true if the class was changed
+    */
+   public static boolean instrument(CtClass clazz) throws CannotCompileException, NotFoundException
+   {
+      CFlowTracker.Entry[] entries = CFlowTracker.getEntries(clazz.getName());
+      if (entries == null) return false;
+
+      boolean instrumented = false;
+      CtMethod[] methods = clazz.getDeclaredMethods();
+      for (int i = 0; i < entries.length; i++)
+      {
+         String fieldName = getSlotFieldName(entries[i]);
+         try
+         {
+            clazz.getDeclaredField(fieldName);
+            continue;
+         }
+         catch (NotFoundException e)
+         {
+         }
+
+         boolean added = false;
+         for (int j = 0; j < methods.length; j++)
+         {
+            int modifiers = methods[j].getModifiers();
+            if (Modifier.isAbstract(modifiers) || Modifier.isNative(modifiers)) continue;
+            if (!entries[i].matchesMethod(methods[j].getName())) continue;
+
+            if (!added)
+            {
+               addSlotField(clazz, entries[i], fieldName);
+               added = true;
+            }
+            methods[j].insertBefore(CFLOW_TRACKER_CLASS_NAME + ".enter(" + fieldName + ");");
+            methods[j].insertAfter(CFLOW_TRACKER_CLASS_NAME + ".exit(" + fieldName + ");", true);
+         }
+         instrumented = instrumented || added;
+      }
+      return instrumented;
+   }
+
+   private static void addSlotField(CtClass clazz, CFlowTracker.Entry entry, String fieldName) throws CannotCompileException
+   {
+      CtField field = new CtField(CtClass.intType, fieldName, clazz);
+      field.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+      CtField.Initializer init = CtField.Initializer.byExpr(
+            CFLOW_TRACKER_CLASS_NAME + ".activate(\"" + entry.getExpression() + "\")");
+      clazz.addField(field, init);
+   }
+
+   private static String getSlotFieldName(CFlowTracker.Entry entry)
+   {
+      return "aop$cflow" + entry.getId() + ClassAdvisor.NOT_TRANSFORMABLE_SUFFIX;
+   }
+}
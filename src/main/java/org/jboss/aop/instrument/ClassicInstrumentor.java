@@ -26,6 +26,7 @@ import javassist.CtClass;
 import javassist.CtField;
 import javassist.CtMethod;
 import javassist.CtNewMethod;
+import javassist.Modifier;
 import javassist.NotFoundException;
 
 import org.jboss.aop.AspectManager;
@@ -190,27 +191,30 @@ public class ClassicInstrumentor extends Instrumentor
    private void addBaseElements(CtClass clazz)
    throws NotFoundException, CannotCompileException
    {
-      addProtectedField(clazz,
+      CtField instanceAdvisor = addProtectedField(clazz,
                 "_instanceAdvisor",
                 "org.jboss.aop.ClassInstanceAdvisor", null
                 //CtField.Initializer.byExpr("new org.jboss.aop.ClassInstanceAdvisor(this)")
          );
+      instanceAdvisor.setModifiers(instanceAdvisor.getModifiers() | Modifier.VOLATILE);
+      addInstanceAdvisorUpdater(clazz, "_instanceAdvisor", "org.jboss.aop.ClassInstanceAdvisor");
 
+         //If two threads race to create the instance advisor the loser uses the winner's one
          CtMethod getter = CtNewMethod.make("public org.jboss.aop.InstanceAdvisor _getInstanceAdvisor()" +
                                  "{ " +
-                                 "    synchronized(this) {" +
-                                 "       if (_instanceAdvisor == null) { _instanceAdvisor = new org.jboss.aop.ClassInstanceAdvisor(this); }" +
-                                 "       return _instanceAdvisor;" +
+                                 "    org.jboss.aop.ClassInstanceAdvisor ia = _instanceAdvisor;" +
+                                 "    if (ia == null) {" +
+                                 "       ia = new org.jboss.aop.ClassInstanceAdvisor(this);" +
+                                 "       if (!" + INSTANCE_ADVISOR_UPDATER + ".compareAndSet(this, null, ia)) { ia = _instanceAdvisor; }" +
                                  "    } " +
+                                 "    return ia;" +
                                  "}",
                                  clazz);
          clazz.addMethod(getter);
 
          CtMethod setter = CtNewMethod.make("public void _setInstanceAdvisor(org.jboss.aop.InstanceAdvisor newAdvisor)" +
                                  "{ " +
-                                 "    synchronized(this) {" +
-                                 "       _instanceAdvisor = (org.jboss.aop.ClassInstanceAdvisor)newAdvisor;" +
-                                 "    } " +
+                                 "    _instanceAdvisor = (org.jboss.aop.ClassInstanceAdvisor)newAdvisor;" +
                                  "}",
                                  clazz);
          clazz.addMethod(setter);
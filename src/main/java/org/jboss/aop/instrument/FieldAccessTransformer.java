@@ -22,6 +22,7 @@
 package org.jboss.aop.instrument;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import org.jboss.aop.AspectManager;
@@ -54,6 +55,9 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
    boolean optimize;
    private Codifier codifier;
    private JoinpointClassifier classifier;
+   // Field access editors by field name, collected while the accesses of a class
+   // are replaced in a single pass. Null when every field is replaced on its own
+   private HashMap batchedEditors;
    
    // Static --------------------------------------------------------
    // there are two transformations types available to a field: get and set
@@ -81,23 +85,31 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
       boolean skipFieldInterception = true;
       if (fields.size() > 0)
       {
-         Iterator it = fields.iterator();
-         for (int index = 0; it.hasNext(); index++, fieldIndex++)
+         startBatch();
+         try
          {
-            CtField field = (CtField) it.next();
-            JoinpointClassification classificationGet = instrumentor.joinpointClassifier.classifyFieldGet(field, advisor); 
-            JoinpointClassification classificationSet = instrumentor.joinpointClassifier.classifyFieldSet(field, advisor); 
-            if (!isPrepared(classificationGet) && !isPrepared(classificationSet))
-            {
-               continue;
-            }
-            
-            if (!javassist.Modifier.isPrivate(field.getModifiers()))
+            Iterator it = fields.iterator();
+            for (int index = 0; it.hasNext(); index++, fieldIndex++)
             {
-               skipFieldInterception = false;
+               CtField field = (CtField) it.next();
+               JoinpointClassification classificationGet = instrumentor.joinpointClassifier.classifyFieldGet(field, advisor); 
+               JoinpointClassification classificationSet = instrumentor.joinpointClassifier.classifyFieldSet(field, advisor); 
+               if (!isPrepared(classificationGet) && !isPrepared(classificationSet))
+               {
+                  continue;
+               }
+               
+               if (!javassist.Modifier.isPrivate(field.getModifiers()))
+               {
+                  skipFieldInterception = false;
+               }
+               
+               doBuildFieldWrappers(clazz, field, fieldIndex, classificationGet, classificationSet);
             }
-            
-            doBuildFieldWrappers(clazz, field, fieldIndex, classificationGet, classificationSet);
+         }
+         finally
+         {
+            endBatch(clazz);
          }
       }
 
@@ -228,6 +240,19 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
       List advisableFields = Instrumentor.getAdvisableFields(clazz);
       CtField[] fields = new CtField[advisableFields.size()];
       fields = (CtField[] ) advisableFields.toArray(fields);
+      startBatch();
+      try
+      {
+         wrap(clazz, fields, fieldsGet, fieldsSet);
+      }
+      finally
+      {
+         endBatch(clazz);
+      }
+   }
+
+   private void wrap(CtClass clazz, CtField[] fields, Collection fieldsGet, Collection fieldsSet) throws CannotCompileException, NotFoundException
+   {
       for (Iterator iterator = fieldsGet.iterator(); iterator.hasNext(); )
       {
          int fieldIndex = ((Integer) iterator.next()).intValue();
@@ -463,7 +488,49 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
     * @throws javassist.CannotCompileException
     *
     */
-   protected abstract void replaceFieldAccessInternally(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index) throws CannotCompileException;
+   protected void replaceFieldAccessInternally(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index) throws CannotCompileException
+   {
+      if (batchedEditors == null)
+      {
+         clazz.instrument(createFieldAccessExprEditor(clazz, field, doGet, doSet, index));
+         return;
+      }
+      FieldAccessExprEditor editor = (FieldAccessExprEditor) batchedEditors.get(field.getName());
+      if (editor == null)
+      {
+         batchedEditors.put(field.getName(), createFieldAccessExprEditor(clazz, field, doGet, doSet, index));
+      }
+      else
+      {
+         editor.doGet |= doGet;
+         editor.doSet |= doSet;
+      }
+   }
+
+   protected abstract FieldAccessExprEditor createFieldAccessExprEditor(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index);
+
+   /**
+    * From now on replaceFieldAccessInternally() only records the fields, the
+    * bytecode is walked once by {@link #endBatch(CtClass)}
+    */
+   private void startBatch()
+   {
+      batchedEditors = new HashMap();
+   }
+
+   private void endBatch(CtClass clazz) throws CannotCompileException
+   {
+      HashMap editors = batchedEditors;
+      batchedEditors = null;
+      if (editors.size() == 1)
+      {
+         clazz.instrument((ExprEditor) editors.values().iterator().next());
+      }
+      else if (editors.size() > 1)
+      {
+         clazz.instrument(new BatchedFieldAccessExprEditor(editors));
+      }
+   }
    
    /**
     * 
@@ -616,6 +683,7 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
          if (!fieldAccess.getClassName().equals(clazz.getName())) return;
          if (!fieldAccess.getFieldName().equals(field.getName())) return;
          if (calledByInvocationClass(fieldAccess))return;
+         if (calledByWrapper(fieldAccess)) return;
 
          if (fieldAccess.isReader() && doGet)
          {
@@ -641,6 +709,16 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
          }
       }
       
+      /**
+       * The wrappers access the field directly. When replacing in batches they may
+       * already have their final bodies, so leave those alone
+       */
+      private boolean calledByWrapper(FieldAccess fieldAccess)
+      {
+         String where = fieldAccess.where().getName();
+         return where.equals(fieldRead(field.getName())) || where.equals(fieldWrite(field.getName()));
+      }
+
       private boolean isInvocationClass(CtClass superClazz)
       {
          try
@@ -669,5 +747,26 @@ public abstract class FieldAccessTransformer implements CodeConversionObserver
       protected abstract void replaceWrite(FieldAccess fieldAccess) throws CannotCompileException;
    }//End Inner class FieldAccessExprEditor
 
+   /**
+    * Dispatches every field access of a class to the editor of the accessed field,
+    * so that all advised fields are replaced in one pass over the bytecode
+    */
+   private static class BatchedFieldAccessExprEditor extends ExprEditor
+   {
+      private HashMap editors;
+
+      BatchedFieldAccessExprEditor(HashMap editors)
+      {
+         this.editors = editors;
+      }
 
+      public void edit(FieldAccess fieldAccess) throws CannotCompileException
+      {
+         FieldAccessExprEditor editor = (FieldAccessExprEditor) editors.get(fieldAccess.getFieldName());
+         if (editor != null)
+         {
+            editor.edit(fieldAccess);
+         }
+      }
+   }
 }
@@ -235,10 +235,9 @@ public class GeneratedAdvisorFieldAccessTransformer extends FieldAccessTransform
       return getMainWriteWrapperBody(clazz, field, fieldIndex);
    }
 
-   protected void replaceFieldAccessInternally(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index) throws CannotCompileException
+   protected FieldAccessExprEditor createFieldAccessExprEditor(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index)
    {
-      GeneratedAdvisorFieldAccessExprEditor expr = new GeneratedAdvisorFieldAccessExprEditor(clazz, field, doGet, doSet, index);
-      clazz.instrument(expr);
+      return new GeneratedAdvisorFieldAccessExprEditor(clazz, field, doGet, doSet, index);
    }
 
    private CtClass getGenadvisor()
@@ -580,8 +580,9 @@ public class GeneratedAdvisorInstrumentor extends Instrumentor
                forName("org.jboss.aop.InstanceAdvisor"),
                INSTANCE_ADVISOR,
                clazz);
-         instanceAdvisor.setModifiers(Modifier.PROTECTED | Modifier.TRANSIENT);
+         instanceAdvisor.setModifiers(Modifier.VOLATILE | Modifier.PROTECTED | Modifier.TRANSIENT);
          clazz.addField(instanceAdvisor);
+         addInstanceAdvisorUpdater(clazz, INSTANCE_ADVISOR, "org.jboss.aop.InstanceAdvisor");
       }
 
       //Add _getInstanceAdvisor() method
@@ -592,21 +593,19 @@ public class GeneratedAdvisorInstrumentor extends Instrumentor
             new CtClass[0],
             "{return null;}",
             clazz);
+      //If two threads race to create the instance advisor the loser uses the winner's one, both
+      //publish it as the current advisor before returning
       String body =
          "{ " +
-         "   if (" + INSTANCE_ADVISOR + " == null) " +
+         "   org.jboss.aop.InstanceAdvisor ia = " + INSTANCE_ADVISOR + ";" +
+         "   if (ia == null) " +
          "   { " +
-         "      synchronized(this) " +
-         "      { " +
-         "         if (" + INSTANCE_ADVISOR + " == null) " +
-         "         { " +
-         "            org.jboss.aop.Advisor advisor = ((" + getAdvisorFQN(clazz) + ")" + Instrumentor.HELPER_FIELD_NAME + ").createInstanceAdvisor(this); " +
-         "            " + CURRENT_ADVISOR + " = advisor; " +
-         "            " + INSTANCE_ADVISOR + " = (org.jboss.aop.InstanceAdvisor)advisor; " +
-         "         } " +
-         "      } " +
+         "      org.jboss.aop.Advisor advisor = ((" + getAdvisorFQN(clazz) + ")" + Instrumentor.HELPER_FIELD_NAME + ").createInstanceAdvisor(this); " +
+         "      " + INSTANCE_ADVISOR_UPDATER + ".compareAndSet(this, null, advisor); " +
+         "      ia = " + INSTANCE_ADVISOR + ";" +
+         "      " + CURRENT_ADVISOR + " = (org.jboss.aop.Advisor)ia; " +
          "   } " +
-         "   return " + INSTANCE_ADVISOR +";" +
+         "   return ia;" +
          "}";
 
       getInstanceAdvisor.setBody(body);
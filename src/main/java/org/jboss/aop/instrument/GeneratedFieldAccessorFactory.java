@@ -0,0 +1,238 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.instrument;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.jboss.aop.AspectManager;
+import org.jboss.aop.joinpoint.FieldAccessor;
+import org.jboss.aop.joinpoint.FieldAccessorFactory;
+import org.jboss.aop.joinpoint.ReflectionFieldAccessor;
+
+/**
+ * Generates one accessor class per advised class, reading and writing the advised
+ * fields directly through a switch on the field index. Fields that can not be accessed
+ * from another class in the package of the advised class, such as private fields, and
+ * classes for which the accessor can not be generated, are accessed through reflection.
+ * <p/>
+ * Like the generated method invokers, the accessors check the target and value types
+ * themselves and hand anything they can not access directly over to reflection.
+ *
+ * @see GeneratedMethodInvokerFactory
+ * @version $Revision$
+ */
+public class GeneratedFieldAccessorFactory implements FieldAccessorFactory
+{
+   private static int counter;
+
+   public FieldAccessor[] getAccessors(Class clazz, Field[] fields)
+   {
+      FieldAccessor[] accessors = new FieldAccessor[fields.length];
+      boolean[] direct = new boolean[fields.length];
+      boolean generate = false;
+      if (canGenerate(clazz))
+      {
+         for (int i = 0; i < fields.length; i++)
+         {
+            direct[i] = isAccessible(clazz, fields[i]);
+            generate |= direct[i];
+         }
+      }
+
+      if (generate)
+      {
+         try
+         {
+            Class accessorClass = generateAccessorClass(clazz, fields, direct);
+            Constructor ctor = accessorClass.getConstructor(new Class[] {Integer.TYPE, Field.class});
+            for (int i = 0; i < fields.length; i++)
+            {
+               if (direct[i])
+               {
+                  accessors[i] = (FieldAccessor) ctor.newInstance(new Object[] {new Integer(i), fields[i]});
+               }
+            }
+         }
+         catch (Throwable t)
+         {
+            // Fall back to reflection for the whole class
+            if (AspectManager.verbose)
+            {
+               System.err.println("[warn] Could not generate field accessor for " + clazz.getName() + ", using reflection: " + t);
+            }
+            accessors = new FieldAccessor[fields.length];
+         }
+      }
+
+      for (int i = 0; i < fields.length; i++)
+      {
+         if (accessors[i] == null) accessors[i] = new ReflectionFieldAccessor(fields[i]);
+      }
+      return accessors;
+   }
+
+   private static boolean canGenerate(Class clazz)
+   {
+      if (clazz.isInterface() || clazz.getClassLoader() == null) return false;
+      String name = clazz.getName();
+      return !name.startsWith("java.") && !name.startsWith("javax.") && name.indexOf('.') > 0;
+   }
+
+   /**
+    * The accessor lives in the package of the advised class, so fields inherited
+    * from other packages are only accessible if they and their class are public
+    */
+   private static boolean isAccessible(Class clazz, Field field)
+   {
+      int modifiers = field.getModifiers();
+      if (Modifier.isPrivate(modifiers)) return false;
+      Class declaring = field.getDeclaringClass();
+      if (Modifier.isPrivate(declaring.getModifiers())) return false;
+      if (!GeneratedMethodInvokerFactory.isVisible(field.getType())) return false;
+      if (declaring.getClassLoader() != clazz.getClassLoader() || !getPackageName(declaring).equals(getPackageName(clazz)))
+      {
+         return Modifier.isPublic(modifiers) && Modifier.isPublic(declaring.getModifiers());
+      }
+      return true;
+   }
+
+   private static String getPackageName(Class clazz)
+   {
+      String name = clazz.getName();
+      int index = name.lastIndexOf('.');
+      return (index < 0) ? "" : name.substring(0, index);
+   }
+
+   private static synchronized int nextCounter()
+   {
+      return counter++;
+   }
+
+   private Class generateAccessorClass(Class clazz, Field[] fields, boolean[] direct) throws Exception
+   {
+      ClassPool pool = AspectManager.instance().findClassPool(clazz.getClassLoader());
+      // Same package and class loader as the advised class for package access
+      CtClass accessor = pool.makeClass(clazz.getName() + "$aop$FieldAccessor" + nextCounter());
+      accessor.addInterface(pool.get(FieldAccessor.class.getName()));
+      // It accesses the advised members directly, so it must not be woven itself
+      accessor.addInterface(pool.get(Untransformable.class.getName()));
+      accessor.addField(CtField.make("private int index;", accessor));
+      accessor.addField(CtField.make("private java.lang.reflect.Field field;", accessor));
+      accessor.addConstructor(CtNewConstructor.make(
+            "public " + accessor.getSimpleName() + "(int index, java.lang.reflect.Field field)" +
+            "{ this.index = index; this.field = field; }", accessor));
+
+      StringBuffer get = new StringBuffer("public Object get(Object target) throws java.lang.Throwable { switch (index) { ");
+      StringBuffer set = new StringBuffer("public void set(Object target, Object value) throws java.lang.Throwable { switch (index) { ");
+      StringBuffer getInt = new StringBuffer("public int getInt(Object target) throws java.lang.Throwable { switch (index) { ");
+      StringBuffer setInt = new StringBuffer("public void setInt(Object target, int value) throws java.lang.Throwable { switch (index) { ");
+      StringBuffer getLong = new StringBuffer("public long getLong(Object target) throws java.lang.Throwable { switch (index) { ");
+      StringBuffer setLong = new StringBuffer("public void setLong(Object target, long value) throws java.lang.Throwable { switch (index) { ");
+      for (int i = 0; i < fields.length; i++)
+      {
+         if (!direct[i]) continue;
+         Field field = fields[i];
+         Class type = field.getType();
+         String access = getFieldReference(field);
+         boolean writable = !Modifier.isFinal(field.getModifiers());
+
+         appendCase(get, i, field, null, "return ($w)" + access + ";");
+         if (writable)
+         {
+            if (type.isPrimitive())
+            {
+               String wrapper = GeneratedMethodInvokerFactory.wrapperName(type);
+               appendCase(set, i, field, "value instanceof " + wrapper,
+                     access + " = ((" + wrapper + ")value)." + type.getName() + "Value(); return;");
+            }
+            else
+            {
+               String typeName = GeneratedMethodInvokerFactory.typeName(type);
+               appendCase(set, i, field, "(value == null || value instanceof " + typeName + ")",
+                     access + " = (" + typeName + ")value; return;");
+            }
+         }
+         if (type == Integer.TYPE)
+         {
+            appendCase(getInt, i, field, null, "return " + access + ";");
+            if (writable) appendCase(setInt, i, field, null, access + " = value; return;");
+         }
+         else if (type == Long.TYPE)
+         {
+            appendCase(getLong, i, field, null, "return " + access + ";");
+            if (writable) appendCase(setLong, i, field, null, access + " = value; return;");
+         }
+      }
+      get.append("} return field.get(target); }");
+      set.append("} field.set(target, value); }");
+      getInt.append("} return field.getInt(target); }");
+      setInt.append("} field.setInt(target, value); }");
+      getLong.append("} return field.getLong(target); }");
+      setLong.append("} field.setLong(target, value); }");
+
+      accessor.addMethod(CtNewMethod.make(get.toString(), accessor));
+      accessor.addMethod(CtNewMethod.make(set.toString(), accessor));
+      accessor.addMethod(CtNewMethod.make(getInt.toString(), accessor));
+      accessor.addMethod(CtNewMethod.make(setInt.toString(), accessor));
+      accessor.addMethod(CtNewMethod.make(getLong.toString(), accessor));
+      accessor.addMethod(CtNewMethod.make(setLong.toString(), accessor));
+      return accessor.toClass();
+   }
+
+   /**
+    * Appends the direct access guarded by the type checks, falling through to
+    * reflection if they fail
+    */
+   private static void appendCase(StringBuffer body, int index, Field field, String valueCheck, String statement)
+   {
+      String check = valueCheck;
+      if (!Modifier.isStatic(field.getModifiers()))
+      {
+         String targetCheck = "target instanceof " + GeneratedMethodInvokerFactory.typeName(field.getDeclaringClass());
+         check = (check == null) ? targetCheck : targetCheck + " && " + check;
+      }
+      body.append("case ").append(index).append(": ");
+      if (check == null)
+      {
+         body.append(statement).append(" ");
+      }
+      else
+      {
+         body.append("if (").append(check).append(") { ").append(statement).append(" } break; ");
+      }
+   }
+
+   private static String getFieldReference(Field field)
+   {
+      String declaring = GeneratedMethodInvokerFactory.typeName(field.getDeclaringClass());
+      if (Modifier.isStatic(field.getModifiers())) return declaring + "." + field.getName();
+      return "((" + declaring + ")target)." + field.getName();
+   }
+}
@@ -0,0 +1,335 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.instrument;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.jboss.aop.AspectManager;
+import org.jboss.aop.joinpoint.MethodInvoker;
+import org.jboss.aop.joinpoint.MethodInvokerFactory;
+import org.jboss.aop.joinpoint.ReflectionMethodInvoker;
+
+import EDU.oswego.cs.dl.util.concurrent.FutureResult;
+
+/**
+ * Generates one invoker class per declaring class, calling the declared methods
+ * directly through a switch on the method index. Methods that can not be called
+ * from another class in the same package, and classes for which the invoker can
+ * not be generated, are invoked through reflection.
+ * <p/>
+ * The generated invokers check the target and argument types themselves and hand
+ * anything they can not call directly over to reflection, so that conversions and
+ * error reporting stay the same as with {@link Method#invoke(Object, Object[])}.
+ * <p/>
+ * The invokers of a class are kept in a static field of their generated class, so
+ * they live as long as the class loader of the declaring class and are generated
+ * only once. Different classes are generated in parallel. This factory is not used
+ * unless enabled with the <code>jboss.aop.generated.invokers</code> system property
+ * or {@link AspectManager#setMethodInvokerFactory(MethodInvokerFactory)}.
+ *
+ * @version $Revision$
+ */
+public class GeneratedMethodInvokerFactory implements MethodInvokerFactory
+{
+   private static final String INVOKERS_FIELD = "invokers";
+   private static int counter;
+
+   /**
+    * Class -> WeakReference(Map of Method -> MethodInvoker) held by the generated class, the empty
+    * map if the class has no generated invoker, or FutureResult while the invokers are created
+    */
+   private final WeakHashMap invokersByClass = new WeakHashMap();
+
+   public MethodInvoker getInvoker(Method method)
+   {
+      Map invokers = getInvokers(method.getDeclaringClass());
+      MethodInvoker invoker = (MethodInvoker) invokers.get(method);
+      return (invoker != null) ? invoker : new ReflectionMethodInvoker(method);
+   }
+
+   private Map getInvokers(Class clazz)
+   {
+      FutureResult future;
+      boolean create = false;
+      synchronized (invokersByClass)
+      {
+         Object entry = invokersByClass.get(clazz);
+         if (entry instanceof WeakReference)
+         {
+            entry = ((WeakReference) entry).get();
+         }
+         if (entry instanceof Map)
+         {
+            return (Map) entry;
+         }
+         if (entry == null)
+         {
+            entry = new FutureResult();
+            invokersByClass.put(clazz, entry);
+            create = true;
+         }
+         future = (FutureResult) entry;
+      }
+
+      if (!create)
+      {
+         // Only callers asking for the same class wait for it
+         try
+         {
+            return (Map) future.get();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         catch (InvocationTargetException e)
+         {
+         }
+         return Collections.EMPTY_MAP;
+      }
+
+      try
+      {
+         Map invokers = createInvokers(clazz);
+         synchronized (invokersByClass)
+         {
+            invokersByClass.put(clazz, invokers.isEmpty() ? (Object) Collections.EMPTY_MAP : new WeakReference(invokers));
+         }
+         future.set(invokers);
+         return invokers;
+      }
+      catch (Error e)
+      {
+         synchronized (invokersByClass)
+         {
+            invokersByClass.remove(clazz);
+         }
+         future.setException(e);
+         throw e;
+      }
+   }
+
+   private Map createInvokers(Class clazz)
+   {
+      if (!canGenerate(clazz)) return Collections.EMPTY_MAP;
+
+      Method[] declared = clazz.getDeclaredMethods();
+      ArrayList methods = new ArrayList(declared.length);
+      for (int i = 0; i < declared.length; i++)
+      {
+         int modifiers = declared[i].getModifiers();
+         if (Modifier.isPrivate(modifiers) || Modifier.isAbstract(modifiers)) continue;
+         if (!isVisible(declared[i].getReturnType()) || !areVisible(declared[i].getParameterTypes())) continue;
+         methods.add(declared[i]);
+      }
+      if (methods.size() == 0) return Collections.EMPTY_MAP;
+
+      try
+      {
+         Class invokerClass = generateInvokerClass(clazz, methods);
+         Constructor ctor = invokerClass.getConstructor(new Class[] {Integer.TYPE, Method.class});
+         HashMap invokers = new HashMap();
+         for (int i = 0; i < methods.size(); i++)
+         {
+            Method method = (Method) methods.get(i);
+            invokers.put(method, ctor.newInstance(new Object[] {new Integer(i), method}));
+         }
+         invokerClass.getField(INVOKERS_FIELD).set(null, invokers);
+         return invokers;
+      }
+      catch (Throwable t)
+      {
+         // Fall back to reflection for the whole class
+         if (AspectManager.verbose)
+         {
+            System.err.println("[warn] Could not generate method invoker for " + clazz.getName() + ", using reflection: " + t);
+         }
+         return Collections.EMPTY_MAP;
+      }
+   }
+
+   private static boolean canGenerate(Class clazz)
+   {
+      if (clazz.isInterface() || clazz.isArray() || clazz.getClassLoader() == null) return false;
+      if (Modifier.isPrivate(clazz.getModifiers())) return false;
+      String name = clazz.getName();
+      return !name.startsWith("java.") && !name.startsWith("javax.") && name.indexOf('.') > 0;
+   }
+
+   /**
+    * Private member classes can not be referenced from the generated class
+    */
+   static boolean isVisible(Class type)
+   {
+      while (type.isArray()) type = type.getComponentType();
+      return type.isPrimitive() || !Modifier.isPrivate(type.getModifiers());
+   }
+
+   private static boolean areVisible(Class[] types)
+   {
+      for (int i = 0; i < types.length; i++)
+      {
+         if (!isVisible(types[i])) return false;
+      }
+      return true;
+   }
+
+   private static synchronized int nextCounter()
+   {
+      return counter++;
+   }
+
+   private Class generateInvokerClass(Class clazz, ArrayList methods) throws Exception
+   {
+      ClassPool pool = AspectManager.instance().findClassPool(clazz.getClassLoader());
+      // Same package and class loader as the declaring class for package access
+      CtClass invoker = pool.makeClass(clazz.getName() + "$aop$MethodInvoker" + nextCounter());
+      invoker.addInterface(pool.get(MethodInvoker.class.getName()));
+      // It accesses the advised members directly, so it must not be woven itself
+      invoker.addInterface(pool.get(Untransformable.class.getName()));
+      invoker.addField(CtField.make("private int index;", invoker));
+      invoker.addField(CtField.make("private java.lang.reflect.Method method;", invoker));
+      invoker.addField(CtField.make("public static java.util.Map " + INVOKERS_FIELD + ";", invoker));
+      invoker.addConstructor(CtNewConstructor.make(
+            "public " + invoker.getSimpleName() + "(int index, java.lang.reflect.Method method)" +
+            "{ this.index = index; this.method = method; }", invoker));
+
+      StringBuffer body = new StringBuffer("public Object invoke(Object target, Object[] arguments) throws java.lang.Throwable { ");
+      body.append("switch (index) { ");
+      for (int i = 0; i < methods.size(); i++)
+      {
+         body.append("case ").append(i).append(": ");
+         appendCase(body, clazz, (Method) methods.get(i));
+      }
+      body.append("} ");
+      body.append("return method.invoke(target, arguments); }");
+      invoker.addMethod(CtNewMethod.make(body.toString(), invoker));
+      return invoker.toClass();
+   }
+
+   /**
+    * Appends the direct call guarded by the type checks, falling through to
+    * reflection if they fail
+    */
+   private static void appendCase(StringBuffer body, Class clazz, Method method)
+   {
+      boolean isStatic = Modifier.isStatic(method.getModifiers());
+      Class[] params = method.getParameterTypes();
+
+      body.append("if (");
+      if (!isStatic)
+      {
+         body.append("target instanceof ").append(typeName(clazz)).append(" && ");
+      }
+      if (params.length == 0)
+      {
+         body.append("(arguments == null || arguments.length == 0)");
+      }
+      else
+      {
+         body.append("arguments != null && arguments.length == ").append(params.length);
+      }
+      for (int i = 0; i < params.length; i++)
+      {
+         body.append(" && ");
+         if (params[i].isPrimitive())
+         {
+            body.append("arguments[").append(i).append("] instanceof ").append(wrapperName(params[i]));
+         }
+         else if (params[i] != Object.class)
+         {
+            body.append("(arguments[").append(i).append("] == null || arguments[").append(i).append("] instanceof ");
+            body.append(typeName(params[i])).append(")");
+         }
+      }
+      body.append(") { try { ");
+
+      StringBuffer call = new StringBuffer();
+      if (isStatic)
+      {
+         call.append(typeName(clazz));
+      }
+      else
+      {
+         call.append("((").append(typeName(clazz)).append(")target)");
+      }
+      call.append(".").append(method.getName()).append("(");
+      for (int i = 0; i < params.length; i++)
+      {
+         if (i > 0) call.append(", ");
+         if (params[i].isPrimitive())
+         {
+            call.append("((").append(wrapperName(params[i])).append(")arguments[").append(i).append("]).");
+            call.append(params[i].getName()).append("Value()");
+         }
+         else
+         {
+            call.append("(").append(typeName(params[i])).append(")arguments[").append(i).append("]");
+         }
+      }
+      call.append(")");
+
+      if (method.getReturnType() == Void.TYPE)
+      {
+         body.append(call).append("; return null; ");
+      }
+      else
+      {
+         body.append("return ($w)").append(call).append("; ");
+      }
+      body.append("} catch (java.lang.Throwable t) { throw new java.lang.reflect.InvocationTargetException(t); } } ");
+      body.append("break; ");
+   }
+
+   static String typeName(Class type)
+   {
+      if (type.isArray()) return typeName(type.getComponentType()) + "[]";
+      return type.getName();
+   }
+
+   static String wrapperName(Class primitive)
+   {
+      if (primitive == Integer.TYPE) return "java.lang.Integer";
+      if (primitive == Long.TYPE) return "java.lang.Long";
+      if (primitive == Boolean.TYPE) return "java.lang.Boolean";
+      if (primitive == Double.TYPE) return "java.lang.Double";
+      if (primitive == Float.TYPE) return "java.lang.Float";
+      if (primitive == Short.TYPE) return "java.lang.Short";
+      if (primitive == Byte.TYPE) return "java.lang.Byte";
+      return "java.lang.Character";
+   }
+}
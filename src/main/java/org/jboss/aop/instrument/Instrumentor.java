@@ -33,11 +33,13 @@ import org.jboss.aop.Advised;
 import org.jboss.aop.Advisor;
 import org.jboss.aop.AspectManager;
 import org.jboss.aop.ClassAdvisor;
+import org.jboss.aop.HotSwapStrategy;
 import org.jboss.aop.annotation.compiler.AnnotationInfoCreator;
 import org.jboss.aop.classpool.AOPClassPool;
 import org.jboss.aop.classpool.AOPClassPoolRepository;
 import org.jboss.aop.introduction.AnnotationIntroduction;
 import org.jboss.aop.introduction.InterfaceIntroduction;
+import org.jboss.aop.pointcut.TypeMatchCache;
 import org.jboss.aop.util.CtConstructorComparator;
 import org.jboss.aop.util.CtFieldComparator;
 import org.jboss.aop.util.JavassistMethodHashing;
@@ -93,6 +95,11 @@ public abstract class Instrumentor
     */
    public static final String HELPER_FIELD_NAME = "aop$classAdvisor" + ClassAdvisor.NOT_TRANSFORMABLE_SUFFIX;
 
+   /**
+    * Name of the field updater used to set the instance advisor
+    */
+   public static final String INSTANCE_ADVISOR_UPDATER = "aop$instanceAdvisorUpdater" + ClassAdvisor.NOT_TRANSFORMABLE_SUFFIX;
+
    protected AOPClassPool classPool;
    protected boolean basicsSet = false;
 
@@ -100,7 +107,8 @@ public abstract class Instrumentor
    protected CodeConverter converter;
    protected AspectManager manager;
    protected JoinpointClassifier joinpointClassifier;
-   protected static Collection processedClasses = new ArrayList();
+   /** The classes accessing each joinpoint, only kept when hot swapping */
+   protected static JoinpointReferenceIndex referenceIndex = new JoinpointReferenceIndex();
 
    // Transformers, more than meets the eye!
    MethodExecutionTransformer methodExecutionTransformer;
@@ -150,6 +158,14 @@ public abstract class Instrumentor
       return converter;
    }
 
+   /**
+    * Forgets the joinpoint references of the classes of an unregistered class loader
+    */
+   public static void unregisterClassLoader(ClassLoader loader)
+   {
+      referenceIndex.removeClassLoader(loader);
+   }
+
    /**
     * Is the method advisable?
     */
@@ -291,6 +307,7 @@ public abstract class Instrumentor
          CtClass intf = classPool.get(interfaces[i]);
          if (clazz.subtypeOf(intf)) continue;
          clazz.addInterface(intf);
+         TypeMatchCache.invalidateCtClass(clazz);
          HashMap intfMap = JavassistMethodHashing.getMethodMap(intf);
          Iterator entries = intfMap.entrySet().iterator();
          while (entries.hasNext())
@@ -340,6 +357,7 @@ public abstract class Instrumentor
       if (!clazz.subtypeOf(iface) && !clazz.subclassOf(iface))
       {
          clazz.addInterface(iface);
+         TypeMatchCache.invalidateCtClass(clazz);
       }
 
       CtMethod mixinInvokeMethod = createInvokeMethod(clazz);
@@ -685,9 +703,9 @@ public abstract class Instrumentor
    public boolean transform(CtClass clazz,
                             ClassAdvisor advisor)
    {
-      synchronized(this.processedClasses)
+      if (manager.getDynamicAOPStrategy() instanceof HotSwapStrategy)
       {
-         processedClasses.add(clazz);
+         referenceIndex.addReferences(clazz);
       }
       try
       {
@@ -728,6 +746,9 @@ public abstract class Instrumentor
          // create static wrapper methods after
          // clazz.instrument because the wrappers may call cons or fields
          fieldAccessTransformer.buildFieldWrappers(clazz, advisor);
+         // count entries into methods referenced by cflows last, so that the
+         // counters wrap the generated wrapper methods
+         converted = CFlowTrackerTransformer.instrument(clazz) || converted;
          if (constructorAccessConverted)
          {
             constructorExecutionTransformer.codeConverted();
@@ -853,6 +874,24 @@ public abstract class Instrumentor
       return field;
    }
 
+   /**
+    * Adds a static AtomicReferenceFieldUpdater for the volatile instance advisor field
+    * of a class, so that the instance advisor can be created lazily through a
+    * compareAndSet() without locking the advised object.
+    */
+   protected CtField addInstanceAdvisorUpdater(CtClass clazz, String fieldName, String typeName)
+           throws CannotCompileException, NotFoundException
+   {
+      CtField field = new CtField(forName("java.util.concurrent.atomic.AtomicReferenceFieldUpdater"), INSTANCE_ADVISOR_UPDATER, clazz);
+      field.setModifiers(Modifier.PROTECTED | Modifier.STATIC | Modifier.FINAL);
+      clazz.addField(field, CtField.Initializer.byExpr(
+            "java.util.concurrent.atomic.AtomicReferenceFieldUpdater#newUpdater(" +
+            "java.lang.Class#forName(\"" + clazz.getName() + "\"), " +
+            "java.lang.Class#forName(\"" + typeName + "\"), " +
+            "\"" + fieldName + "\")"));
+      return field;
+   }
+
    /**
     * Adds a protected field to a class.
     */
@@ -883,6 +922,7 @@ public abstract class Instrumentor
 
       // add marker interface.
       clazz.addInterface(forName(AOP_PACKAGE + ".Advised"));
+      TypeMatchCache.invalidateCtClass(clazz);
       
       doSetupBasics(clazz);
    }
@@ -922,34 +962,46 @@ public abstract class Instrumentor
          }
          // instrument classes that access the joinpoints whose status have changed, in
          // order to make this classes access the joinpoint wrapper instead
-         Collection classPools = manager.getRegisteredCLs().values();
-         Collection conversionsRegistered = new HashSet();
-         synchronized(this.processedClasses)
+         Collection accessors = new HashSet();
+         for (Iterator iterator = joinpointUpdates.iterator(); iterator.hasNext(); )
          {
-            for (Iterator iterator2 = processedClasses.iterator(); iterator2.hasNext(); ) {       
-
-               CtClass clazz = (CtClass) iterator2.next();
-               if (manager.isNonAdvisableClassName(clazz.getName()) || ! isTransformable(clazz))
-               {
-                  continue;
-               }
-               // class already instrumented
-               if (classes.contains(clazz))
-               {
-                  continue;
-               }
-               // check if clazz should be added to classes
-               clazz.defrost();
-               byte[] previousByteCode = clazz.toBytecode();
-               clazz.defrost();
-               clazz.instrument(converter);
-               if (!java.util.Arrays.equals(clazz.toBytecode(), previousByteCode))
-               {
-                  classes.add(clazz);
-               }
-               clazz.defrost();
+            JoinpointStatusUpdate update = (JoinpointStatusUpdate) iterator.next();
+            JoinpointStatusUpdate.ClassJoinpoints wrapTargets = update.newlyAdvisedJoinpoints;
+            if (!wrapTargets.fieldReads.isEmpty() || !wrapTargets.fieldWrites.isEmpty())
+            {
+               List advisableFields = getAdvisableFields(update.clazz);
+               addFieldAccessors(advisableFields, wrapTargets.fieldReads, accessors);
+               addFieldAccessors(advisableFields, wrapTargets.fieldWrites, accessors);
+            }
+            if (!wrapTargets.constructorExecutions.isEmpty())
+            {
+               referenceIndex.getConstructorAccessors(update.clazz.getName(), accessors);
             }
          }
+         List accessorClasses = JoinpointReferenceIndex.getClasses(accessors, manager.getRegisteredCLs());
+         for (Iterator iterator = accessorClasses.iterator(); iterator.hasNext(); )
+         {
+            CtClass clazz = (CtClass) iterator.next();
+            if (manager.isNonAdvisableClassName(clazz.getName()) || ! isTransformable(clazz))
+            {
+               continue;
+            }
+            // class already instrumented
+            if (classes.contains(clazz))
+            {
+               continue;
+            }
+            // check if clazz should be added to classes
+            clazz.defrost();
+            byte[] previousByteCode = clazz.toBytecode();
+            clazz.defrost();
+            clazz.instrument(converter);
+            if (!java.util.Arrays.equals(clazz.toBytecode(), previousByteCode))
+            {
+               classes.add(clazz);
+            }
+            clazz.defrost();
+         }
          // notifies code conversion observers
          fieldAccessTransformer.codeConverted();
          constructorExecutionTransformer.codeConverted();
@@ -959,6 +1011,9 @@ public abstract class Instrumentor
          {
             CtClass clazz = (CtClass) iterator.next();
             AOPClassPool classPool = (AOPClassPool) clazz.getClassPool();
+            // keep the converted version, the class files only have the original code
+            classPool.lockInCache(clazz);
+            referenceIndex.addReferences(clazz);
             clazz.defrost();
             hotSwapper.registerChange(classPool.getClassLoader().loadClass(clazz.getName()),
                   clazz.toBytecode());
@@ -1006,7 +1061,6 @@ public abstract class Instrumentor
    public void convertProcessedClasses(HotSwapper hotSwapper, CtClass clazz,
          Collection fieldReads, Collection fieldWrites, boolean constructor)
    {
-      AOPClassPool classPool = (AOPClassPool) clazz.getClassPool();
       CodeConverter codeConverter = new CodeConverter();
       for (Iterator iterator = fieldReads.iterator(); iterator.hasNext(); )
       {
@@ -1023,54 +1077,73 @@ public abstract class Instrumentor
          codeConverter.replaceNew(clazz, clazz, ConstructorExecutionTransformer.constructorFactory(clazz.getSimpleName()));
       }
          
-      synchronized(processedClasses)
+      Collection accessors = new HashSet();
+      for (Iterator iterator = fieldReads.iterator(); iterator.hasNext(); )
       {
-      for (Iterator iterator = processedClasses.iterator(); iterator.hasNext();)
+         referenceIndex.getFieldAccessors(((CtField) iterator.next()).getName(), accessors);
+      }
+      for (Iterator iterator = fieldWrites.iterator(); iterator.hasNext(); )
+      {
+         referenceIndex.getFieldAccessors(((CtField) iterator.next()).getName(), accessors);
+      }
+      if (constructor)
+      {
+         referenceIndex.getConstructorAccessors(clazz.getName(), accessors);
+      }
+
+      List accessorClasses = JoinpointReferenceIndex.getClasses(accessors, manager.getRegisteredCLs());
+      for (Iterator iterator = accessorClasses.iterator(); iterator.hasNext();)
       {
          CtClass processedClass = (CtClass) iterator.next();
          if (processedClass == clazz)
             continue;
-         if (processedClass.getRefClasses() == null ||
-                ! clazz.getRefClasses().contains(clazz.getName()))
-          {
-             continue;
-          }
-          try
-          {
-             processedClass.defrost();
-             byte[] previousByteCode = processedClass.toBytecode();
-             processedClass.defrost();
-             processedClass.instrument(codeConverter);
-             byte[] updatedByteCode = processedClass.toBytecode();
-             if (!java.util.Arrays.equals(updatedByteCode, previousByteCode))
-             {
-               hotSwapper.registerChange(classPool.getClassLoader().loadClass(processedClass.getName()), updatedByteCode);
-             }
-             processedClass.defrost();
-          }
-          catch (Exception e)
-          {
-             e.printStackTrace();
-             if (AspectManager.suppressTransformationErrors)
-             {
-                System.err.println("[warn] AOP Instrumentor failed to updated wrapping status.");
-                e.printStackTrace();
-             }
-             else if (e instanceof TransformationException)
-             {
-                throw ((TransformationException) e);
-             }
-             else
-             {
-                throw new RuntimeException("failed to update wrapping status", e);
-             }
-          }
-
+         try
+         {
+            processedClass.defrost();
+            byte[] previousByteCode = processedClass.toBytecode();
+            processedClass.defrost();
+            processedClass.instrument(codeConverter);
+            byte[] updatedByteCode = processedClass.toBytecode();
+            if (!java.util.Arrays.equals(updatedByteCode, previousByteCode))
+            {
+               AOPClassPool processedPool = (AOPClassPool) processedClass.getClassPool();
+               processedPool.lockInCache(processedClass);
+               referenceIndex.addReferences(processedClass);
+               hotSwapper.registerChange(processedPool.getClassLoader().loadClass(processedClass.getName()), updatedByteCode);
+            }
+            processedClass.defrost();
+         }
+         catch (Exception e)
+         {
+            e.printStackTrace();
+            if (AspectManager.suppressTransformationErrors)
+            {
+               System.err.println("[warn] AOP Instrumentor failed to updated wrapping status.");
+               e.printStackTrace();
+            }
+            else if (e instanceof TransformationException)
+            {
+               throw ((TransformationException) e);
+            }
+            else
+            {
+               throw new RuntimeException("failed to update wrapping status", e);
+            }
          }
       }
       hotSwapper.hotSwap();
    }
    
+   private void addFieldAccessors(List advisableFields, Collection fieldIndexes, Collection accessors)
+   {
+      for (Iterator iterator = fieldIndexes.iterator(); iterator.hasNext(); )
+      {
+         int fieldIndex = ((Integer) iterator.next()).intValue();
+         CtField field = (CtField) advisableFields.get(fieldIndex);
+         referenceIndex.getFieldAccessors(field.getName(), accessors);
+      }
+   }
+
    protected abstract void doSetupBasics(CtClass clazz) throws CannotCompileException, NotFoundException;
    
    /**
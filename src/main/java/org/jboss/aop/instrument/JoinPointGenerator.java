@@ -54,6 +54,7 @@ import org.jboss.aop.pointcut.ast.ASTCFlowExpression;
 import org.jboss.aop.pointcut.ast.ClassExpression;
 import org.jboss.aop.standalone.Compiler;
 import org.jboss.aop.util.JavassistUtils;
+import org.jboss.aop.util.MethodHashing;
 import org.jboss.aop.util.ReflectToJavassist;
 
 /** Creates the Joinpoint invocation replacement classes used with Generated advisors
@@ -150,9 +151,17 @@ public abstract class JoinPointGenerator
             //someone beat us to generating the class
             return;
          }
+         Class pregenerated = loadPregeneratedClass();
+         if (pregenerated != null)
+         {
+            joinpointField.set(advisor, instantiatePregeneratedClass(pregenerated));
+            initialised = true;
+            return;
+         }
          AspectManager manager = AspectManager.instance();
          ClassPool pool = manager.findClassPool(Thread.currentThread().getContextClassLoader());
-         GeneratedClassInfo generatedClass = generateJoinpointClass(pool, info);
+         String className = advisor.getClass().getPackage().getName() + "." + joinpointClassName + "_" + getIncrement(); 
+         GeneratedClassInfo generatedClass = generateJoinpointClass(pool, info, className);
          
          Class clazz = toClass(pool, generatedClass.getGenerated());
          
@@ -167,6 +176,129 @@ public abstract class JoinPointGenerator
       initialised = true;
    }
 
+   /**
+    * Generates the joinpoint class now rather than on the first invocation of the joinpoint.
+    * Does nothing if the joinpoint has no advices or its class has already been generated.
+    */
+   public void pregenerateJoinPointClass()
+   {
+      try
+      {
+         if (joinpointField == null || generatorField.get(advisor) != this)
+         {
+            return;
+         }
+      }
+      catch (IllegalAccessException e)
+      {
+         throw new RuntimeException(e);
+      }
+      generateJoinPointClass();
+   }
+
+   /**
+    * Creates the joinpoint class for the current bindings under a name derived from them, so
+    * that aopc can write it out next to the advised class. {@link #generateJoinPointClass()}
+    * picks it up instead of generating the class as long as the bindings stay the same.
+    *
+    * @return the joinpoint class, or null if the joinpoint has no advices or uses aspect factories
+    */
+   public CtClass createPregeneratedClass(ClassPool pool) throws Exception
+   {
+      if (joinpointField == null || generatorField.get(advisor) != this)
+      {
+         return null;
+      }
+      String className = getPregeneratedClassName();
+      if (className == null)
+      {
+         return null;
+      }
+      return generateJoinpointClass(pool, info, className).getGenerated();
+   }
+
+   /**
+    * The name of a pregenerated joinpoint class contains a hash of everything in the bindings
+    * that ends up in the generated code, so a class generated for different bindings is never used.
+    *
+    * @return the name, or null if the joinpoint class can not be generated ahead of time
+    */
+   private String getPregeneratedClassName() throws Exception
+   {
+      InterceptorFactoryWrapper[] factories = info.getFactories();
+      if (factories == null)
+      {
+         return null;
+      }
+      StringBuffer bindings = new StringBuffer();
+      for (int i = 0 ; i < factories.length ; i++)
+      {
+         if (factories[i].isAspectFactory())
+         {
+            //The aspect class is only known once the factory has created an aspect
+            return null;
+         }
+         bindings.append(factories[i].getAspectClassName());
+         bindings.append('.');
+         bindings.append(factories[i].getAdviceName());
+         bindings.append(factories[i].isBefore() ? ";before;" : factories[i].isAfter() ? ";after;" : factories[i].isThrowing() ? ";throwing;" : ";around;");
+         bindings.append(factories[i].getScope());
+         bindings.append(';');
+         bindings.append(factories[i].getCFlowString());
+         bindings.append('|');
+      }
+      return joinpointFqn + "_P" + Long.toHexString(MethodHashing.createHash(bindings.toString()));
+   }
+
+   private Class loadPregeneratedClass() throws Exception
+   {
+      String className = getPregeneratedClassName();
+      if (className == null)
+      {
+         return null;
+      }
+      Class clazz;
+      try
+      {
+         clazz = advisor.getClazz().getClassLoader().loadClass(className);
+      }
+      catch (ClassNotFoundException e)
+      {
+         return null;
+      }
+      if (!joinpointField.getType().isAssignableFrom(clazz))
+      {
+         return null;
+      }
+      return clazz;
+   }
+
+   private Object instantiatePregeneratedClass(Class clazz) throws Exception
+   {
+      Constructor ctor = clazz.getConstructor(new Class[] {info.getClass()});
+      Object obj = ctor.newInstance(new Object[] {info});
+
+      //Same as instantiateClass() for the around advices sharing a cflow field
+      InterceptorFactoryWrapper[] factories = info.getFactories();
+      HashMap cflows = new HashMap();
+      for (int i = 0 ; i < factories.length ; i++)
+      {
+         String cflow = factories[i].getCFlowString();
+         if (cflow == null || cflows.containsKey(cflow))
+         {
+            continue;
+         }
+         cflows.put(cflow, factories[i]);
+         if (factories[i].isAround())
+         {
+            Field field = clazz.getDeclaredField("cflow" + i);
+            field.setAccessible(true);
+            field.set(obj, factories[i].getCflowExpression());
+         }
+      }
+      return obj;
+   }
+
    private Class toClass(ClassPool pool, CtClass ctclass) throws NotFoundException, CannotCompileException, ClassNotFoundException
    {
       if (AspectManager.debugClasses)
@@ -203,11 +335,10 @@ public abstract class JoinPointGenerator
    
    protected abstract void initialiseJoinPointNames();
 
-   private GeneratedClassInfo generateJoinpointClass(ClassPool pool, JoinPointInfo newInfo) throws NotFoundException,
+   private GeneratedClassInfo generateJoinpointClass(ClassPool pool, JoinPointInfo newInfo, String className) throws NotFoundException,
    CannotCompileException, ClassNotFoundException
    {
       CtClass superClass = pool.get(joinpointFqn);
-      String className = advisor.getClass().getPackage().getName() + "." + joinpointClassName + "_" + getIncrement(); 
       try
       {
          CtClass clazz = pool.makeClass(className);
@@ -1052,8 +1183,10 @@ public abstract class JoinPointGenerator
 
       if (!firstParamIsInvocation)
       {
+         invokeNextBody.append("{");
+         invokeNextBody.append("   org.jboss.aop.util.ThreadStack invocationStack = org.jboss.aop.joinpoint.CurrentInvocation.getStack(); ");
+         invokeNextBody.append("   invocationStack.push(this); ");
          invokeNextBody.append("try{");
-         invokeNextBody.append("   org.jboss.aop.joinpoint.CurrentInvocation.push(this); ");
       }
 
       invokeNextBody.append("   " + returnStr + " " + setup.getAspectFieldName() + "." + properties.getAdviceName() + "(");
@@ -1063,7 +1196,8 @@ public abstract class JoinPointGenerator
       if (!firstParamIsInvocation)
       {
          invokeNextBody.append("}finally{");
-         invokeNextBody.append("   org.jboss.aop.joinpoint.CurrentInvocation.pop(); ");
+         invokeNextBody.append("   invocationStack.pop(); ");
+         invokeNextBody.append("}");
          invokeNextBody.append("}");
       }
    }
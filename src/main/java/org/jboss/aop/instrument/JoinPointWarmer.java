@@ -0,0 +1,114 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.instrument;
+
+import org.jboss.aop.AspectManager;
+import org.jboss.aop.GeneratedClassAdvisor;
+
+import EDU.oswego.cs.dl.util.concurrent.QueuedExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+
+/**
+ * Generates the joinpoint classes of generated advisors on a background thread, so that
+ * the first invocations of advised joinpoints do not have to wait for javassist. Enabled
+ * through the jboss.aop.joinpoint.warmup system property.
+ * <p/>
+ * Joinpoints invoked before the warmer gets to them are generated on the calling thread
+ * as usual, {@link JoinPointGenerator#generateJoinPointClass()} is synchronized and skips
+ * joinpoints that have already been generated.
+ *
+ * @version $Revision$
+ */
+public class JoinPointWarmer
+{
+   private static QueuedExecutor executor;
+
+   /**
+    * Queues the generation of all joinpoint classes of the advisor
+    */
+   public static void submit(final GeneratedClassAdvisor advisor)
+   {
+      try
+      {
+         getExecutor().execute(new Runnable()
+         {
+            public void run()
+            {
+               warmUp(advisor);
+            }
+         });
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Generates all joinpoint classes of the advisor on the current thread, using the
+    * classloader of the advised class as the context classloader
+    */
+   public static void warmUp(GeneratedClassAdvisor advisor)
+   {
+      Class clazz = advisor.getClazz();
+      ClassLoader loader = clazz.getClassLoader();
+      Thread thread = Thread.currentThread();
+      ClassLoader old = thread.getContextClassLoader();
+      thread.setContextClassLoader(loader);
+      try
+      {
+         //Waits for the static initializer, the callers are only set up at the end of it
+         Class.forName(clazz.getName(), true, loader);
+         advisor.generateJoinPointClasses();
+      }
+      catch (Throwable e)
+      {
+         //The joinpoints that failed will be generated on their first invocation
+         if (AspectManager.verbose)
+         {
+            System.out.println("[warn] Unable to generate joinpoint classes of " + clazz.getName() + " ahead of time: " + e);
+         }
+      }
+      finally
+      {
+         thread.setContextClassLoader(old);
+      }
+   }
+
+   private static synchronized QueuedExecutor getExecutor()
+   {
+      if (executor == null)
+      {
+         executor = new QueuedExecutor();
+         executor.setThreadFactory(new ThreadFactory()
+         {
+            public Thread newThread(Runnable command)
+            {
+               Thread thread = new Thread(command, "JBoss AOP joinpoint warmer");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+      return executor;
+   }
+}
@@ -0,0 +1,214 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.instrument;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.ConstPool;
+
+/**
+ * Index from field and constructor joinpoints to the names of the classes
+ * that access them, built from the constant pools of the classes seen by the
+ * instrumentor. Used by hot swapping to reconvert only the classes affected by a
+ * change in the wrapping status of a joinpoint.
+ * <p/>
+ * Fields are indexed by name only, since the class in a field reference may be a
+ * subclass of the one declaring it. Constructors are indexed by class. The index only
+ * holds class names and weak references to their class loaders, the <code>CtClass</code>es
+ * are looked up in the class pool when needed. The entries of a class loader are dropped
+ * when it is unregistered.
+ *
+ * @version $Revision$
+ */
+class JoinpointReferenceIndex
+{
+   private static final String FIELD = "field:";
+   private static final String CONSTRUCTOR = "new:";
+
+   /** key -> HashSet of Accessor */
+   private HashMap accessors = new HashMap();
+
+   /**
+    * A class that accesses a joinpoint
+    */
+   static class Accessor
+   {
+      final String className;
+      final WeakReference loader;
+      final int hashCode;
+
+      Accessor(String className, ClassLoader loader)
+      {
+         this.className = className;
+         this.loader = new WeakReference(loader);
+         this.hashCode = className.hashCode() ^ System.identityHashCode(loader);
+      }
+
+      ClassLoader getClassLoader()
+      {
+         return (ClassLoader) loader.get();
+      }
+
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this) return true;
+         if (!(obj instanceof Accessor)) return false;
+         Accessor other = (Accessor) obj;
+         return className.equals(other.className) && getClassLoader() == other.getClassLoader();
+      }
+   }
+
+   /**
+    * Records the fields and constructors referenced by the class
+    */
+   synchronized void addReferences(CtClass clazz)
+   {
+      ClassLoader loader = clazz.getClassPool().getClassLoader();
+      Accessor accessor = new Accessor(clazz.getName(), loader);
+      ConstPool cp = clazz.getClassFile2().getConstPool();
+      for (int i = 1; i < cp.getSize(); i++)
+      {
+         switch (cp.getTag(i))
+         {
+            case ConstPool.CONST_Fieldref:
+               add(FIELD + cp.getFieldrefName(i), accessor);
+               break;
+            case ConstPool.CONST_Methodref:
+               if (cp.getMethodrefName(i).equals("<init>"))
+               {
+                  add(CONSTRUCTOR + cp.getMethodrefClassName(i), accessor);
+               }
+               break;
+         }
+      }
+   }
+
+   private void add(String key, Accessor accessor)
+   {
+      HashSet set = (HashSet) accessors.get(key);
+      if (set == null)
+      {
+         set = new HashSet();
+         accessors.put(key, set);
+      }
+      set.add(accessor);
+   }
+
+   /**
+    * Adds the classes that may access a field with the given name to the result
+    */
+   void getFieldAccessors(String fieldName, Collection result)
+   {
+      get(FIELD + fieldName, result);
+   }
+
+   /**
+    * Adds the classes that call a constructor of the given class to the result
+    */
+   void getConstructorAccessors(String className, Collection result)
+   {
+      get(CONSTRUCTOR + className, result);
+   }
+
+   /**
+    * Drops the classes of the class loader, and those of class loaders that have been collected
+    */
+   synchronized void removeClassLoader(ClassLoader loader)
+   {
+      for (Iterator it = accessors.values().iterator(); it.hasNext();)
+      {
+         HashSet set = (HashSet) it.next();
+         for (Iterator accessorIt = set.iterator(); accessorIt.hasNext();)
+         {
+            ClassLoader accessorLoader = ((Accessor) accessorIt.next()).getClassLoader();
+            if (accessorLoader == loader || accessorLoader == null)
+            {
+               accessorIt.remove();
+            }
+         }
+         if (set.isEmpty()) it.remove();
+      }
+   }
+
+   private synchronized void get(String key, Collection result)
+   {
+      HashSet set = (HashSet) accessors.get(key);
+      if (set == null) return;
+      for (Iterator it = set.iterator(); it.hasNext();)
+      {
+         Accessor accessor = (Accessor) it.next();
+         if (accessor.getClassLoader() == null)
+         {
+            it.remove();
+            continue;
+         }
+         result.add(accessor);
+      }
+   }
+
+   /**
+    * Looks up the classes of the accessors in the class pools of their class loaders
+    *
+    * @param registeredCLs the registered class loaders and their pools
+    * @return the <code>CtClass</code>es, skipping those whose loader is no longer registered
+    */
+   static List getClasses(Collection accessors, Map registeredCLs)
+   {
+      ArrayList classes = new ArrayList(accessors.size());
+      for (Iterator it = accessors.iterator(); it.hasNext();)
+      {
+         Accessor accessor = (Accessor) it.next();
+         ClassLoader loader = accessor.getClassLoader();
+         if (loader == null) continue;
+         ClassPool pool;
+         synchronized (registeredCLs)
+         {
+            pool = (ClassPool) registeredCLs.get(loader);
+         }
+         if (pool == null) continue;
+         try
+         {
+            classes.add(pool.get(accessor.className));
+         }
+         catch (NotFoundException e)
+         {
+            // the class file is gone, nothing to convert
+         }
+      }
+      return classes;
+   }
+}
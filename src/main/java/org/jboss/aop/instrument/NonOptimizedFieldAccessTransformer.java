@@ -135,7 +135,7 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
             "{ " +
             "    if (" + Instrumentor.HELPER_FIELD_NAME + ".hasAspects() " + instanceCheck + " ) " +
             "    { " +
-            "       return ($r)" + Instrumentor.HELPER_FIELD_NAME + ".invokeRead($1, (int)" + (fieldIndex) + "); " +
+            "       return ($r)" + Instrumentor.HELPER_FIELD_NAME + ".invokeRead" + getAccessSuffix(field) + "($1, (int)" + (fieldIndex) + "); " +
             "    } " +
             "    return " + access + name + "; " +
             "}";
@@ -145,7 +145,7 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
              "{ " +
              "    if (" + Instrumentor.HELPER_FIELD_NAME + ".hasAspects() " + instanceCheck + " ) " +
              "    { " +
-             "       " + Instrumentor.HELPER_FIELD_NAME + ".invokeWrite($1, (int)" + (fieldIndex) + ", ($w)$2); " +
+             "       " + Instrumentor.HELPER_FIELD_NAME + ".invokeWrite" + getAccessSuffix(field) + "($1, (int)" + (fieldIndex) + ", " + getWrittenValue(field, "$2") + "); " +
              "    } " +
              "    else " +
              "    { " +
@@ -154,10 +154,33 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
              "}";
    }
 
-   protected void replaceFieldAccessInternally(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index) throws CannotCompileException
+   /**
+    * int and long fields are accessed through the unboxed variants of
+    * {@link ClassAdvisor#invokeRead(Object, int)} and {@link ClassAdvisor#invokeWrite(Object, int, Object)}
+    */
+   private static String getAccessSuffix(CtField field)
    {
-      NonOptimizedFieldAccessExprEditor expr = new NonOptimizedFieldAccessExprEditor(clazz, field, doGet, doSet, index);
-      clazz.instrument(expr);
+      try
+      {
+         CtClass type = field.getType();
+         if (type == CtClass.intType) return "Int";
+         if (type == CtClass.longType) return "Long";
+      }
+      catch (NotFoundException e)
+      {
+         // use the boxed variant
+      }
+      return "";
+   }
+
+   private static String getWrittenValue(CtField field, String value)
+   {
+      return (getAccessSuffix(field).length() == 0) ? "($w)" + value : value;
+   }
+
+   protected FieldAccessExprEditor createFieldAccessExprEditor(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index)
+   {
+      return new NonOptimizedFieldAccessExprEditor(clazz, field, doGet, doSet, index);
    }
 
 
@@ -179,7 +202,7 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
                "    if (" + Instrumentor.HELPER_FIELD_NAME + ".hasAspects()) " +
                "    { " +
                "       Object obj = null;" +
-               "       $_ = ($r)" + Instrumentor.HELPER_FIELD_NAME + ".invokeRead(obj, (int)" + (fieldIndex) + "); " +
+               "       $_ = ($r)" + Instrumentor.HELPER_FIELD_NAME + ".invokeRead" + getAccessSuffix(field) + "(obj, (int)" + (fieldIndex) + "); " +
                "    } " +
                "    else " +
                "    { " +
@@ -194,7 +217,7 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
                "    org.jboss.aop.ClassInstanceAdvisor instAdv = (org.jboss.aop.ClassInstanceAdvisor)((org.jboss.aop.InstanceAdvised)$0)._getInstanceAdvisor();" +
                "    if (" + Instrumentor.HELPER_FIELD_NAME + ".hasAspects() || (instAdv != null && instAdv.hasInstanceAspects)) " +
                "    { " +
-               "       $_ = ($r)" + Instrumentor.HELPER_FIELD_NAME + ".invokeRead($0, (int)" + (fieldIndex) + "); " +
+               "       $_ = ($r)" + Instrumentor.HELPER_FIELD_NAME + ".invokeRead" + getAccessSuffix(field) + "($0, (int)" + (fieldIndex) + "); " +
                "    } " +
                "    else " +
                "    { " +
@@ -217,7 +240,7 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
                     "    if (" + Instrumentor.HELPER_FIELD_NAME + ".hasAspects()) " +
                     "    { " +
                     "       Object obj = null;" +
-                    "      " + Instrumentor.HELPER_FIELD_NAME + ".invokeWrite(obj, (int)" + (fieldIndex) + ", ($w)$1); " +
+                    "      " + Instrumentor.HELPER_FIELD_NAME + ".invokeWrite" + getAccessSuffix(field) + "(obj, (int)" + (fieldIndex) + ", " + getWrittenValue(field, "$1") + "); " +
                     "    } " +
                     "    else " +
                     "    { " +
@@ -231,7 +254,7 @@ public class NonOptimizedFieldAccessTransformer extends FieldAccessTransformer
                     "    org.jboss.aop.ClassInstanceAdvisor instAdv = (org.jboss.aop.ClassInstanceAdvisor)((org.jboss.aop.InstanceAdvised)$0)._getInstanceAdvisor();" +
                     "    if (" + Instrumentor.HELPER_FIELD_NAME + ".hasAspects() || (instAdv != null && instAdv.hasInstanceAspects)) " +
                     "    { " +
-                    "       " + Instrumentor.HELPER_FIELD_NAME + ".invokeWrite($0, (int)" + (fieldIndex) + ", ($w)$1); " +
+                    "       " + Instrumentor.HELPER_FIELD_NAME + ".invokeWrite" + getAccessSuffix(field) + "($0, (int)" + (fieldIndex) + ", " + getWrittenValue(field, "$1") + "); " +
                     "    } " +
                     "    else " +
                     "    { " +
@@ -287,10 +287,9 @@ public class OptimizedFieldAccessTransformer extends FieldAccessTransformer
 
    }
    
-   protected void replaceFieldAccessInternally(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index) throws CannotCompileException
+   protected FieldAccessExprEditor createFieldAccessExprEditor(CtClass clazz, CtField field, boolean doGet, boolean doSet, int index)
    {
-      OptimizedFieldAccessExprEditor expr = new OptimizedFieldAccessExprEditor(clazz, field, doGet, doSet, index);
-      clazz.instrument(expr);
+      return new OptimizedFieldAccessExprEditor(clazz, field, doGet, doSet, index);
    }
 
    protected class OptimizedFieldAccessExprEditor extends FieldAccessExprEditor
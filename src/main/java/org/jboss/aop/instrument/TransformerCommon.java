@@ -90,6 +90,7 @@ public class TransformerCommon {
          else
          // if load time
          {
+            WeaveCache.recordGeneratedClass(newClass);
             newClass.toClass();
          }
       }
@@ -0,0 +1,404 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.instrument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javassist.ClassPath;
+import javassist.CtClass;
+import javassist.scopedpool.ScopedClassPool;
+
+import org.jboss.aop.AspectManager;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+
+/**
+ * Persistent cache of load-time weaving results. Entries are keyed on a digest of
+ * the class name, the original class file and the fingerprint of the aspect
+ * configuration (see <code>AspectManager.getWeaveFingerprint()</code>), and hold the
+ * woven class file, or nothing if the class did not need weaving, together with the
+ * classes generated while weaving it.
+ * <p/>
+ * Entries are appended to a single file which is locked while writing, so several
+ * JVMs can share the same cache directory. The file is never rewritten; delete it
+ * to clear the cache. Only the class itself is part of the key, so the cache should
+ * also be cleared if its superclasses or the classes it references change in a way
+ * that influences weaving.
+ *
+ * @version $Revision$
+ */
+public class WeaveCache
+{
+   private static final String FILE_NAME = "aop-weave.cache";
+   private static final int KEY_LENGTH = 16;
+
+   private static ThreadLocal digests = new ThreadLocal();
+   private static ThreadLocal recording = new ThreadLocal();
+
+   private File file;
+   private RandomAccessFile raf;
+   private FileChannel channel;
+   /** key -> offset of the entry in the file */
+   private HashMap index = new HashMap();
+   /** pool -> WovenClassPath */
+   private WeakHashMap wovenClassPaths = new WeakHashMap();
+
+   /**
+    * A cached result
+    */
+   public static class Entry
+   {
+      private byte[] woven;
+      private String[] generatedNames;
+      private byte[][] generated;
+
+      Entry(byte[] woven, String[] generatedNames, byte[][] generated)
+      {
+         this.woven = woven;
+         this.generatedNames = generatedNames;
+         this.generated = generated;
+      }
+
+      /**
+       * @return the woven class file, or null if the class was not transformed
+       */
+      public byte[] getWoven()
+      {
+         return woven;
+      }
+
+      public String[] getGeneratedNames()
+      {
+         return generatedNames;
+      }
+   }
+
+   public WeaveCache(File dir) throws IOException
+   {
+      dir.mkdirs();
+      file = new File(dir, FILE_NAME);
+      raf = new RandomAccessFile(file, "rw");
+      channel = raf.getChannel();
+      readIndex();
+   }
+
+   private void readIndex() throws IOException
+   {
+      FileLock lock = channel.lock();
+      try
+      {
+         long size = channel.size();
+         long pos = 0;
+         byte[] key = new byte[KEY_LENGTH];
+         while (pos + 4 <= size)
+         {
+            raf.seek(pos);
+            int length = raf.readInt();
+            if (length < KEY_LENGTH || pos + 4 + length > size)
+            {
+               break;
+            }
+            raf.readFully(key);
+            index.put(new Key(key), new Long(pos));
+            pos += 4 + length;
+         }
+         if (pos < size)
+         {
+            if (AspectManager.verbose) System.out.println("[warn] Discarding truncated weave cache entries in " + file);
+            channel.truncate(pos);
+         }
+      }
+      finally
+      {
+         lock.release();
+      }
+   }
+
+   public File getFile()
+   {
+      return file;
+   }
+
+   /**
+    * Computes the key of a class
+    */
+   public Object createKey(String className, byte[] classfileBuffer, String fingerprint)
+   {
+      MessageDigest digest = (MessageDigest) digests.get();
+      if (digest == null)
+      {
+         try
+         {
+            digest = MessageDigest.getInstance("MD5");
+         }
+         catch (NoSuchAlgorithmException e)
+         {
+            throw new RuntimeException(e);
+         }
+         digests.set(digest);
+      }
+      digest.reset();
+      digest.update(className.getBytes());
+      digest.update((byte) 0);
+      digest.update(fingerprint.getBytes());
+      digest.update((byte) 0);
+      digest.update(classfileBuffer);
+      return new Key(digest.digest());
+   }
+
+   /**
+    * @return the cached result, or null if the class has not been woven with this key before
+    */
+   public synchronized Entry get(Object key)
+   {
+      Long offset = (Long) index.get(key);
+      if (offset == null) return null;
+
+      try
+      {
+         raf.seek(offset.longValue() + 4 + KEY_LENGTH);
+         byte[] woven = null;
+         int wovenLength = raf.readInt();
+         if (wovenLength >= 0)
+         {
+            woven = new byte[wovenLength];
+            raf.readFully(woven);
+         }
+         int count = raf.readInt();
+         String[] generatedNames = new String[count];
+         byte[][] generated = new byte[count][];
+         for (int i = 0; i < count; i++)
+         {
+            generatedNames[i] = raf.readUTF();
+            generated[i] = new byte[raf.readInt()];
+            raf.readFully(generated[i]);
+         }
+         return new Entry(woven, generatedNames, generated);
+      }
+      catch (IOException e)
+      {
+         System.err.println("[warn] Unable to read weave cache " + file + ": " + e);
+         index.remove(key);
+         return null;
+      }
+   }
+
+   /**
+    * Stores the result of weaving a class
+    *
+    * @param woven the woven class file, or null if the class was not transformed
+    * @param generated the classes generated while weaving, as returned by {@link #stopRecording()}
+    */
+   public synchronized void put(Object key, byte[] woven, List generated)
+   {
+      if (index.containsKey(key)) return;
+
+      try
+      {
+         write(key, woven, generated);
+      }
+      catch (IOException e)
+      {
+         System.err.println("[warn] Unable to write weave cache " + file + ": " + e);
+      }
+   }
+
+   private void write(Object key, byte[] woven, List generated) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.write(((Key) key).digest);
+      if (woven == null)
+      {
+         out.writeInt(-1);
+      }
+      else
+      {
+         out.writeInt(woven.length);
+         out.write(woven);
+      }
+      int count = generated == null ? 0 : generated.size();
+      out.writeInt(count);
+      for (int i = 0; i < count; i++)
+      {
+         Object[] generatedClass = (Object[]) generated.get(i);
+         byte[] classBytes = (byte[]) generatedClass[1];
+         out.writeUTF((String) generatedClass[0]);
+         out.writeInt(classBytes.length);
+         out.write(classBytes);
+      }
+      out.flush();
+
+      FileLock lock = channel.lock();
+      try
+      {
+         long pos = channel.size();
+         raf.seek(pos);
+         raf.writeInt(bytes.size());
+         raf.write(bytes.toByteArray());
+         index.put(key, new Long(pos));
+      }
+      finally
+      {
+         lock.release();
+      }
+   }
+
+   /**
+    * Makes a cached result visible to the class pool as if the class had been woven
+    * by it, and defines the classes that were generated while weaving it.
+    *
+    * @return the woven class file, or null if the class was not transformed
+    */
+   public byte[] apply(Entry entry, ScopedClassPool pool, String className) throws Exception
+   {
+      if (entry.woven != null)
+      {
+         WovenClassPath classPath;
+         synchronized (wovenClassPaths)
+         {
+            classPath = (WovenClassPath) wovenClassPaths.get(pool);
+            if (classPath == null)
+            {
+               classPath = new WovenClassPath();
+               pool.insertClassPath(classPath);
+               wovenClassPaths.put(pool, classPath);
+            }
+         }
+         classPath.classes.put(className, entry.woven);
+         // Drop an unwoven copy read while weaving some other class
+         pool.flushClass(className);
+      }
+      for (int i = 0; i < entry.generated.length; i++)
+      {
+         CtClass generated = pool.makeClass(new ByteArrayInputStream(entry.generated[i]));
+         generated.toClass();
+      }
+      return entry.woven;
+   }
+
+   /**
+    * Starts collecting the classes generated by the current thread, see
+    * {@link #recordGeneratedClass(CtClass)}
+    */
+   public static void startRecording()
+   {
+      recording.set(new ArrayList());
+   }
+
+   /**
+    * @return the name and bytes of the classes generated since {@link #startRecording()}
+    */
+   public static List stopRecording()
+   {
+      List generated = (List) recording.get();
+      recording.set(null);
+      return generated;
+   }
+
+   /**
+    * Called before a class generated during weaving is loaded
+    */
+   public static void recordGeneratedClass(CtClass generated) throws Exception
+   {
+      List list = (List) recording.get();
+      if (list != null)
+      {
+         generated.stopPruning(true);
+         list.add(new Object[] {generated.getName(), generated.toBytecode()});
+      }
+   }
+
+   private static class Key
+   {
+      byte[] digest;
+      int hashCode;
+
+      Key(byte[] digest)
+      {
+         this.digest = (byte[]) digest.clone();
+         this.hashCode = (digest[0] & 0xff) | (digest[1] & 0xff) << 8 | (digest[2] & 0xff) << 16 | digest[3] << 24;
+      }
+
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this) return true;
+         if (!(obj instanceof Key)) return false;
+         return Arrays.equals(digest, ((Key) obj).digest);
+      }
+   }
+
+   /**
+    * Serves the woven versions of cached classes to a class pool
+    */
+   private static class WovenClassPath implements ClassPath
+   {
+      Map classes = new ConcurrentReaderHashMap();
+
+      public InputStream openClassfile(String classname)
+      {
+         byte[] bytes = (byte[]) classes.get(classname);
+         if (bytes == null) return null;
+         return new ByteArrayInputStream(bytes);
+      }
+
+      public URL find(String classname)
+      {
+         if (!classes.containsKey(classname)) return null;
+         try
+         {
+            return new URL("file:/WeaveCache/" + classname.replace('.', '/') + ".class");
+         }
+         catch (MalformedURLException e)
+         {
+            return null;
+         }
+      }
+
+      public void close()
+      {
+      }
+   }
+}
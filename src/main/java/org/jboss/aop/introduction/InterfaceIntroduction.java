@@ -105,6 +105,7 @@ public class InterfaceIntroduction
    protected ArrayList mixins = new ArrayList();
    protected ClassExpression classExpr;
    protected ASTStart ast;
+   protected String typeExpression;
 
    protected String constructorClass; // name of the class containing the mixin constructor method
    protected String constructorMethod; // name of the mixin constructor method
@@ -136,6 +137,12 @@ public class InterfaceIntroduction
       this.ast = ast;
       this.interfaces = interfaces;
    }
+
+   public InterfaceIntroduction(String name, ASTStart ast, String typeExpression, String[] interfaces)
+   {
+      this(name, ast, interfaces);
+      this.typeExpression = typeExpression;
+   }
    
    // call this constructor only when constructor method receives the mixin target
    // as parameter, for posterior validation of constructor method signature
@@ -147,6 +154,14 @@ public class InterfaceIntroduction
       this.constructorMethod = constructorMethod;
    }
 
+   public InterfaceIntroduction(String name, ASTStart ast, String typeExpression, String[] interfaces,
+         String constructorClass, String constructorMethod)
+   {
+      this(name, ast, typeExpression, interfaces);
+      this.constructorClass = constructorClass;
+      this.constructorMethod = constructorMethod;
+   }
+
    public void setClassExpression(String exp)
    {
       this.classExpr = new ClassExpression(exp);
@@ -157,6 +172,7 @@ public class InterfaceIntroduction
       try
       {
          ast = new TypeExpressionParser(new StringReader(exp)).Start();
+         typeExpression = exp;
       }
       catch (ParseException e)
       {
@@ -248,6 +264,14 @@ public class InterfaceIntroduction
       return ast;
    }
 
+   /**
+    * @return the type expression the ast was parsed from, or null if it is not known
+    */
+   public String getTypeExpression()
+   {
+      return typeExpression;
+   }
+
    public boolean matches(Advisor advisor, CtClass clazz) throws Exception
    {
       if (classExpr != null)
@@ -22,6 +22,7 @@
 package org.jboss.aop.joinpoint;
 
 import org.jboss.aop.util.ThreadLocalStack;
+import org.jboss.aop.util.ThreadStack;
 
 /**
  * This class should only be used from within a typed advice!
@@ -43,6 +44,15 @@ public class CurrentInvocation
       stack.pop();
    }
 
+   /**
+    * Returns the invocation stack of the current thread. Generated code pushing
+    * and popping around an advice call looks it up once and keeps hold of it.
+    */
+   public static ThreadStack getStack()
+   {
+      return stack.getStack();
+   }
+
    public static Invocation get()
    {
       return (Invocation) stack.get();
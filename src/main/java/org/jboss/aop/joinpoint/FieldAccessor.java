@@ -0,0 +1,47 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.joinpoint;
+
+/**
+ * Reads and writes a field at the end of an interceptor chain. Implementations must
+ * behave like {@link java.lang.reflect.Field#get(Object)} and
+ * {@link java.lang.reflect.Field#set(Object, Object)}, i.e. a bad target or a value
+ * of the wrong type results in an {@link IllegalArgumentException}. The primitive
+ * variants avoid boxing for fields of exactly that type.
+ *
+ * @see FieldAccessorFactory
+ * @version $Revision$
+ */
+public interface FieldAccessor
+{
+   Object get(Object target) throws Throwable;
+
+   void set(Object target, Object value) throws Throwable;
+
+   int getInt(Object target) throws Throwable;
+
+   void setInt(Object target, int value) throws Throwable;
+
+   long getLong(Object target) throws Throwable;
+
+   void setLong(Object target, long value) throws Throwable;
+}
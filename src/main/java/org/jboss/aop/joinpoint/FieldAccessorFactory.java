@@ -0,0 +1,41 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.joinpoint;
+
+import java.lang.reflect.Field;
+
+/**
+ * Strategy creating the {@link FieldAccessor}s used by {@link FieldReadInvocation} and
+ * {@link FieldWriteInvocation} once the interceptor chain has been exhausted.
+ *
+ * @see org.jboss.aop.AspectManager#setFieldAccessorFactory(FieldAccessorFactory)
+ * @version $Revision$
+ */
+public interface FieldAccessorFactory
+{
+   /**
+    * @param clazz the advised class
+    * @param fields the advised fields of the class, in the order of their field index
+    * @return an accessor for each of the fields, never null
+    */
+   FieldAccessor[] getAccessors(Class clazz, Field[] fields);
+}
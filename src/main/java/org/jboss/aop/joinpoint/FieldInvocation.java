@@ -40,6 +40,7 @@ public abstract class FieldInvocation extends InvocationBase
    
    protected transient Field field = null;
    protected int index;
+   protected transient FieldAccessor accessor;
 
    public FieldInvocation(Field field, int fieldIndex, Interceptor[] interceptors)
    {
@@ -125,4 +126,18 @@ public abstract class FieldInvocation extends InvocationBase
       return index;
    }
 
+   /**
+    * The accessor used to read or write the field once the interceptor chain is
+    * exhausted, the field is accessed through reflection if it is null
+    */
+   public FieldAccessor getAccessor()
+   {
+      return accessor;
+   }
+
+   public void setAccessor(FieldAccessor accessor)
+   {
+      this.accessor = accessor;
+   }
+
 }
@@ -74,6 +74,7 @@ public class FieldReadInvocation extends FieldInvocation
          }
       }
 
+      if (accessor != null) return accessor.get(getTargetObject());
       return field.get(getTargetObject());
    }
 
@@ -103,6 +104,7 @@ public class FieldReadInvocation extends FieldInvocation
       wrapper.currentInterceptor = this.currentInterceptor;
       wrapper.metadata = this.metadata;
       wrapper.instanceResolver = this.instanceResolver;
+      wrapper.accessor = this.accessor;
       return wrapper;
    }
 }
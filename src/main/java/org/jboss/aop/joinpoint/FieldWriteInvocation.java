@@ -83,6 +83,11 @@ public class FieldWriteInvocation extends FieldInvocation
          }
       }
 
+      if (accessor != null)
+      {
+         accessor.set(getTargetObject(), getValue());
+         return null;
+      }
       field.set(getTargetObject(), getValue());
       return null;
    }
@@ -113,6 +118,7 @@ public class FieldWriteInvocation extends FieldInvocation
       wrapper.currentInterceptor = this.currentInterceptor;
       wrapper.instanceResolver = this.instanceResolver;
       wrapper.metadata = this.metadata;
+      wrapper.accessor = this.accessor;
       return wrapper;
    }
 
@@ -49,6 +49,8 @@ public class MethodInvocation extends InvocationBase implements java.io.External
    protected MarshalledObject marshalledArguments;
    protected Method advisedMethod;
    protected Method unadvisedMethod;
+   // calls unadvisedMethod without reflection when the chain is exhausted, may be null
+   protected transient MethodInvoker invoker;
 
    public String toString()
    {
@@ -67,6 +69,7 @@ public class MethodInvocation extends InvocationBase implements java.io.External
    public MethodInvocation(MethodInfo info, org.jboss.aop.advice.Interceptor[] interceptors)
    {
       this(interceptors, info.getHash(), info.getAdvisedMethod(), info.getUnadvisedMethod(), info.getAdvisor());
+      this.invoker = info.getInvoker();
    }
 
    public MethodInvocation(Interceptor[] interceptors, long methodHash, Method advisedMethod, Method unadvisedMethod, Advisor advisor)
@@ -109,7 +112,12 @@ public class MethodInvocation extends InvocationBase implements java.io.External
 
       try
       {
-         return getActualMethod().invoke(getTargetObject(), arguments);
+         Method actualMethod = getActualMethod();
+         if (invoker != null && actualMethod == unadvisedMethod)
+         {
+            return invoker.invoke(getTargetObject(), arguments);
+         }
+         return actualMethod.invoke(getTargetObject(), arguments);
       }
       catch (Throwable t)
       {
@@ -249,6 +257,7 @@ public class MethodInvocation extends InvocationBase implements java.io.External
    public Invocation copy()
    {
       MethodInvocation wrapper = new MethodInvocation(interceptors, methodHash, advisedMethod, unadvisedMethod, advisor);
+      wrapper.invoker = this.invoker;
       wrapper.metadata = this.metadata;
       wrapper.currentInterceptor = this.currentInterceptor;
       wrapper.instanceResolver = this.instanceResolver;
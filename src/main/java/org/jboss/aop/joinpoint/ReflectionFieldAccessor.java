@@ -0,0 +1,82 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.joinpoint;
+
+import java.lang.reflect.Field;
+
+/**
+ * Accesses the field through reflection
+ *
+ * @version $Revision$
+ */
+public class ReflectionFieldAccessor implements FieldAccessor
+{
+   public static final FieldAccessorFactory FACTORY = new FieldAccessorFactory()
+   {
+      public FieldAccessor[] getAccessors(Class clazz, Field[] fields)
+      {
+         FieldAccessor[] accessors = new FieldAccessor[fields.length];
+         for (int i = 0; i < fields.length; i++)
+         {
+            accessors[i] = new ReflectionFieldAccessor(fields[i]);
+         }
+         return accessors;
+      }
+   };
+
+   private final Field field;
+
+   public ReflectionFieldAccessor(Field field)
+   {
+      this.field = field;
+   }
+
+   public Object get(Object target) throws Throwable
+   {
+      return field.get(target);
+   }
+
+   public void set(Object target, Object value) throws Throwable
+   {
+      field.set(target, value);
+   }
+
+   public int getInt(Object target) throws Throwable
+   {
+      return field.getInt(target);
+   }
+
+   public void setInt(Object target, int value) throws Throwable
+   {
+      field.setInt(target, value);
+   }
+
+   public long getLong(Object target) throws Throwable
+   {
+      return field.getLong(target);
+   }
+
+   public void setLong(Object target, long value) throws Throwable
+   {
+      field.setLong(target, value);
+   }
+}
@@ -73,7 +73,7 @@ public class ConstructorMetaData implements MetaDataResolver
       SimpleMetaData constructorData = (SimpleMetaData)constructorMetaData.get(key);
       if (constructorData == null)
       {
-         constructorData = new SimpleMetaData();
+         constructorData = new CopyOnWriteMetaData();
          constructorMetaData.put(key, constructorData);
       }
       constructorData.addMetaData(tag, attr, value, type);
@@ -0,0 +1,166 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.metadata;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.jboss.aop.joinpoint.Invocation;
+import org.jboss.aop.util.PayloadKey;
+
+/**
+ * Metadata of advisors, classes and their members, which is read by every invocation
+ * but rarely changed. Neither the tag map nor the attribute maps are modified once
+ * published, writers install a modified copy so that readers don't need to lock.
+ * Metadata attached to a single invocation stays a plain {@link SimpleMetaData}, since
+ * copying on every write would cost more than the lock.
+ *
+ * @version $Revision$
+ */
+public class CopyOnWriteMetaData extends SimpleMetaData
+{
+   static final long serialVersionUID = 2519626519826455394L;
+
+   /** The published tag -> (attr -> MetaDataValue), also kept in metaData */
+   private volatile HashMap snapshot = metaData;
+
+   public int size()
+   {
+      return snapshot.size();
+   }
+
+   public HashSet tags()
+   {
+      return new HashSet(snapshot.keySet());
+   }
+
+   public HashMap tag(String name)
+   {
+      HashMap map = (HashMap) snapshot.get(name);
+      if (map == null) return null;
+      return (HashMap) map.clone();
+   }
+
+   public boolean hasTag(String name)
+   {
+      return snapshot.get(name) != null;
+   }
+
+   public synchronized void addMetaData(Object tag, Object attr, Object value, PayloadKey type)
+   {
+      HashMap newMetaData = (HashMap) snapshot.clone();
+      HashMap groupData = (HashMap) newMetaData.get(tag);
+      groupData = (groupData == null) ? new HashMap() : (HashMap) groupData.clone();
+      groupData.put(attr, new MetaDataValue(type, value));
+      newMetaData.put(tag, groupData);
+      publish(newMetaData);
+   }
+
+   public Object getMetaData(Object tag, Object attr)
+   {
+      HashMap groupData = (HashMap) snapshot.get(tag);
+      if (groupData == null) return null;
+      MetaDataValue val = (MetaDataValue) groupData.get(attr);
+      if (val == null) return null;
+      try
+      {
+         return val.get();
+      }
+      catch (IOException ioex)
+      {
+         throw new RuntimeException("failed on MarshalledValue", ioex);
+      }
+      catch (ClassNotFoundException ex)
+      {
+         throw new RuntimeException("failed on MarshalledValue", ex);
+      }
+   }
+
+   public synchronized void removeMetaData(Object tag, Object attr)
+   {
+      HashMap groupData = (HashMap) snapshot.get(tag);
+      if (groupData != null && groupData.containsKey(attr))
+      {
+         HashMap newMetaData = (HashMap) snapshot.clone();
+         groupData = (HashMap) groupData.clone();
+         groupData.remove(attr);
+         newMetaData.put(tag, groupData);
+         publish(newMetaData);
+      }
+   }
+
+   public synchronized void removeGroupData(Object group)
+   {
+      if (snapshot.containsKey(group))
+      {
+         HashMap newMetaData = (HashMap) snapshot.clone();
+         newMetaData.remove(group);
+         publish(newMetaData);
+      }
+   }
+
+   public synchronized void clear()
+   {
+      publish(new HashMap());
+   }
+
+   /**
+    * merges incoming data.  Incoming data overrides existing data
+    */
+   public synchronized void mergeIn(SimpleMetaData data)
+   {
+      HashMap incoming = data.metaData;
+      if (incoming.size() == 0) return;
+      HashMap newMetaData = (HashMap) snapshot.clone();
+      Iterator it = incoming.keySet().iterator();
+      while (it.hasNext())
+      {
+         Object tag = it.next();
+         HashMap attrs = (HashMap) incoming.get(tag);
+         HashMap map = (HashMap) newMetaData.get(tag);
+         map = (map == null) ? new HashMap() : (HashMap) map.clone();
+         map.putAll(attrs);
+         newMetaData.put(tag, map);
+      }
+      publish(newMetaData);
+   }
+
+   public Object resolve(Invocation invocation, Object tag, Object attr)
+   {
+      return getMetaData(tag, attr);
+   }
+
+   public void readExternal(java.io.ObjectInput in)
+   throws IOException, ClassNotFoundException
+   {
+      super.readExternal(in);
+      snapshot = metaData;
+   }
+
+   private void publish(HashMap newMetaData)
+   {
+      metaData = newMetaData;
+      snapshot = newMetaData;
+   }
+}
@@ -90,7 +90,7 @@ public class FieldMetaData implements MetaDataResolver
       SimpleMetaData fieldData = (SimpleMetaData)fieldMetaData.get(fieldName);
       if (fieldData == null)
       {
-         fieldData = new SimpleMetaData();
+         fieldData = new CopyOnWriteMetaData();
          fieldMetaData.put(fieldName, fieldData);
       }
       fieldData.addMetaData(tag, attr, value, type);
@@ -80,7 +80,7 @@ public class MethodMetaData implements MetaDataResolver
       SimpleMetaData methodData = (SimpleMetaData)methodMetaData.get(key);
       if (methodData == null)
       {
-         methodData = new SimpleMetaData();
+         methodData = new CopyOnWriteMetaData();
          methodMetaData.put(key, methodData);
       }
       methodData.addMetaData(tag, attr, value, type);
@@ -93,8 +93,8 @@ public class SimpleClassMetaDataBinding extends ClassMetaDataBinding
       }
    }
 
-   protected SimpleMetaData defaultMetaData = new SimpleMetaData();
-   protected SimpleMetaData classMetaData = new SimpleMetaData();
+   protected SimpleMetaData defaultMetaData = new CopyOnWriteMetaData();
+   protected SimpleMetaData classMetaData = new CopyOnWriteMetaData();
    protected ArrayList queuedMethodMetaData = new ArrayList();
    protected ArrayList queuedFieldMetaData = new ArrayList();
    protected ArrayList queuedConstructorMetaData = new ArrayList();
@@ -42,7 +42,7 @@ public class SimpleMetaData implements MetaDataResolver, java.io.Externalizable
    {
       static final long serialVersionUID = -8024138149680591337L;
       public final PayloadKey type;
-      public Object value;
+      public volatile Object value;
 
       public MetaDataValue(PayloadKey type, Object value)
       {
@@ -62,14 +62,14 @@ public class ThreadMetaData implements MetaDataResolver
       return data.getMetaData(tag, attr);
    }
 
-   public synchronized void removeMetaData(Object tag, Object attr)
+   public void removeMetaData(Object tag, Object attr)
    {
       SimpleMetaData data = (SimpleMetaData)metaData.get();
       if (data == null) return;
       data.removeMetaData(tag, attr);
    }
 
-   public synchronized void removeGroupData(Object tag)
+   public void removeGroupData(Object tag)
    {
       SimpleMetaData data = (SimpleMetaData)metaData.get();
       if (data == null) return;
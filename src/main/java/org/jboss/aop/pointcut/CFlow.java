@@ -26,6 +26,7 @@ import org.jboss.aop.pointcut.ast.ASTConstructor;
 import org.jboss.aop.pointcut.ast.ASTExecution;
 import org.jboss.aop.pointcut.ast.ASTMethod;
 import org.jboss.aop.pointcut.ast.ClassExpression;
+import org.jboss.aop.pointcut.ast.IdentifierExpression;
 import org.jboss.aop.pointcut.ast.ParseException;
 import org.jboss.aop.pointcut.ast.PointcutExpressionParser;
 import org.jboss.aop.pointcut.ast.SimpleNode;
@@ -46,6 +47,7 @@ public class CFlow
    private String original;
    private SimpleNode point;
    private boolean not;
+   private CFlowTracker.Entry tracked;
 
    public CFlow(String expr, boolean not)
    {
@@ -62,6 +64,51 @@ public class CFlow
       }
       point = (SimpleNode) exc.jjtGetChild(0);
       this.not = not;
+      if (isTrackable())
+      {
+         ASTMethod method = (ASTMethod) point;
+         tracked = CFlowTracker.register(original, method.getClazz().getOriginal(), method.getMethodIdentifier());
+      }
+   }
+
+   /**
+    * Only methods of a single, explicitly named class can be counted by the
+    * <code>CFlowTracker</code> since only then we know when all the methods the
+    * expression refers to have been woven. Constructors are not tracked since the
+    * counters could only be incremented after the super() call.
+    */
+   private boolean isTrackable()
+   {
+      if (!(point instanceof ASTMethod)) return false;
+      ASTMethod method = (ASTMethod) point;
+      ClassExpression clazz = method.getClazz();
+      if (!clazz.isSimple() || clazz.getOriginal().indexOf('*') >= 0) return false;
+      IdentifierExpression identifier = method.getMethodIdentifier();
+      return !(identifier.isAnnotation() || identifier.isImplements() || identifier.isImplementing());
+   }
+
+   /**
+    * @return true if the classes referenced by this cflow have been woven with
+    * call-flow counters, so that {@link #matches()} can be used
+    */
+   public boolean isTracked()
+   {
+      return tracked != null && tracked.isActive();
+   }
+
+   public boolean isNot()
+   {
+      return not;
+   }
+
+   /**
+    * Stack free version of {@link #matches(StackTraceElement[], int)}, only valid if
+    * {@link #isTracked()} is true
+    */
+   public boolean matches()
+   {
+      boolean found = CFlowTracker.isInFlow(tracked.getId());
+      return not ? !found : found;
    }
 
    public int matches(StackTraceElement[] stack, int index)
@@ -21,6 +21,8 @@
   */
 package org.jboss.aop.pointcut;
 
+import java.util.HashMap;
+
 import org.jboss.aop.AspectManager;
 import org.jboss.aop.joinpoint.Invocation;
 import org.jboss.aop.pointcut.ast.ASTAndCFlow;
@@ -41,6 +43,14 @@ import org.jboss.aop.pointcut.ast.Node;
  */
 public class CFlowMatcher extends MatcherHelper
 {
+   private static ThreadLocal stableResults = new ThreadLocal()
+   {
+      protected Object initialValue()
+      {
+         return new StableResults();
+      }
+   };
+
    StackTraceElement[] stack;
    Invocation invocation;
 
@@ -121,9 +131,51 @@ public class CFlowMatcher extends MatcherHelper
       else
          manager = invocation.getAdvisor().getManager();
       CFlowStack cflow = manager.getCFlowStack(node.getPointcutName());
-      if (cflow != null) return new Boolean(cflow.matches(getStack()));
+      if (cflow != null)
+      {
+         if (cflow.isTracked()) return cflow.matches() ? Boolean.TRUE : Boolean.FALSE;
+         return new Boolean(cflow.matches(getStack()));
+      }
+
+      DynamicCFlow dcflow = manager.getDynamicCFlow(node.getPointcutName(), invocation.getAdvisor());
+      if (dcflow instanceof StableDynamicCFlow)
+      {
+         StableResults results = (StableResults) stableResults.get();
+         if (results.depth > 0)
+         {
+            Boolean result = (Boolean) results.results.get(dcflow);
+            if (result == null)
+            {
+               result = dcflow.shouldExecute(invocation) ? Boolean.TRUE : Boolean.FALSE;
+               results.results.put(dcflow, result);
+            }
+            return result;
+         }
+      }
+      return dcflow.shouldExecute(invocation) ? Boolean.TRUE : Boolean.FALSE;
+   }
+
+   /**
+    * Marks the start of an invocation going through a cflow interceptor. Results of
+    * {@link StableDynamicCFlow}s are kept until the outermost one has finished.
+    */
+   public static void enterInvocation()
+   {
+      ((StableResults) stableResults.get()).depth++;
+   }
+
+   public static void exitInvocation()
+   {
+      StableResults results = (StableResults) stableResults.get();
+      if (--results.depth == 0 && !results.results.isEmpty())
+      {
+         results.results.clear();
+      }
+   }
 
-      DynamicCFlow dcflow = manager.getDynamicCFlow(node.getPointcutName());
-      return new Boolean(dcflow.shouldExecute(invocation));
+   private static class StableResults
+   {
+      int depth;
+      HashMap results = new HashMap();
    }
 }
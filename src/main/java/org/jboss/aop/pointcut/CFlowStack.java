@@ -50,6 +50,38 @@ public class CFlowStack
       cflows.add(cflow);
    }
 
+   /**
+    * The call-flow counters only tell us whether we are inside a method, not in
+    * which order the methods were entered. So a stack can only be matched without
+    * walking the call stack if it consists of a single cflow, or only of negated
+    * ones, and if all of its cflows are tracked.
+    */
+   public boolean isTracked()
+   {
+      int size = cflows.size();
+      if (size == 0) return false;
+      for (int i = 0; i < size; i++)
+      {
+         org.jboss.aop.pointcut.CFlow cflow = (org.jboss.aop.pointcut.CFlow)cflows.get(i);
+         if (!cflow.isTracked()) return false;
+         if (size > 1 && !cflow.isNot()) return false;
+      }
+      return true;
+   }
+
+   /**
+    * Matches using the call-flow counters, only valid if {@link #isTracked()} is true
+    */
+   public boolean matches()
+   {
+      for (int i = 0; i < cflows.size(); i++)
+      {
+         org.jboss.aop.pointcut.CFlow cflow = (org.jboss.aop.pointcut.CFlow)cflows.get(i);
+         if (!cflow.matches()) return false;
+      }
+      return true;
+   }
+
    public boolean matches(StackTraceElement[] stack)
    {
       int stackIndex = stack.length - 1;
@@ -0,0 +1,207 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.pointcut;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jboss.aop.pointcut.ast.IdentifierExpression;
+
+/**
+ * Keeps per-thread depth counters for the methods referenced by trackable
+ * <code>CFlow</code> entries, so that cflow stacks can be evaluated without
+ * capturing and walking the call stack.
+ * <p/>
+ * Every trackable cflow expression gets a slot. Woven classes declaring a
+ * matching method call {@link #activate(String)} from their static initializer
+ * and wrap the method body in {@link #enter(int)}/{@link #exit(int)} calls.
+ * A slot is only used for matching once its class has been woven that way,
+ * until then <code>CFlow</code> falls back to the stack walk.
+ *
+ * @version $Revision$
+ */
+public class CFlowTracker
+{
+   /** Slot 0 is never assigned so that uninitialized ids are harmless */
+   private static int nextId = 1;
+   private static final HashMap entries = new HashMap();
+   private static final HashMap entriesByClass = new HashMap();
+   private static volatile Entry[] entriesById = new Entry[8];
+
+   private static ThreadLocal depths = new ThreadLocal()
+   {
+      protected Object initialValue()
+      {
+         return new int[entriesById.length];
+      }
+   };
+
+   /**
+    * A cflow method expression that is tracked through counters
+    */
+   public static class Entry
+   {
+      private final int id;
+      private final String expression;
+      private final String className;
+      private final IdentifierExpression methodIdentifier;
+      private volatile boolean active;
+
+      Entry(int id, String expression, String className, IdentifierExpression methodIdentifier)
+      {
+         this.id = id;
+         this.expression = expression;
+         this.className = className;
+         this.methodIdentifier = methodIdentifier;
+      }
+
+      public int getId()
+      {
+         return id;
+      }
+
+      public String getExpression()
+      {
+         return expression;
+      }
+
+      public String getClassName()
+      {
+         return className;
+      }
+
+      public boolean matchesMethod(String methodName)
+      {
+         return methodIdentifier.matches(methodName);
+      }
+
+      public boolean isActive()
+      {
+         return active;
+      }
+   }
+
+   /**
+    * Registers a cflow method expression, or returns the existing slot if the same
+    * expression has been registered before.
+    */
+   public static synchronized Entry register(String expression, String className, IdentifierExpression methodIdentifier)
+   {
+      Entry entry = (Entry) entries.get(expression);
+      if (entry != null) return entry;
+
+      entry = new Entry(nextId++, expression, className, methodIdentifier);
+      entries.put(expression, entry);
+      List list = (List) entriesByClass.get(className);
+      if (list == null)
+      {
+         list = new ArrayList();
+         entriesByClass.put(className, list);
+      }
+      list.add(entry);
+
+      if (entry.id >= entriesById.length)
+      {
+         Entry[] newEntries = new Entry[entriesById.length * 2];
+         System.arraycopy(entriesById, 0, newEntries, 0, entriesById.length);
+         entriesById = newEntries;
+      }
+      entriesById[entry.id] = entry;
+      return entry;
+   }
+
+   /**
+    * Returns the entries whose methods are declared by the given class, used by
+    * the instrumentor to decide what to wrap
+    */
+   public static synchronized Entry[] getEntries(String className)
+   {
+      List list = (List) entriesByClass.get(className);
+      if (list == null) return null;
+      return (Entry[]) list.toArray(new Entry[list.size()]);
+   }
+
+   /**
+    * Called from the static initializer of a woven class. From now on the counters
+    * of this expression are authoritative.
+    *
+    * @return the slot to pass into {@link #enter(int)} and {@link #exit(int)}
+    */
+   public static synchronized int activate(String expression)
+   {
+      Entry entry = (Entry) entries.get(expression);
+      if (entry == null)
+      {
+         // Class was woven offline and the cflow has not been deployed yet
+         new CFlow(expression, false);
+         entry = (Entry) entries.get(expression);
+         if (entry == null) return 0;
+      }
+      entry.active = true;
+      return entry.id;
+   }
+
+   public static void enter(int id)
+   {
+      int[] counters = (int[]) depths.get();
+      if (id >= counters.length)
+      {
+         counters = grow(id);
+      }
+      counters[id]++;
+   }
+
+   public static void exit(int id)
+   {
+      int[] counters = (int[]) depths.get();
+      if (id < counters.length && counters[id] > 0)
+      {
+         counters[id]--;
+      }
+   }
+
+   /**
+    * @return true if the current thread is executing a method tracked by the given slot
+    */
+   public static boolean isInFlow(int id)
+   {
+      int[] counters = (int[]) depths.get();
+      return id < counters.length && counters[id] > 0;
+   }
+
+   public static boolean isActive(int id)
+   {
+      Entry[] byId = entriesById;
+      return id < byId.length && byId[id] != null && byId[id].active;
+   }
+
+   private static int[] grow(int id)
+   {
+      int[] counters = (int[]) depths.get();
+      int length = Math.max(entriesById.length, id + 1);
+      int[] newCounters = new int[length];
+      System.arraycopy(counters, 0, newCounters, 0, counters.length);
+      depths.set(newCounters);
+      return newCounters;
+   }
+}
@@ -0,0 +1,308 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.pointcut;
+
+import java.lang.reflect.Method;
+
+import javassist.NotFoundException;
+
+import org.jboss.aop.Advisor;
+import org.jboss.aop.pointcut.ast.ASTBoolean;
+import org.jboss.aop.pointcut.ast.ASTComposite;
+import org.jboss.aop.pointcut.ast.ASTExecution;
+import org.jboss.aop.pointcut.ast.ASTExecutionOnly;
+import org.jboss.aop.pointcut.ast.ASTField;
+import org.jboss.aop.pointcut.ast.ASTFieldExecution;
+import org.jboss.aop.pointcut.ast.ASTGet;
+import org.jboss.aop.pointcut.ast.ASTMethod;
+import org.jboss.aop.pointcut.ast.ASTNot;
+import org.jboss.aop.pointcut.ast.ASTOr;
+import org.jboss.aop.pointcut.ast.ASTPointcut;
+import org.jboss.aop.pointcut.ast.ASTSet;
+import org.jboss.aop.pointcut.ast.ASTStart;
+import org.jboss.aop.pointcut.ast.ASTSub;
+import org.jboss.aop.pointcut.ast.IdentifierExpression;
+import org.jboss.aop.pointcut.ast.Node;
+
+/**
+ * A pointcut expression lowered into a tree of predicates for one kind of joinpoint,
+ * i.e. for one of the <code>MatcherHelper</code> subclasses used by
+ * {@link PointcutExpression}. The tree is built once per expression and kind:
+ * <ul>
+ * <li>the boolean structure (and, or, not, parentheses) is evaluated directly, with short-circuiting and without boxing</li>
+ * <li>joinpoint expressions the matcher does not handle, e.g. <code>get()</code> when matching a method execution, are folded into constants</li>
+ * <li>literal method and field names are checked before anything else</li>
+ * <li>references to other pointcuts are resolved when matching, since they can be redefined</li>
+ * </ul>
+ * The remaining leaves are evaluated by the matcher of the joinpoint kind, which is only
+ * created once the first such leaf is reached. The matchers therefore remain the reference
+ * implementation, set jboss.aop.pointcut.compile to false to use them for the whole expression.
+ *
+ * @version $Revision$
+ */
+public abstract class CompiledPointcut
+{
+   static final CompiledPointcut TRUE = new Constant(true);
+   static final CompiledPointcut FALSE = new Constant(false);
+
+   /**
+    * The joinpoint being matched
+    */
+   public abstract static class Subject
+   {
+      private Advisor advisor;
+      private String name;
+      private MatcherHelper matcher;
+
+      /**
+       * @param name the name of the method or field, or null if there is none
+       */
+      public Subject(Advisor advisor, String name)
+      {
+         this.advisor = advisor;
+         this.name = name;
+      }
+
+      /**
+       * Creates the matcher used to evaluate the leaves of the expression
+       */
+      protected abstract MatcherHelper createMatcher() throws NotFoundException;
+
+      MatcherHelper getMatcher() throws NotFoundException
+      {
+         if (matcher == null)
+         {
+            matcher = createMatcher();
+         }
+         return matcher;
+      }
+   }
+
+   public abstract boolean matches(Subject subject) throws NotFoundException;
+
+   /**
+    * Compiles an expression for the joinpoints matched by the given matcher class
+    */
+   public static CompiledPointcut compile(ASTStart start, Class matcherClass)
+   {
+      return compileNode(start, matcherClass);
+   }
+
+   private static CompiledPointcut compileNode(Node node, Class matcherClass)
+   {
+      if (node instanceof ASTStart || node instanceof ASTBoolean || node instanceof ASTComposite)
+      {
+         return compileNode(node.jjtGetChild(0), matcherClass);
+      }
+      if (node instanceof ASTNot)
+      {
+         CompiledPointcut child = compileNode(node.jjtGetChild(0), matcherClass);
+         if (child instanceof Constant)
+         {
+            return ((Constant) child).value ? FALSE : TRUE;
+         }
+         return new Not(child);
+      }
+      if (node instanceof ASTSub)
+      {
+         int count = node.jjtGetNumChildren();
+         CompiledPointcut first = compileNode(node.jjtGetChild(0), matcherClass);
+         boolean[] ors = new boolean[count - 1];
+         CompiledPointcut[] operands = new CompiledPointcut[count - 1];
+         for (int i = 1; i < count; i++)
+         {
+            Node child = node.jjtGetChild(i);
+            ors[i - 1] = child instanceof ASTOr;
+            operands[i - 1] = compileNode(child.jjtGetChild(0), matcherClass);
+         }
+         return new Sequence(first, ors, operands);
+      }
+      if (node instanceof ASTPointcut)
+      {
+         return new Reference(((ASTPointcut) node).getPointcutName());
+      }
+      if (!handles(matcherClass, node))
+      {
+         return FALSE;
+      }
+      IdentifierExpression identifier = getLiteralIdentifier(node, matcherClass);
+      if (identifier != null)
+      {
+         return new NamedLeaf(node, identifier);
+      }
+      return new Leaf(node);
+   }
+
+   /**
+    * @return false if the matcher class inherits the visit() method for the node from
+    * MatcherHelper, which never matches
+    */
+   private static boolean handles(Class matcherClass, Node node)
+   {
+      if (node instanceof ASTExecutionOnly) return true;
+      try
+      {
+         Method visit = matcherClass.getMethod("visit", new Class[] {node.getClass(), Object.class});
+         return visit.getDeclaringClass() != MatcherHelper.class;
+      }
+      catch (NoSuchMethodException e)
+      {
+         return true;
+      }
+   }
+
+   /**
+    * @return the identifier a joinpoint's name must match for the node to match, or null
+    */
+   private static IdentifierExpression getLiteralIdentifier(Node node, Class matcherClass)
+   {
+      if (MethodMatcher.class.isAssignableFrom(matcherClass) && node instanceof ASTExecution
+            && node.jjtGetChild(0) instanceof ASTMethod)
+      {
+         IdentifierExpression identifier = ((ASTMethod) node.jjtGetChild(0)).getMethodIdentifier();
+         if (identifier.isAnnotation() || identifier.isImplements() || identifier.isImplementing()) return null;
+         return identifier;
+      }
+      if (FieldMatcher.class.isAssignableFrom(matcherClass)
+            && (node instanceof ASTGet || node instanceof ASTSet || node instanceof ASTFieldExecution)
+            && node.jjtGetChild(0) instanceof ASTField)
+      {
+         IdentifierExpression identifier = ((ASTField) node.jjtGetChild(0)).getFieldIdentifier();
+         if (identifier.isAnnotation()) return null;
+         return identifier;
+      }
+      return null;
+   }
+
+   private static class Constant extends CompiledPointcut
+   {
+      boolean value;
+
+      Constant(boolean value)
+      {
+         this.value = value;
+      }
+
+      public boolean matches(Subject subject)
+      {
+         return value;
+      }
+   }
+
+   private static class Not extends CompiledPointcut
+   {
+      CompiledPointcut child;
+
+      Not(CompiledPointcut child)
+      {
+         this.child = child;
+      }
+
+      public boolean matches(Subject subject) throws NotFoundException
+      {
+         return !child.matches(subject);
+      }
+   }
+
+   /**
+    * Operands joined by AND and OR, which are evaluated from left to right
+    */
+   private static class Sequence extends CompiledPointcut
+   {
+      CompiledPointcut first;
+      boolean[] ors;
+      CompiledPointcut[] operands;
+
+      Sequence(CompiledPointcut first, boolean[] ors, CompiledPointcut[] operands)
+      {
+         this.first = first;
+         this.ors = ors;
+         this.operands = operands;
+      }
+
+      public boolean matches(Subject subject) throws NotFoundException
+      {
+         boolean value = first.matches(subject);
+         for (int i = 0; i < operands.length; i++)
+         {
+            if (ors[i])
+            {
+               if (!value) value = operands[i].matches(subject);
+            }
+            else
+            {
+               if (value) value = operands[i].matches(subject);
+            }
+         }
+         return value;
+      }
+   }
+
+   private static class Reference extends CompiledPointcut
+   {
+      String name;
+
+      Reference(String name)
+      {
+         this.name = name;
+      }
+
+      public boolean matches(Subject subject) throws NotFoundException
+      {
+         Pointcut p = subject.advisor.getManager().getPointcut(name);
+         if (p == null) throw new RuntimeException("Unable to resolve pointcut reference: " + name);
+         return subject.getMatcher().resolvePointcut(p).booleanValue();
+      }
+   }
+
+   private static class Leaf extends CompiledPointcut
+   {
+      Node node;
+
+      Leaf(Node node)
+      {
+         this.node = node;
+      }
+
+      public boolean matches(Subject subject) throws NotFoundException
+      {
+         return ((Boolean) node.jjtAccept(subject.getMatcher(), null)).booleanValue();
+      }
+   }
+
+   private static class NamedLeaf extends Leaf
+   {
+      IdentifierExpression identifier;
+
+      NamedLeaf(Node node, IdentifierExpression identifier)
+      {
+         super(node);
+         this.identifier = identifier;
+      }
+
+      public boolean matches(Subject subject) throws NotFoundException
+      {
+         if (!identifier.matches(subject.name)) return false;
+         return super.matches(subject);
+      }
+   }
+}
@@ -22,6 +22,7 @@
 package org.jboss.aop.pointcut;
 
 import java.lang.reflect.Method;
+import java.util.Map;
 
 import org.jboss.aop.Advisor;
 import org.jboss.aop.AspectManager;
@@ -52,8 +53,30 @@ public abstract class MatcherStrategy
 
    public boolean subtypeOf(Class clazz, ClassExpression instanceOf, Advisor advisor)
    {
-      
       if (clazz == null) return false;
+      if (advisor != null && instanceOf.isInstanceOfAnnotated() && advisor.getInterfaceIntroductions().size() > 0)
+      {
+         // A missing annotation also rules out the introductions, so walk the hierarchy as is
+         return matchesHierarchy(clazz, instanceOf, advisor);
+      }
+
+      Map matches = TypeMatchCache.getSubtypeCache().getMatches(clazz);
+      Boolean match = (Boolean) matches.get(instanceOf);
+      if (match == null)
+      {
+         int failures = TypeMatchCache.getLookupFailures();
+         match = matchesHierarchy(clazz, instanceOf, null) ? Boolean.TRUE : Boolean.FALSE;
+         if (failures == TypeMatchCache.getLookupFailures()) matches.put(instanceOf, match);
+      }
+      if (match.booleanValue()) return true;
+      if (advisor == null || clazz.isInterface()) return false;
+
+      // The introductions of the advisor are the same for every class in the hierarchy
+      return checkIntroductions(clazz, instanceOf, advisor);
+   }
+
+   private boolean matchesHierarchy(Class clazz, ClassExpression instanceOf, Advisor advisor)
+   {
       if (instanceOf.isInstanceOfAnnotated())
       {
          String sub = instanceOf.getInstanceOfAnnotation().substring(1);
@@ -67,6 +90,7 @@ public abstract class MatcherStrategy
          }
          catch (ClassNotFoundException e)
          {
+            TypeMatchCache.lookupFailed();
             if (AspectManager.verbose)
             {
                System.out.println("[warn] The annotation @" + sub + " referenced in one of your pointcut expressions can not be found");
@@ -26,6 +26,8 @@ import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
+
 import org.jboss.aop.Advisor;
 import org.jboss.aop.AspectManager;
 import org.jboss.aop.pointcut.ast.ASTStart;
@@ -38,6 +40,8 @@ import javassist.NotFoundException;
 import javassist.expr.MethodCall;
 import javassist.expr.NewExpr;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+
 /**
  * Comment
  *
@@ -51,6 +55,9 @@ public class PointcutExpression implements Pointcut
    protected ASTStart ast;
 
    protected PointcutStats stats;
+   protected PointcutFilter filter;
+   /** matcher class -> CompiledPointcut */
+   protected Map compiled = new ConcurrentReaderHashMap();
 
    public PointcutExpression(String name, String expr) throws ParseException
    {
@@ -75,6 +82,18 @@ public class PointcutExpression implements Pointcut
       return stats;
    }
 
+   /**
+    * @return the summary used to prune the advisors and methods matched against this pointcut
+    */
+   public PointcutFilter getFilter()
+   {
+      if (filter == null)
+      {
+         filter = new PointcutFilter(ast);
+      }
+      return filter;
+   }
+
    public String getName()
    {
       return name;
@@ -85,28 +104,77 @@ public class PointcutExpression implements Pointcut
       return expr;
    }
 
-   public boolean softMatch(Advisor advisor)
+   /**
+    * Evaluates the compiled form of the expression for the kind of joinpoint handled by
+    * the matcher class, or the matcher itself if compilation is switched off
+    */
+   protected boolean matches(Class matcherClass, CompiledPointcut.Subject subject) throws NotFoundException
+   {
+      if (!AspectManager.compilePointcuts)
+      {
+         return subject.getMatcher().matches();
+      }
+      CompiledPointcut pointcut = (CompiledPointcut) compiled.get(matcherClass);
+      if (pointcut == null)
+      {
+         pointcut = CompiledPointcut.compile(ast, matcherClass);
+         compiled.put(matcherClass, pointcut);
+      }
+      return pointcut.matches(subject);
+   }
+
+   /**
+    * For joinpoints whose matchers never throw NotFoundException
+    */
+   protected boolean matchesReflected(Class matcherClass, CompiledPointcut.Subject subject)
+   {
+      try
+      {
+         return matches(matcherClass, subject);
+      }
+      catch (NotFoundException e)
+      {
+         throw new RuntimeException(e);
+      }
+   }
+
+   public boolean softMatch(final Advisor advisor)
    {
-      SoftClassMatcher matcher = new SoftClassMatcher(advisor, advisor.getName(), ast);
-      return matcher.matches();
+      return matchesReflected(SoftClassMatcher.class, new CompiledPointcut.Subject(advisor, null)
+      {
+         protected MatcherHelper createMatcher()
+         {
+            return new SoftClassMatcher(advisor, advisor.getName(), ast);
+         }
+      });
    }
 
-   public boolean matchesCall(Advisor callingAdvisor, MethodCall methodCall) throws NotFoundException
+   public boolean matchesCall(final Advisor callingAdvisor, final MethodCall methodCall) throws NotFoundException
    {
       if (stats == null || stats.isWithin() || stats.isWithincode() || stats.isCall())
       {
-         MethodCallMatcher matcher = new MethodCallMatcher(callingAdvisor, methodCall, ast);
-         return matcher.matches();
+         return matches(MethodCallMatcher.class, new CompiledPointcut.Subject(callingAdvisor, null)
+         {
+            protected MatcherHelper createMatcher() throws NotFoundException
+            {
+               return new MethodCallMatcher(callingAdvisor, methodCall, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesCall(Advisor callingAdvisor, NewExpr methodCall) throws NotFoundException
+   public boolean matchesCall(final Advisor callingAdvisor, final NewExpr methodCall) throws NotFoundException
    {
       if (stats == null || stats.isWithin() || stats.isWithincode() || stats.isCall())
       {
-         NewExprMatcher matcher = new NewExprMatcher(callingAdvisor, methodCall, ast);
-         return matcher.matches();
+         return matches(NewExprMatcher.class, new CompiledPointcut.Subject(callingAdvisor, null)
+         {
+            protected MatcherHelper createMatcher() throws NotFoundException
+            {
+               return new NewExprMatcher(callingAdvisor, methodCall, ast);
+            }
+         });
       }
       return false;
    }
@@ -116,64 +184,94 @@ public class PointcutExpression implements Pointcut
       return matchesExecution(advisor, m, false);
    }
 
-   public boolean matchesExecution(Advisor advisor, Method m, boolean matchOnAdvisor)
+   public boolean matchesExecution(final Advisor advisor, final Method m, final boolean matchOnAdvisor)
    {
       if (stats == null || stats.isExecution())
       {
-         ExecutionMethodMatcher matcher = new ExecutionMethodMatcher(advisor, m, ast, matchOnAdvisor);
-         return matcher.matches();
+         return matchesReflected(ExecutionMethodMatcher.class, new CompiledPointcut.Subject(advisor, m.getName())
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new ExecutionMethodMatcher(advisor, m, ast, matchOnAdvisor);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesExecution(Advisor advisor, Constructor c)
+   public boolean matchesExecution(final Advisor advisor, final Constructor c)
    {
       if (stats == null || stats.isExecution())
       {
-         ExecutionConstructorMatcher matcher = new ExecutionConstructorMatcher(advisor, c, ast);
-         return matcher.matches();
+         return matchesReflected(ExecutionConstructorMatcher.class, new CompiledPointcut.Subject(advisor, null)
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new ExecutionConstructorMatcher(advisor, c, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesConstruction(Advisor advisor, Constructor c)
+   public boolean matchesConstruction(final Advisor advisor, final Constructor c)
    {
       if (stats == null || stats.isConstruction())
       {
-         ConstructionMatcher matcher = new ConstructionMatcher(advisor, c, ast);
-         return matcher.matches();
+         return matchesReflected(ConstructionMatcher.class, new CompiledPointcut.Subject(advisor, null)
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new ConstructionMatcher(advisor, c, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesGet(Advisor advisor, Field f)
+   public boolean matchesGet(final Advisor advisor, final Field f)
    {
       if (stats == null || stats.isGet())
       {
-         FieldMatcher matcher = new FieldGetMatcher(advisor, f, ast);
-         return matcher.matches();
+         return matchesReflected(FieldGetMatcher.class, new CompiledPointcut.Subject(advisor, f.getName())
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new FieldGetMatcher(advisor, f, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesSet(Advisor advisor, Field f)
+   public boolean matchesSet(final Advisor advisor, final Field f)
    {
       if (stats == null || stats.isSet())
       {
-         FieldMatcher matcher = new FieldSetMatcher(advisor, f, ast);
-         return matcher.matches();
+         return matchesReflected(FieldSetMatcher.class, new CompiledPointcut.Subject(advisor, f.getName())
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new FieldSetMatcher(advisor, f, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesExecution(Advisor advisor, CtMethod m) throws NotFoundException
+   public boolean matchesExecution(final Advisor advisor, final CtMethod m) throws NotFoundException
    {
       try
       {
          if (stats == null || stats.isExecution())
          {
-            ExecutionMethodMatcher matcher = new ExecutionMethodMatcher(advisor, m, ast);
-            return matcher.matches();
+            return matches(ExecutionMethodMatcher.class, new CompiledPointcut.Subject(advisor, m.getName())
+            {
+               protected MatcherHelper createMatcher() throws NotFoundException
+               {
+                  return new ExecutionMethodMatcher(advisor, m, ast);
+               }
+            });
          }
          return false;
       }
@@ -183,63 +281,93 @@ public class PointcutExpression implements Pointcut
       }
    }
 
-   public boolean matchesExecution(Advisor advisor, CtConstructor c) throws NotFoundException
+   public boolean matchesExecution(final Advisor advisor, final CtConstructor c) throws NotFoundException
    {
       if (stats == null || stats.isExecution())
       {
-         ExecutionConstructorMatcher matcher = new ExecutionConstructorMatcher(advisor, c, ast);
-         return matcher.matches();
+         return matches(ExecutionConstructorMatcher.class, new CompiledPointcut.Subject(advisor, null)
+         {
+            protected MatcherHelper createMatcher() throws NotFoundException
+            {
+               return new ExecutionConstructorMatcher(advisor, c, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesConstruction(Advisor advisor, CtConstructor c) throws NotFoundException
+   public boolean matchesConstruction(final Advisor advisor, final CtConstructor c) throws NotFoundException
    {
       if (stats == null || stats.isConstruction())
       {
-         ConstructionMatcher matcher = new ConstructionMatcher(advisor, c, ast);
-         return matcher.matches();
+         return matches(ConstructionMatcher.class, new CompiledPointcut.Subject(advisor, null)
+         {
+            protected MatcherHelper createMatcher() throws NotFoundException
+            {
+               return new ConstructionMatcher(advisor, c, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesGet(Advisor advisor, CtField f) throws NotFoundException
+   public boolean matchesGet(final Advisor advisor, final CtField f) throws NotFoundException
    {
       if (stats == null || stats.isGet())
       {
-         FieldMatcher matcher = new FieldGetMatcher(advisor, f, ast);
-         return matcher.matches();
+         return matches(FieldGetMatcher.class, new CompiledPointcut.Subject(advisor, f.getName())
+         {
+            protected MatcherHelper createMatcher() throws NotFoundException
+            {
+               return new FieldGetMatcher(advisor, f, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesSet(Advisor advisor, CtField f) throws NotFoundException
+   public boolean matchesSet(final Advisor advisor, final CtField f) throws NotFoundException
    {
       if (stats == null || stats.isSet())
       {
-         FieldMatcher matcher = new FieldSetMatcher(advisor, f, ast);
-         return matcher.matches();
+         return matches(FieldSetMatcher.class, new CompiledPointcut.Subject(advisor, f.getName())
+         {
+            protected MatcherHelper createMatcher() throws NotFoundException
+            {
+               return new FieldSetMatcher(advisor, f, ast);
+            }
+         });
       }
       return false;
    }
 
-   public boolean matchesCall(Advisor advisor, AccessibleObject within, Class calledClass, Method calledMethod)
+   public boolean matchesCall(final Advisor advisor, final AccessibleObject within, final Class calledClass, final Method calledMethod)
    {
       if (stats == null || stats.isWithin() || stats.isWithincode() || stats.isCall())
       {
-         CallMatcher matcher = new CallMatcher(advisor, within, calledClass, calledMethod, ast);
-         return matcher.matches();
+         return matchesReflected(CallMatcher.class, new CompiledPointcut.Subject(advisor, null)
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new CallMatcher(advisor, within, calledClass, calledMethod, ast);
+            }
+         });
       }
       return false;
    }
 
 
-   public boolean matchesCall(Advisor advisor, AccessibleObject within, Class calledClass, Constructor calledCon)
+   public boolean matchesCall(final Advisor advisor, final AccessibleObject within, final Class calledClass, final Constructor calledCon)
    {
       if (stats == null || stats.isWithin() || stats.isWithincode() || stats.isCall())
       {
-         ConstructorCallMatcher matcher = new ConstructorCallMatcher(advisor, within, calledClass, calledCon, ast);
-         return matcher.matches();
+         return matchesReflected(ConstructorCallMatcher.class, new CompiledPointcut.Subject(advisor, null)
+         {
+            protected MatcherHelper createMatcher()
+            {
+               return new ConstructorCallMatcher(advisor, within, calledClass, calledCon, ast);
+            }
+         });
       }
       return false;
    }
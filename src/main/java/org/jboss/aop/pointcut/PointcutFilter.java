@@ -0,0 +1,229 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.pointcut;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.aop.pointcut.ast.ASTAll;
+import org.jboss.aop.pointcut.ast.ASTAnd;
+import org.jboss.aop.pointcut.ast.ASTBoolean;
+import org.jboss.aop.pointcut.ast.ASTCall;
+import org.jboss.aop.pointcut.ast.ASTComposite;
+import org.jboss.aop.pointcut.ast.ASTConstruction;
+import org.jboss.aop.pointcut.ast.ASTConstructor;
+import org.jboss.aop.pointcut.ast.ASTExecution;
+import org.jboss.aop.pointcut.ast.ASTField;
+import org.jboss.aop.pointcut.ast.ASTFieldExecution;
+import org.jboss.aop.pointcut.ast.ASTGet;
+import org.jboss.aop.pointcut.ast.ASTMethod;
+import org.jboss.aop.pointcut.ast.ASTOr;
+import org.jboss.aop.pointcut.ast.ASTSet;
+import org.jboss.aop.pointcut.ast.ASTStart;
+import org.jboss.aop.pointcut.ast.ASTSub;
+import org.jboss.aop.pointcut.ast.ASTWithin;
+import org.jboss.aop.pointcut.ast.ASTWithincode;
+import org.jboss.aop.pointcut.ast.ClassExpression;
+import org.jboss.aop.pointcut.ast.IdentifierExpression;
+import org.jboss.aop.pointcut.ast.Node;
+
+/**
+ * Conservative summary of a pointcut expression used to prune the advisors and
+ * methods that have to be matched against it. It contains the literal class name
+ * prefixes one of which an advisor's class name must start with to pass
+ * {@link Pointcut#softMatch(org.jboss.aop.Advisor)}, and the exact names one of
+ * which a method must have to pass <code>matchesExecution()</code>.
+ * <p/>
+ * A null set means the expression can not be narrowed down, e.g. because it uses
+ * annotations, $instanceof{}, typedefs, has() or references other pointcuts
+ * (which may be redefined later).
+ *
+ * @version $Revision$
+ */
+public class PointcutFilter
+{
+   /** Characters that end the literal part of a class expression */
+   private static final String WILDCARDS = "*+?(){}|^\\";
+
+   private List classPrefixes;
+   private Set methodNames;
+
+   public PointcutFilter(ASTStart start)
+   {
+      classPrefixes = getClassPrefixes(start);
+      methodNames = getMethodNames(start);
+   }
+
+   /**
+    * @return the class name prefixes, or null if any class may match
+    */
+   public List getClassPrefixes()
+   {
+      return classPrefixes;
+   }
+
+   /**
+    * @return the exact method names, or null if any method may match
+    */
+   public Set getMethodNames()
+   {
+      return methodNames;
+   }
+
+   public boolean couldMatchClass(String classname)
+   {
+      if (classPrefixes == null) return true;
+      for (int i = 0; i < classPrefixes.size(); i++)
+      {
+         if (classname.startsWith((String) classPrefixes.get(i))) return true;
+      }
+      return false;
+   }
+
+   public boolean couldMatchMethod(String methodName)
+   {
+      return methodNames == null || methodNames.contains(methodName);
+   }
+
+   private static List getClassPrefixes(Node node)
+   {
+      if (node instanceof ASTStart || node instanceof ASTBoolean || node instanceof ASTComposite
+            || node instanceof ASTExecution || node instanceof ASTConstruction || node instanceof ASTGet
+            || node instanceof ASTSet || node instanceof ASTFieldExecution || node instanceof ASTWithincode)
+      {
+         return getClassPrefixes(node.jjtGetChild(0));
+      }
+      if (node instanceof ASTSub)
+      {
+         List prefixes = getClassPrefixes(node.jjtGetChild(0));
+         for (int i = 1; i < node.jjtGetNumChildren(); i++)
+         {
+            Node child = node.jjtGetChild(i);
+            List other = getClassPrefixes(child.jjtGetChild(0));
+            if (child instanceof ASTAnd)
+            {
+               if (prefixes == null) prefixes = other;
+            }
+            else if (child instanceof ASTOr)
+            {
+               if (prefixes == null || other == null)
+               {
+                  prefixes = null;
+               }
+               else
+               {
+                  ArrayList union = new ArrayList(prefixes);
+                  union.addAll(other);
+                  prefixes = union;
+               }
+            }
+         }
+         return prefixes;
+      }
+      if (node instanceof ASTCall) return getClassPrefixes(((ASTCall) node).getBehavior());
+      if (node instanceof ASTMethod) return getClassPrefix(((ASTMethod) node).getClazz());
+      if (node instanceof ASTConstructor) return getClassPrefix(((ASTConstructor) node).getClazz());
+      if (node instanceof ASTField) return getClassPrefix(((ASTField) node).getClazz());
+      if (node instanceof ASTAll) return getClassPrefix(((ASTAll) node).getClazz());
+      if (node instanceof ASTWithin) return getClassPrefix(((ASTWithin) node).getClazz());
+      return null;
+   }
+
+   private static List getClassPrefix(ClassExpression expr)
+   {
+      if (!expr.isSimple()) return null;
+      String original = expr.getOriginal();
+      int end = original.length();
+      for (int i = 0; i < WILDCARDS.length(); i++)
+      {
+         int index = original.indexOf(WILDCARDS.charAt(i));
+         if (index >= 0 && index < end) end = index;
+      }
+      if (end == 0) return null;
+      ArrayList list = new ArrayList(1);
+      list.add(original.substring(0, end));
+      return list;
+   }
+
+   private static Set getMethodNames(Node node)
+   {
+      if (node instanceof ASTStart || node instanceof ASTBoolean || node instanceof ASTComposite
+            || node instanceof ASTExecution)
+      {
+         return getMethodNames(node.jjtGetChild(0));
+      }
+      if (node instanceof ASTSub)
+      {
+         Set names = getMethodNames(node.jjtGetChild(0));
+         for (int i = 1; i < node.jjtGetNumChildren(); i++)
+         {
+            Node child = node.jjtGetChild(i);
+            Set other = getMethodNames(child.jjtGetChild(0));
+            if (child instanceof ASTAnd)
+            {
+               if (names == null) names = other;
+            }
+            else if (child instanceof ASTOr)
+            {
+               if (names == null || other == null)
+               {
+                  names = null;
+               }
+               else
+               {
+                  HashSet union = new HashSet(names);
+                  union.addAll(other);
+                  names = union;
+               }
+            }
+         }
+         return names;
+      }
+      if (node instanceof ASTMethod)
+      {
+         IdentifierExpression identifier = ((ASTMethod) node).getMethodIdentifier();
+         if (identifier.isAnnotation() || identifier.isImplements() || identifier.isImplementing()) return null;
+         String name = identifier.getOriginal();
+         if (!isLiteral(name)) return null;
+         HashSet set = new HashSet(1);
+         set.add(name);
+         return set;
+      }
+      return null;
+   }
+
+   private static boolean isLiteral(String name)
+   {
+      for (int i = 0; i < name.length(); i++)
+      {
+         if (!Character.isJavaIdentifierPart(name.charAt(i)) || name.charAt(i) == '$') return false;
+      }
+      return name.length() > 0;
+   }
+
+   public String toString()
+   {
+      return "PointcutFilter[classPrefixes=" + classPrefixes + "; methodNames=" + methodNames + "]";
+   }
+}
@@ -0,0 +1,191 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.pointcut;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javassist.CtClass;
+
+import org.jboss.aop.Advisor;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+
+/**
+ * Remembers the outcome of <code>$instanceof{}</code> and <code>$typedef{}</code> matches
+ * per class and expression, so that the class hierarchy or the typedef does not have to be
+ * walked again each time the same class is checked against the same expression.
+ * <p/>
+ * Classes are held weakly. All results are discarded by {@link #invalidate()} when
+ * introductions, typedefs or metadata are changed. The <code>CtClass</code> results are
+ * stamped with a weave generation, which {@link #invalidateCtClass(CtClass)} advances when
+ * the instrumentor modifies a hierarchy, and are discarded on the next lookup.
+ * Results that depend on a class that could not be loaded are not cached, since the
+ * class may become available later.
+ *
+ * @version $Revision$
+ */
+public class TypeMatchCache
+{
+   private static int version;
+   private static int ctClassVersion;
+
+   /** The number of failed class lookups made by the current thread */
+   private static ThreadLocal lookupFailures = new ThreadLocal()
+   {
+      protected Object initialValue()
+      {
+         return new int[1];
+      }
+   };
+
+   private static TypeMatchCache subtypes = new TypeMatchCache();
+   private static TypeMatchCache typedefs = new TypeMatchCache();
+   /** Advisor -> TypeMatchCache */
+   private static Map advisorTypedefs = new WeakHashMap();
+
+   /** Class -> ConcurrentReaderHashMap(ClassExpression -> Boolean) */
+   private Map classes = new WeakHashMap();
+   /** CtClass -> ConcurrentReaderHashMap(ClassExpression -> Boolean) */
+   private Map ctClasses = new WeakHashMap();
+   private int classesVersion;
+   private int ctClassesVersion;
+
+   private TypeMatchCache()
+   {
+      classesVersion = version;
+      ctClassesVersion = ctClassVersion;
+   }
+
+   /**
+    * Discards all cached results
+    */
+   public static synchronized void invalidate()
+   {
+      version++;
+      ctClassVersion++;
+   }
+
+   /**
+    * Discards the cached <code>CtClass</code> results once a hierarchy has been modified.
+    * Finding the cached subtypes of the modified class would mean walking every cached
+    * hierarchy, so the weave generation is advanced instead and checked on lookup.
+    */
+   public static synchronized void invalidateCtClass(CtClass modified)
+   {
+      ctClassVersion++;
+   }
+
+   /**
+    * Notes that a class needed for a match could not be loaded
+    */
+   static void lookupFailed()
+   {
+      ((int[]) lookupFailures.get())[0]++;
+   }
+
+   /**
+    * @return the number of failed class lookups made by the current thread. A result
+    *         should only be cached if this has not changed while computing it.
+    */
+   static int getLookupFailures()
+   {
+      return ((int[]) lookupFailures.get())[0];
+   }
+
+   /**
+    * @return the cache for hierarchy matches, which do not depend on the advisor
+    */
+   static TypeMatchCache getSubtypeCache()
+   {
+      return subtypes;
+   }
+
+   /**
+    * @return the cache for typedef matches made on behalf of the advisor
+    */
+   static TypeMatchCache getTypedefCache(Advisor advisor)
+   {
+      if (advisor == null) return typedefs;
+      synchronized (advisorTypedefs)
+      {
+         TypeMatchCache cache = (TypeMatchCache) advisorTypedefs.get(advisor);
+         if (cache == null)
+         {
+            cache = new TypeMatchCache();
+            advisorTypedefs.put(advisor, cache);
+         }
+         return cache;
+      }
+   }
+
+   /**
+    * @return the results for the class, mapping <code>ClassExpression</code>s to <code>Boolean</code>s.
+    *         Obtain it before computing a result so that results computed across an
+    *         invalidation are not kept.
+    */
+   Map getMatches(Class clazz)
+   {
+      synchronized (this)
+      {
+         synchronized (TypeMatchCache.class)
+         {
+            if (classesVersion != version)
+            {
+               classes = new WeakHashMap();
+               classesVersion = version;
+            }
+         }
+         return getMatches(classes, clazz);
+      }
+   }
+
+   /**
+    * @see #getMatches(Class)
+    */
+   Map getMatches(CtClass clazz)
+   {
+      synchronized (this)
+      {
+         synchronized (TypeMatchCache.class)
+         {
+            if (ctClassesVersion != ctClassVersion)
+            {
+               ctClasses = new WeakHashMap();
+               ctClassesVersion = ctClassVersion;
+            }
+         }
+         return getMatches(ctClasses, clazz);
+      }
+   }
+
+   private static Map getMatches(Map map, Object clazz)
+   {
+      Map matches = (Map) map.get(clazz);
+      if (matches == null)
+      {
+         matches = new ConcurrentReaderHashMap();
+         map.put(clazz, matches);
+      }
+      return matches;
+   }
+}
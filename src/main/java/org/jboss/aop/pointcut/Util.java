@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -330,10 +331,33 @@ public class Util
    }
    
    public static boolean subtypeOf(CtClass clazz, ClassExpression instanceOf, Advisor advisor)
+   {
+      if (clazz == null) return false;
+      if (advisor != null && instanceOf.isInstanceOfAnnotated() && advisor.getInterfaceIntroductions().size() > 0)
+      {
+         // Primitives do not get the introductions either, so walk the hierarchy as is
+         return matchesHierarchy(clazz, instanceOf, advisor);
+      }
+
+      Map matches = TypeMatchCache.getSubtypeCache().getMatches(clazz);
+      Boolean match = (Boolean) matches.get(instanceOf);
+      if (match == null)
+      {
+         int failures = TypeMatchCache.getLookupFailures();
+         match = matchesHierarchy(clazz, instanceOf, null) ? Boolean.TRUE : Boolean.FALSE;
+         if (failures == TypeMatchCache.getLookupFailures()) matches.put(instanceOf, match);
+      }
+      if (match.booleanValue()) return true;
+      if (advisor == null || clazz.isInterface()) return false;
+
+      // The introductions of the advisor are the same for every class in the hierarchy
+      return checkIntroductions(clazz, instanceOf, advisor);
+   }
+
+   private static boolean matchesHierarchy(CtClass clazz, ClassExpression instanceOf, Advisor advisor)
    {
       try
       {
-	      if (clazz == null) return false;
 	      if (instanceOf.isInstanceOfAnnotated())
 	      {
             if (clazz.isPrimitive()) return false;
@@ -360,6 +384,7 @@ public class Util
       } 
       catch (Exception e)
       {
+         TypeMatchCache.lookupFailed();
          throw new RuntimeException(e);
       }
    }
@@ -408,6 +433,7 @@ public class Util
       }
       catch (ClassNotFoundException e)
       {
+         TypeMatchCache.lookupFailed();
          throw new RuntimeException(e);
       }
       
@@ -553,6 +579,19 @@ public class Util
    }
 
    public static boolean matchesTypedef(CtClass clazz, ClassExpression classExpr, Advisor advisor)
+   {
+      Map matches = TypeMatchCache.getTypedefCache(advisor).getMatches(clazz);
+      Boolean match = (Boolean) matches.get(classExpr);
+      if (match == null)
+      {
+         int failures = TypeMatchCache.getLookupFailures();
+         match = matchesTypedefUncached(clazz, classExpr, advisor) ? Boolean.TRUE : Boolean.FALSE;
+         if (failures == TypeMatchCache.getLookupFailures()) matches.put(classExpr, match);
+      }
+      return match.booleanValue();
+   }
+
+   private static boolean matchesTypedefUncached(CtClass clazz, ClassExpression classExpr, Advisor advisor)
    {
       String original = classExpr.getOriginal();
       String typedefName = original.substring("$typedef{".length(), original.lastIndexOf("}"));
@@ -563,6 +602,19 @@ public class Util
    }
 
    public static boolean matchesTypedef(Class clazz, ClassExpression classExpr, Advisor advisor)
+   {
+      Map matches = TypeMatchCache.getTypedefCache(advisor).getMatches(clazz);
+      Boolean match = (Boolean) matches.get(classExpr);
+      if (match == null)
+      {
+         int failures = TypeMatchCache.getLookupFailures();
+         match = matchesTypedefUncached(clazz, classExpr, advisor) ? Boolean.TRUE : Boolean.FALSE;
+         if (failures == TypeMatchCache.getLookupFailures()) matches.put(classExpr, match);
+      }
+      return match.booleanValue();
+   }
+
+   private static boolean matchesTypedefUncached(Class clazz, ClassExpression classExpr, Advisor advisor)
    {
       String original = classExpr.getOriginal();
       String typedefName = original.substring("$typedef{".length(), original.lastIndexOf("}"));
@@ -34,6 +34,7 @@ public class ClassExpression
 {
    private String original;
    private Pattern classPattern;
+   private WildcardPattern simplePattern;
    private boolean isAnnotation = false;
    private boolean isInstanceOf = false;
    private boolean isTypedef = false;
@@ -62,7 +63,8 @@ public class ClassExpression
             expr = expr.substring(9, expr.lastIndexOf("}"));
          }
          
-         if (!isAnnotation)
+         simplePattern = WildcardPattern.compile(expr, ".[]$");
+         if (simplePattern == null)
          {
 	         expr = expr.replaceAll("\\.", "\\\\.");
 	         expr = expr.replaceAll("\\*", ".*");
@@ -84,6 +86,7 @@ public class ClassExpression
    public boolean matches(String classname)
    {
       if (isAnnotation) return false;
+      if (simplePattern != null) return simplePattern.matches(classname);
       Matcher m = classPattern.matcher(classname);
       return m.matches();
    }
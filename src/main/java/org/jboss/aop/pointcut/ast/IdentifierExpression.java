@@ -35,6 +35,7 @@ public class IdentifierExpression
 {
    private String original;
    private Pattern namePattern;
+   private WildcardPattern simplePattern;
    private boolean isAnnotation;
    
    private boolean isImplements;
@@ -62,14 +63,19 @@ public class IdentifierExpression
       }
       else
       {
-         expr = expr.replaceAll("\\*", ".*");
-         namePattern = Pattern.compile(expr);
+         simplePattern = WildcardPattern.compile(expr, "");
+         if (simplePattern == null)
+         {
+            expr = expr.replaceAll("\\*", ".*");
+            namePattern = Pattern.compile(expr);
+         }
       }
    }
 
    public boolean matches(String name)
    {
       if (isAnnotation) return false;
+      if (simplePattern != null) return simplePattern.matches(name);
       Matcher m = namePattern.matcher(name);
       return m.matches();
    }
@@ -0,0 +1,103 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.pointcut.ast;
+
+/**
+ * Matches names against patterns whose only wildcard is <code>*</code>, which covers
+ * exact names, prefixes, suffixes and the like without the cost of a regular expression.
+ * Matching does not allocate.
+ *
+ * @version $Revision$
+ */
+class WildcardPattern
+{
+   private String prefix;
+   private String suffix;
+   private String[] middle;
+   private boolean wildcard;
+   private int minLength;
+
+   private WildcardPattern(String pattern)
+   {
+      int first = pattern.indexOf('*');
+      if (first < 0)
+      {
+         prefix = pattern;
+         minLength = pattern.length();
+         return;
+      }
+      wildcard = true;
+      int last = pattern.lastIndexOf('*');
+      prefix = pattern.substring(0, first);
+      suffix = pattern.substring(last + 1);
+      minLength = prefix.length() + suffix.length();
+
+      int count = 0;
+      for (int i = first + 1; i <= last; i++)
+      {
+         if (pattern.charAt(i) == '*') count++;
+      }
+      middle = new String[count];
+      int start = first + 1;
+      for (int i = 0; i < count; i++)
+      {
+         int end = pattern.indexOf('*', start);
+         middle[i] = pattern.substring(start, end);
+         minLength += middle[i].length();
+         start = end + 1;
+      }
+   }
+
+   /**
+    * @param pattern the pattern
+    * @param literals the characters other than letters, digits and underscores that stand for themselves
+    * @return the pattern, or null if it contains characters with a special meaning in a regular expression
+    */
+   static WildcardPattern compile(String pattern, String literals)
+   {
+      for (int i = 0; i < pattern.length(); i++)
+      {
+         char c = pattern.charAt(i);
+         if (c == '*' || literals.indexOf(c) >= 0) continue;
+         if (c == '_' || Character.isLetterOrDigit(c)) continue;
+         return null;
+      }
+      return new WildcardPattern(pattern);
+   }
+
+   boolean matches(String name)
+   {
+      if (!wildcard) return prefix.equals(name);
+      if (name.length() < minLength) return false;
+      if (!name.startsWith(prefix) || !name.endsWith(suffix)) return false;
+
+      int pos = prefix.length();
+      int end = name.length() - suffix.length();
+      for (int i = 0; i < middle.length; i++)
+      {
+         int index = name.indexOf(middle[i], pos);
+         if (index < 0 || index + middle[i].length() > end) return false;
+         pos = index + middle[i].length();
+      }
+      return true;
+   }
+}
@@ -21,7 +21,7 @@
   */
 package org.jboss.aop.proxy;
 
-import java.lang.ref.WeakReference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -44,6 +44,7 @@ import javassist.CtMethod;
 import javassist.CtNewMethod;
 import javassist.Modifier;
 import javassist.SerialVersionUID;
+import EDU.oswego.cs.dl.util.concurrent.Callable;
 
 
 /**
@@ -54,8 +55,10 @@ public class ClassProxyFactory
 {
    private static Object maplock = new Object();
    private static WeakValueHashMap classnameMap = new WeakValueHashMap();
-   private static WeakHashMap proxyCache = new WeakHashMap();
+   private static ProxyClassCache proxyCache = new ProxyClassCache(true);
    private static WeakHashMap methodMapCache = new WeakHashMap();
+   /** Class -> SoftReference(method map), the maps reference the methods of their key */
+   private static WeakHashMap methodMapsByClass = new WeakHashMap();
 
    public static ClassProxy newInstance(Class clazz) throws Exception
    {
@@ -67,30 +70,32 @@ public class ClassProxyFactory
       return newInstance(clazz, mixins, new ClassInstanceAdvisor());
    }
 
-   private static Class getProxyClass(Class clazz, ProxyMixin[] mixins)
+   private static Class getProxyClass(Class clazz, final ProxyMixin[] mixins)
    throws Exception
    {
       // Don't make a proxy of a proxy !
       if (ClassProxy.class.isAssignableFrom(clazz)) clazz = clazz.getSuperclass();
 
-      Class proxyClass = null;
-      synchronized (maplock)
+      final Class proxiedClass = clazz;
+      return proxyCache.getProxyClass(proxiedClass, proxiedClass, new Callable()
       {
-         WeakReference ref = (WeakReference) proxyCache.get(clazz);
-         if (ref != null)
-         {
-            proxyClass = (Class)ref.get();
-         }
-         if (proxyClass == null)
+         public Object call() throws Exception
          {
-            proxyClass = generateProxy(clazz, mixins);
-            classnameMap.put(clazz.getName(), proxyClass);
-            proxyCache.put(clazz, new WeakReference(proxyClass));
-            HashMap map = methodMap(clazz);
-            methodMapCache.put(proxyClass, map);
+            Class proxyClass = generateProxy(proxiedClass, mixins);
+            HashMap map = methodMap(proxiedClass);
+            synchronized (maplock)
+            {
+               classnameMap.put(proxiedClass.getName(), proxyClass);
+               methodMapCache.put(proxyClass, map);
+            }
+            return proxyClass;
          }
-      }
-      return proxyClass;
+      });
+   }
+
+   public static ProxyClassCache getProxyClassCache()
+   {
+      return proxyCache;
    }
 
    public static ClassProxy newInstance(Class clazz, ProxyMixin[] mixins, InstanceAdvisor advisor) throws Exception
@@ -117,9 +122,20 @@ public class ClassProxyFactory
    {
       HashMap map = getMethodMap(clazz.getName());
       if (map != null) return map;
+      synchronized (maplock)
+      {
+         SoftReference ref = (SoftReference) methodMapsByClass.get(clazz);
+         if (ref != null) map = (HashMap) ref.get();
+      }
+      if (map != null) return map;
       try
       {
-         return methodMap(clazz);
+         map = methodMap(clazz);
+         synchronized (maplock)
+         {
+            methodMapsByClass.put(clazz, new SoftReference(map));
+         }
+         return map;
       }
       catch (Exception e)
       {
@@ -129,13 +145,18 @@ public class ClassProxyFactory
 
    private static int counter = 0;
 
+   private static synchronized int nextCounter()
+   {
+      return counter++;
+   }
+
    private static CtClass createProxyCtClass(ProxyMixin[] mixins, Class clazz)
    throws Exception
    {
       ClassPool pool = AspectManager.instance().findClassPool(clazz.getClassLoader());
       if (pool == null) throw new NullPointerException("Could not find ClassPool");
 
-      String classname = "AOPClassProxy$" + counter++;
+      String classname = "AOPClassProxy$" + nextCounter();
 
       CtClass template = pool.get("org.jboss.aop.proxy.ClassProxyTemplate");
       CtClass superclass = pool.get(clazz.getName());
@@ -0,0 +1,178 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.proxy;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import EDU.oswego.cs.dl.util.concurrent.Callable;
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+import EDU.oswego.cs.dl.util.concurrent.FutureResult;
+import EDU.oswego.cs.dl.util.concurrent.SynchronizedLong;
+
+/**
+ * Cache of generated proxy classes, held per proxied class in a weak map. Each key is generated
+ * once: threads asking for a class that is being generated wait for that generation only, so
+ * different proxies are generated in parallel and classes that exist are returned without
+ * locking.
+ *
+ * @version $Revision$
+ */
+public class ProxyClassCache
+{
+   private boolean weakProxyClasses;
+   /** Class -> ConcurrentReaderHashMap(key -> proxy class, WeakReference to it or FutureResult while generating) */
+   private WeakHashMap proxyClasses = new WeakHashMap();
+   private SynchronizedLong hits = new SynchronizedLong(0);
+   private SynchronizedLong misses = new SynchronizedLong(0);
+   private SynchronizedLong generationTime = new SynchronizedLong(0);
+
+   /**
+    * @param weakProxyClasses true if the proxy classes should only be held weakly, they are
+    *        generated again once they have been collected
+    */
+   public ProxyClassCache(boolean weakProxyClasses)
+   {
+      this.weakProxyClasses = weakProxyClasses;
+   }
+
+   /**
+    * @param clazz the proxied class
+    * @param key identifies the proxy among the ones for the proxied class
+    * @param generator creates the proxy class if it is not cached
+    */
+   public Class getProxyClass(Class clazz, Object key, Callable generator) throws Exception
+   {
+      Map classes;
+      synchronized (proxyClasses)
+      {
+         classes = (Map) proxyClasses.get(clazz);
+         if (classes == null)
+         {
+            classes = new ConcurrentReaderHashMap();
+            proxyClasses.put(clazz, classes);
+         }
+      }
+
+      while (true)
+      {
+         Object entry = classes.get(key);
+         if (entry == null)
+         {
+            FutureResult future = new FutureResult();
+            synchronized (classes)
+            {
+               entry = classes.get(key);
+               if (entry == null) classes.put(key, future);
+            }
+            if (entry == null) return generate(classes, key, future, generator);
+         }
+
+         Class proxyClass = getProxyClass(entry);
+         if (proxyClass != null)
+         {
+            hits.increment();
+            return proxyClass;
+         }
+
+         // The proxy class has been collected
+         synchronized (classes)
+         {
+            if (classes.get(key) == entry) classes.remove(key);
+         }
+      }
+   }
+
+   private Class generate(Map classes, Object key, FutureResult future, Callable generator) throws Exception
+   {
+      misses.increment();
+      long start = System.currentTimeMillis();
+      try
+      {
+         Class proxyClass = (Class) generator.call();
+         Object entry = weakProxyClasses ? (Object) new WeakReference(proxyClass) : proxyClass;
+         classes.put(key, entry);
+         future.set(entry);
+         return proxyClass;
+      }
+      catch (Throwable t)
+      {
+         // Let the next caller try again
+         classes.remove(key);
+         future.setException(t);
+         if (t instanceof Exception) throw (Exception) t;
+         throw (Error) t;
+      }
+      finally
+      {
+         generationTime.add(System.currentTimeMillis() - start);
+      }
+   }
+
+   private Class getProxyClass(Object entry) throws Exception
+   {
+      if (entry instanceof FutureResult)
+      {
+         try
+         {
+            entry = ((FutureResult) entry).get();
+         }
+         catch (InvocationTargetException e)
+         {
+            Throwable t = e.getTargetException();
+            if (t instanceof Exception) throw (Exception) t;
+            throw (Error) t;
+         }
+      }
+      if (entry instanceof WeakReference)
+      {
+         return (Class) ((WeakReference) entry).get();
+      }
+      return (Class) entry;
+   }
+
+   /**
+    * @return the number of requests answered by a proxy class that was generated before, or by another thread
+    */
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return the number of proxy classes generated
+    */
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @return the time spent generating proxy classes in milliseconds
+    */
+   public long getGenerationTime()
+   {
+      return generationTime.get();
+   }
+}
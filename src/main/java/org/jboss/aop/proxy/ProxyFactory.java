@@ -49,6 +49,11 @@ public class ProxyFactory
    private static long counter = 0;
    private static WeakValueHashMap proxyCache = new WeakValueHashMap();
 
+   private static synchronized long nextCounter()
+   {
+      return counter++;
+   }
+
    public static Proxy createInterfaceProxy(ClassLoader loader, Class[] interfaces, ProxyMixin[] mixins, InstanceAdvisor advisor) throws Exception
    {
       Class clazz = createProxyClass(loader, mixins, interfaces);
@@ -139,7 +144,7 @@ public class ProxyFactory
       ClassPool pool = AspectManager.instance().findClassPool(loader);
       if (pool == null) throw new NullPointerException("Could not find ClassPool");
 
-      String classname = "AOPProxy$" + counter++;
+      String classname = "AOPProxy$" + nextCounter();
 
       CtClass base = pool.get("org.jboss.aop.proxy.Proxy");
       CtClass proxy = pool.makeClass(classname, base);
@@ -28,7 +28,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -48,8 +47,11 @@ import org.jboss.aop.ClassContainer;
 import org.jboss.aop.InstanceAdvised;
 import org.jboss.aop.MethodInfo;
 import org.jboss.aop.introduction.InterfaceIntroduction;
+import org.jboss.aop.proxy.ProxyClassCache;
 import org.jboss.aop.util.JavassistMethodHashing;
 
+import EDU.oswego.cs.dl.util.concurrent.Callable;
+
 
 /**
  * @author <a href="mailto:bill@jboss.org">Bill Burke</a>
@@ -62,9 +64,8 @@ public class ContainerProxyFactory
    private static final CtClass[] EMPTY_CTCLASS_ARRAY = new CtClass[0];
    public static final String PROXY_NAME_PREFIX = "AOPContainerProxy$";
    
-   private static Object maplock = new Object();
-   private static WeakHashMap proxyCache = new WeakHashMap();
-   private static volatile int counter = 0;
+   private static ProxyClassCache proxyCache = new ProxyClassCache(false);
+   private static int counter = 0;
 
 
    /** True if java.lang.Object should be used as the super class for this proxy */
@@ -95,34 +96,26 @@ public class ContainerProxyFactory
       return getProxyClass(false, key, container);
    }
    
-   public static Class getProxyClass(boolean objectAsSuper, ContainerProxyCacheKey key, Advisor advisor)
+   public static Class getProxyClass(final boolean objectAsSuper, ContainerProxyCacheKey key, final Advisor advisor)
            throws Exception
    {
       Class clazz = key.getClazz();
       // Don't make a proxy of a proxy !
       if (Delegate.class.isAssignableFrom(clazz)) clazz = clazz.getSuperclass();
 
-      Class proxyClass = null;
-      synchronized (maplock)
+      final Class proxiedClass = clazz;
+      return proxyCache.getProxyClass(proxiedClass, key, new Callable()
       {
-         Map map = (Map)proxyCache.get(clazz);
-         if (map == null)
-         {
-            map = new HashMap();
-            proxyCache.put(clazz, map);
-         }
-         else
+         public Object call() throws Exception
          {
-            proxyClass = (Class) map.get(key);
+            return generateProxy(objectAsSuper, proxiedClass, advisor);
          }
-         
-         if (proxyClass == null)
-         {
-            proxyClass = generateProxy(objectAsSuper, clazz, advisor);
-            map.put(key, proxyClass);
-         }
-      }
-      return proxyClass;
+      });
+   }
+
+   public static ProxyClassCache getProxyClassCache()
+   {
+      return proxyCache;
    }
 
    private static Class generateProxy(boolean objectAsSuper, Class clazz, Advisor advisor) throws Exception
@@ -603,7 +596,12 @@ public class ContainerProxyFactory
          packageName = "";
       }
       
-      return packageName + PROXY_NAME_PREFIX + counter++;
+      return packageName + PROXY_NAME_PREFIX + nextCounter();
+   }
+
+   private static synchronized int nextCounter()
+   {
+      return counter++;
    }
 
    private void overrideSpecialMethods(Class clazz, CtClass proxy) throws Exception
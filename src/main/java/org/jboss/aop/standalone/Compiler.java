@@ -35,14 +35,26 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
 
+import javassist.ClassPool;
+import javassist.CtClass;
 import javassist.bytecode.ClassFile;
 
 import org.jboss.aop.AspectManager;
 import org.jboss.aop.Deployment;
+import org.jboss.aop.GeneratedClassAdvisor;
+import org.jboss.aop.instrument.GeneratedAdvisorInstrumentor;
+import org.jboss.aop.instrument.Instrumentor;
+import org.jboss.aop.instrument.InstrumentorFactory;
+import org.jboss.aop.instrument.JoinPointGenerator;
 import org.jboss.aop.instrument.TransformationException;
 
 /**
@@ -72,6 +84,9 @@ public class Compiler
    public boolean verbose = false;
    public boolean suppress = true;
    public boolean optimized = true;
+   public int threads = 1;
+   public File manifestFile;
+   public boolean joinpoints = false;
 
    public boolean isJarFile(File src)
    {
@@ -104,7 +119,7 @@ public class Compiler
 
    public void usage()
    {
-      System.err.println("Usage: aopc [-cp <classpath>] [-classpath <classpath>] [-report] [-noopt] [-verbose] [-aoppath <xml files>] <dir>+");
+      System.err.println("Usage: aopc [-cp <classpath>] [-classpath <classpath>] [-report] [-noopt] [-verbose] [-aoppath <xml files>] [-threads <count>] [-incremental <manifest file>] [-joinpoints] <dir>+");
    }
 
    // Make public and static so that transformers can locate it to do work
@@ -146,6 +161,33 @@ public class Compiler
             report = true;
             continue;
          }
+         else if (args[i].equals("-joinpoints"))
+         {
+            joinpoints = true;
+            continue;
+         }
+         else if (args[i].equals("-threads"))
+         {
+            if (i + 1 > args.length - 1)
+            {
+               usage();
+               System.exit(1);
+               return;
+            }
+            threads = Integer.parseInt(args[++i]);
+            continue;
+         }
+         else if (args[i].equals("-incremental"))
+         {
+            if (i + 1 > args.length - 1)
+            {
+               usage();
+               System.exit(1);
+               return;
+            }
+            manifestFile = new File(args[++i]).getCanonicalFile();
+            continue;
+         }
          else if (args[i].equals("-cp") || args[i].equals("-classpath"))
          {
             if (i + 1 > args.length - 1)
@@ -184,7 +226,7 @@ public class Compiler
       }
 
 
-      URL[] urls = (URL[]) paths.toArray(new URL[paths.size()]);
+      urls = (URL[]) paths.toArray(new URL[paths.size()]);
       loader = new URLClassLoader(urls, Thread.currentThread().getContextClassLoader());
 
       Thread.currentThread().setContextClassLoader(loader);
@@ -226,18 +268,260 @@ public class Compiler
             }
          }
 
-         //Compile each class
-         for (Iterator it = classesToCompile.keySet().iterator() ; it.hasNext() ; )
+         if (manifestFile != null)
+         {
+            manifest = new CompilerManifest(manifestFile, loader, optimized);
+            HashMap classFiles = new HashMap();
+            for (Iterator it = classesToCompile.values().iterator() ; it.hasNext() ; )
+            {
+               CompilerClassInfo info = (CompilerClassInfo)it.next();
+               classFiles.put(info.getClassName(), new File(URLDecoder.decode(info.getFile().toString(), "UTF-8")));
+            }
+            manifest.invalidateDependents(classFiles);
+            manifest.restoreOriginals(classFiles);
+         }
+
+         try
+         {
+            if (threads > 1)
+            {
+               compileParallel();
+            }
+            else
+            {
+               //Compile each class
+               for (Iterator it = classesToCompile.keySet().iterator() ; it.hasNext() ; )
+               {
+                  String className = (String)it.next();
+                  CompilerClassInfo info = (CompilerClassInfo)classesToCompile.get(className);
+                  compileFile(info);
+               }
+            }
+         }
+         catch (Exception e)
+         {
+            discardWovenClasses();
+            throw e;
+         }
+         moveWovenClasses();
+
+         if (joinpoints && GeneratedAdvisorInstrumentor.class.getName().equals(InstrumentorFactory.getInstrumentorName()))
+         {
+            generateJoinPointClasses();
+         }
+
+         if (manifest != null)
          {
-            String className = (String)it.next();
-            CompilerClassInfo info = (CompilerClassInfo)classesToCompile.get(className);
-            compileFile(info);
+            manifest.store();
          }
       }
    }
 
    private HashMap classesToCompile = new HashMap();
+   private ArrayList wovenClasses = new ArrayList();
+   private URL[] urls;
+   private CompilerManifest manifest;
+
+   /**
+    * Splits the classes into groups sharing the same topmost superclass within the
+    * classes to compile, so that a class is always woven after its superclasses by
+    * the same worker. The groups are handed out to the worker threads, each of which
+    * has its own classloader and hence its own AOPClassPool, while the AspectManager
+    * is shared. The woven classes are staged until all workers are done, so every
+    * worker reads the original class files.
+    */
+   private void compileParallel() throws Exception
+   {
+      HashMap groupsByRoot = new HashMap();
+      for (Iterator it = classesToCompile.values().iterator() ; it.hasNext() ; )
+      {
+         CompilerClassInfo info = (CompilerClassInfo)it.next();
+         CompilerClassInfo root = info;
+         CompilerClassInfo superInfo = (CompilerClassInfo)classesToCompile.get(root.getSuperClassName());
+         while (superInfo != null && superInfo != info)
+         {
+            root = superInfo;
+            superInfo = (CompilerClassInfo)classesToCompile.get(root.getSuperClassName());
+         }
+         ArrayList group = (ArrayList)groupsByRoot.get(root.getClassName());
+         if (group == null)
+         {
+            group = new ArrayList();
+            groupsByRoot.put(root.getClassName(), group);
+         }
+         group.add(info);
+      }
+
+      //Start with the biggest groups so that the workers finish at about the same time
+      final ArrayList groups = new ArrayList(groupsByRoot.values());
+      Collections.sort(groups, new Comparator()
+      {
+         public int compare(Object o1, Object o2)
+         {
+            return ((ArrayList)o2).size() - ((ArrayList)o1).size();
+         }
+      });
+
+      final Exception[] failure = new Exception[1];
+      Thread[] workers = new Thread[Math.min(threads, groups.size())];
+      for (int i = 0 ; i < workers.length ; i++)
+      {
+         final URLClassLoader workerLoader = new URLClassLoader(urls, loader.getParent());
+         workers[i] = new Thread("aopc-" + i)
+         {
+            public void run()
+            {
+               Thread.currentThread().setContextClassLoader(workerLoader);
+               try
+               {
+                  while (true)
+                  {
+                     ArrayList group;
+                     synchronized (groups)
+                     {
+                        if (groups.isEmpty() || failure[0] != null) return;
+                        group = (ArrayList)groups.remove(0);
+                     }
+                     for (int j = 0 ; j < group.size() ; j++)
+                     {
+                        compileFile((CompilerClassInfo)group.get(j), workerLoader);
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  synchronized (groups)
+                  {
+                     if (failure[0] == null) failure[0] = e;
+                  }
+               }
+               finally
+               {
+                  AspectManager.instance().unregisterClassLoader(workerLoader);
+               }
+            }
+         };
+         workers[i].start();
+      }
+      for (int i = 0 ; i < workers.length ; i++)
+      {
+         workers[i].join();
+      }
+      if (failure[0] != null)
+      {
+         throw failure[0];
+      }
+   }
    
+   /**
+    * Woven classes are written next to the original class file with this suffix, and
+    * only moved into place once every class has been processed. This way all classes
+    * are woven from the original class files, even when another worker has already
+    * finished with a class that is read again.
+    */
+   private static final String STAGING_SUFFIX = ".aopc";
+
+   private static File getStagingFile(File classFile)
+   {
+      return new File(classFile.getPath() + STAGING_SUFFIX);
+   }
+
+   private void moveWovenClasses() throws IOException
+   {
+      for (int i = 0 ; i < wovenClasses.size() ; i++)
+      {
+         CompilerClassInfo info = (CompilerClassInfo)wovenClasses.get(i);
+         File classFile = info.getOutputFile();
+         File stagingFile = getStagingFile(classFile);
+         if (!stagingFile.renameTo(classFile))
+         {
+            //Some platforms do not allow renaming onto an existing file
+            if (!classFile.delete() || !stagingFile.renameTo(classFile))
+            {
+               throw new IOException("Unable to move " + stagingFile + " to " + classFile);
+            }
+         }
+         if (verbose) System.out.println("[compiled] " + info.getFile());
+         if (manifest != null)
+         {
+            manifest.record(info.getClassName(), classFile, getCompiledDependencies(info));
+         }
+      }
+   }
+
+   private void discardWovenClasses()
+   {
+      for (int i = 0 ; i < wovenClasses.size() ; i++)
+      {
+         CompilerClassInfo info = (CompilerClassInfo)wovenClasses.get(i);
+         getStagingFile(info.getOutputFile()).delete();
+      }
+   }
+
+   /**
+    * Loads the woven classes and writes out the joinpoint classes for the bindings their
+    * advisors end up with, so that they do not have to be generated on the first invocation
+    * of each joinpoint at runtime. This runs the static initializers of the woven classes.
+    * A joinpoint class is only used at runtime if the bindings of its joinpoint are the
+    * same, otherwise the joinpoint class is generated as usual.
+    */
+   private void generateJoinPointClasses() throws Exception
+   {
+      URLClassLoader wovenLoader = new URLClassLoader(urls, loader.getParent());
+      Thread.currentThread().setContextClassLoader(wovenLoader);
+      try
+      {
+         ClassPool pool = AspectManager.instance().findClassPool(wovenLoader);
+         for (int i = 0 ; i < wovenClasses.size() ; i++)
+         {
+            CompilerClassInfo info = (CompilerClassInfo)wovenClasses.get(i);
+            try
+            {
+               generateJoinPointClasses(info, wovenLoader, pool);
+            }
+            catch (Throwable e)
+            {
+               System.out.println("[warning] Unable to generate joinpoint classes for " + info.getClassName() + ", they will be generated at runtime: " + e);
+            }
+         }
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(loader);
+         AspectManager.instance().unregisterClassLoader(wovenLoader);
+      }
+   }
+
+   private void generateJoinPointClasses(CompilerClassInfo info, ClassLoader wovenLoader, ClassPool pool) throws Exception
+   {
+      Class clazz = wovenLoader.loadClass(info.getClassName());
+      if (!org.jboss.aop.Advised.class.isAssignableFrom(clazz))
+      {
+         return;
+      }
+      Field f = clazz.getDeclaredField(Instrumentor.HELPER_FIELD_NAME);
+      f.setAccessible(true);
+      Object advisor = f.get(null);
+      if (!(advisor instanceof GeneratedClassAdvisor))
+      {
+         return;
+      }
+
+      String path = info.getFile().getPath();
+      File root = new File(path.substring(0, path.length() - (info.getClassName().length() + ".class".length())));
+      List generators = ((GeneratedClassAdvisor)advisor).getJoinPointGenerators();
+      for (int j = 0 ; j < generators.size() ; j++)
+      {
+         CtClass joinpoint = ((JoinPointGenerator)generators.get(j)).createPregeneratedClass(pool);
+         if (joinpoint != null)
+         {
+            joinpoint.writeFile(root.getPath());
+            joinpoint.detach();
+            if (verbose) System.out.println("[joinpoint] " + joinpoint.getName());
+         }
+      }
+   }
+
    private void addDirectory(File dir) throws Exception
    {
       File[] directories = dir.listFiles(directoryFilter);
@@ -259,8 +543,37 @@ public class Compiler
       String className = cf.getName();
       String superClassName = cf.getSuperclass();
       CompilerClassInfo info = new CompilerClassInfo(file, className, superClassName);
+      if (manifestFile != null)
+      {
+         //The supertypes are in the constant pool as well
+         HashSet referenced = new HashSet();
+         for (Iterator it = cf.getConstPool().getClassNames().iterator() ; it.hasNext() ; )
+         {
+            referenced.add(((String)it.next()).replace('/', '.'));
+         }
+         referenced.remove(className);
+         info.setReferencedClasses(referenced);
+      }
       classesToCompile.put(className, info);
    }
+
+   /**
+    * @return the classes being compiled that the class extends, implements or references
+    */
+   private List getCompiledDependencies(CompilerClassInfo info)
+   {
+      ArrayList dependencies = new ArrayList();
+      for (Iterator it = info.getReferencedClasses().iterator() ; it.hasNext() ; )
+      {
+         String className = (String)it.next();
+         if (classesToCompile.containsKey(className))
+         {
+            dependencies.add(className);
+         }
+      }
+      Collections.sort(dependencies);
+      return dependencies;
+   }
    
    private ClassFile createClassFile(final File file) throws Exception{
       DataInputStream is = new DataInputStream(new FileInputStream(file));
@@ -312,6 +625,11 @@ public class Compiler
    }
 
    public void compileFile(CompilerClassInfo info) throws Exception
+   {
+      compileFile(info, loader);
+   }
+
+   private void compileFile(CompilerClassInfo info, URLClassLoader loader) throws Exception
    {
       if (info.isCompiled())
       {
@@ -323,9 +641,15 @@ public class Compiler
          CompilerClassInfo superInfo = (CompilerClassInfo)classesToCompile.get(info.getSuperClassName());
          if (superInfo != null)
          {
-            compileFile(superInfo);
+            compileFile(superInfo, loader);
          }
       }
+      weaveFile(info, loader);
+      info.setCompiled(true);
+   }
+
+   private void weaveFile(CompilerClassInfo info, URLClassLoader loader) throws Exception
+   {
       //System.err.println("[classname] " + className);
       URL classUrl = loader.getResource(info.getClassName().replace('.', '/') + ".class");
       if (classUrl == null)
@@ -342,17 +666,43 @@ public class Compiler
          System.out.println("[warning] Trying to compile " + info.getFile() + " and found it also within " + classUrl.getFile() + " will not proceed. ");
          return;
       }
+      if (manifest != null && manifest.isUpToDate(info.getClassName(), infoFile))
+      {
+         if (verbose) System.out.println("[up to date] " + info.getFile());
+         return;
+      }
       byte[] bytes = AspectManager.instance().transform(loader, info.getClassName(), null, null, null);
       if (bytes == null)
       {
          if (verbose) System.out.println("[no comp needed] " + info.getFile());
-         return;
+         if (manifest != null)
+         {
+            manifest.removeOriginal(info.getClassName());
+            manifest.record(info.getClassName(), infoFile, getCompiledDependencies(info));
+         }
+      }
+      else
+      {
+         if (manifest != null)
+         {
+            //The class file is only replaced once all classes are done
+            manifest.saveOriginal(info.getClassName(), infoFile);
+         }
+         info.setOutputFile(infoFile);
+         synchronized (wovenClasses)
+         {
+            wovenClasses.add(info);
+         }
+         FileOutputStream os = new FileOutputStream(getStagingFile(infoFile));
+         try
+         {
+            os.write(bytes);
+         }
+         finally
+         {
+            os.close();
+         }
       }
-      FileOutputStream os = new FileOutputStream(infoFile);
-      os.write(bytes);
-      os.close();
-      info.setCompiled(true);
-      if (verbose) System.out.println("[compiled] " + info.getFile());
    }
 
    private class CompilerClassInfo
@@ -361,6 +711,8 @@ public class Compiler
       String className;
       String superClassName;
       boolean compiled;
+      File outputFile;
+      Set referencedClasses = Collections.EMPTY_SET;
       
       CompilerClassInfo(File file, String className, String superClassName)
       {
@@ -384,6 +736,26 @@ public class Compiler
          this.compiled = compiled;
       }
 
+      public File getOutputFile()
+      {
+         return outputFile;
+      }
+
+      public void setOutputFile(File outputFile)
+      {
+         this.outputFile = outputFile;
+      }
+
+      public Set getReferencedClasses()
+      {
+         return referencedClasses;
+      }
+
+      public void setReferencedClasses(Set referencedClasses)
+      {
+         this.referencedClasses = referencedClasses;
+      }
+
       public String getClassName()
       {
          return className;
@@ -0,0 +1,441 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.standalone;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+import org.jboss.aop.AspectManager;
+
+/**
+ * Content hash manifest used by incremental aopc runs. It records a digest of the
+ * aspect definitions (jboss.aop.path, jboss.aop.class.path and the META-INF/jboss-aop.xml
+ * files on the classpath) together with a digest of every class file as it was left
+ * by the previous run. A class whose file still has the recorded digest has not been
+ * recompiled by javac since, so it does not need to be woven again.
+ * <p/>
+ * The supertypes and referenced classes of every class are recorded as well, so that
+ * a class is woven again when a class it depends on is, even if its own file has
+ * not changed.
+ * <p/>
+ * aopc writes the woven classes over the original ones, and already woven classes
+ * are not woven again. So the original of every woven class is kept in a directory
+ * next to the manifest, and put back before a class that was woven by the previous
+ * run is woven again.
+ * <p/>
+ * If the aspect definitions have changed the old entries are discarded and every
+ * class is processed again.
+ *
+ * @version $Revision$
+ */
+class CompilerManifest
+{
+   private static final String DEFINITIONS_KEY = "aop.definitions";
+   private static final String CLASS_PREFIX = "class.";
+   private static final String DEPENDS_PREFIX = "depends.";
+
+   private static ThreadLocal digests = new ThreadLocal();
+
+   private File file;
+   private File originals;
+   private String definitionsHash;
+   private Properties entries = new Properties();
+   /** The entries of the previous run, even if the aspect definitions have changed since */
+   private Properties previousEntries = new Properties();
+
+   CompilerManifest(File file, ClassLoader loader, boolean optimized) throws Exception
+   {
+      this.file = file;
+      this.originals = new File(file.getPath() + ".originals");
+      this.definitionsHash = hashDefinitions(loader, optimized);
+
+      if (file.exists())
+      {
+         Properties old = new Properties();
+         FileInputStream in = new FileInputStream(file);
+         try
+         {
+            old.load(in);
+         }
+         finally
+         {
+            in.close();
+         }
+         previousEntries = (Properties)old.clone();
+         if (definitionsHash.equals(old.getProperty(DEFINITIONS_KEY)))
+         {
+            entries = old;
+         }
+         else if (AspectManager.verbose)
+         {
+            System.out.println("[aopc] aspect definitions changed, ignoring manifest " + file);
+         }
+      }
+      entries.setProperty(DEFINITIONS_KEY, definitionsHash);
+   }
+
+   /**
+    * Discards the entries of the classes whose files have changed, and of all classes
+    * depending on them directly or indirectly, so that they are all woven again.
+    *
+    * @param classFiles the class files to compile keyed by class name
+    */
+   void invalidateDependents(Map classFiles) throws IOException
+   {
+      HashSet stale = new HashSet();
+      for (Iterator it = classFiles.entrySet().iterator() ; it.hasNext() ; )
+      {
+         Map.Entry entry = (Map.Entry)it.next();
+         String className = (String)entry.getKey();
+         if (!isUpToDate(className, (File)entry.getValue()))
+         {
+            stale.add(className);
+         }
+      }
+      if (stale.isEmpty())
+      {
+         return;
+      }
+
+      HashMap dependents = new HashMap();
+      for (Iterator it = entries.keySet().iterator() ; it.hasNext() ; )
+      {
+         String key = (String)it.next();
+         if (!key.startsWith(DEPENDS_PREFIX)) continue;
+         String className = key.substring(DEPENDS_PREFIX.length());
+         StringTokenizer t = new StringTokenizer(entries.getProperty(key), ",");
+         while (t.hasMoreTokens())
+         {
+            String dependency = t.nextToken();
+            ArrayList list = (ArrayList)dependents.get(dependency);
+            if (list == null)
+            {
+               list = new ArrayList();
+               dependents.put(dependency, list);
+            }
+            list.add(className);
+         }
+      }
+
+      ArrayList pending = new ArrayList(stale);
+      while (!pending.isEmpty())
+      {
+         ArrayList list = (ArrayList)dependents.get(pending.remove(pending.size() - 1));
+         if (list == null) continue;
+         for (int i = 0 ; i < list.size() ; i++)
+         {
+            String className = (String)list.get(i);
+            if (stale.add(className))
+            {
+               if (AspectManager.verbose) System.out.println("[aopc] " + className + " depends on a changed class");
+               pending.add(className);
+            }
+         }
+      }
+
+      for (Iterator it = stale.iterator() ; it.hasNext() ; )
+      {
+         String className = (String)it.next();
+         entries.remove(CLASS_PREFIX + className);
+         entries.remove(DEPENDS_PREFIX + className);
+      }
+   }
+
+   /**
+    * Puts back the original of every class that is to be woven again although its file
+    * is still the one woven by the previous run
+    *
+    * @param classFiles the class files to compile keyed by class name
+    */
+   void restoreOriginals(Map classFiles) throws IOException
+   {
+      for (Iterator it = classFiles.entrySet().iterator() ; it.hasNext() ; )
+      {
+         Map.Entry entry = (Map.Entry)it.next();
+         String className = (String)entry.getKey();
+         File classFile = (File)entry.getValue();
+         if (isUpToDate(className, classFile)) continue;
+         String previous = previousEntries.getProperty(CLASS_PREFIX + className);
+         if (previous == null || !previous.equals(hashFile(classFile))) continue;
+         File original = getOriginal(className);
+         if (original.exists())
+         {
+            if (AspectManager.verbose) System.out.println("[aopc] restoring original of " + className);
+            copy(original, classFile);
+         }
+      }
+   }
+
+   /**
+    * Keeps a copy of the class file before it is replaced by the woven class
+    */
+   void saveOriginal(String className, File classFile) throws IOException
+   {
+      copy(classFile, getOriginal(className));
+   }
+
+   /**
+    * Forgets the original of a class that does not need weaving any more
+    */
+   void removeOriginal(String className)
+   {
+      getOriginal(className).delete();
+   }
+
+   private File getOriginal(String className)
+   {
+      return new File(originals, className + ".class");
+   }
+
+   private static void copy(File from, File to) throws IOException
+   {
+      to.getParentFile().mkdirs();
+      FileInputStream in = new FileInputStream(from);
+      try
+      {
+         FileOutputStream out = new FileOutputStream(to);
+         try
+         {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+               out.write(buffer, 0, read);
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * @return true if the class file has not changed since it was recorded
+    */
+   boolean isUpToDate(String className, File classFile) throws IOException
+   {
+      String recorded = entries.getProperty(CLASS_PREFIX + className);
+      return recorded != null && recorded.equals(hashFile(classFile));
+   }
+
+   /**
+    * Records the current contents of the class file
+    *
+    * @param dependencies the names of the compiled classes this class extends, implements or references
+    */
+   void record(String className, File classFile, Collection dependencies) throws IOException
+   {
+      String hash = hashFile(classFile);
+      StringBuffer buf = new StringBuffer();
+      for (Iterator it = dependencies.iterator() ; it.hasNext() ; )
+      {
+         if (buf.length() > 0) buf.append(',');
+         buf.append(it.next());
+      }
+      synchronized (entries)
+      {
+         entries.setProperty(CLASS_PREFIX + className, hash);
+         entries.setProperty(DEPENDS_PREFIX + className, buf.toString());
+      }
+   }
+
+   void store() throws IOException
+   {
+      FileOutputStream out = new FileOutputStream(file);
+      try
+      {
+         entries.store(out, "aopc incremental manifest");
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   private static String hashDefinitions(ClassLoader loader, boolean optimized) throws IOException
+   {
+      MessageDigest digest = getDigest();
+      update(digest, "optimized=" + optimized);
+      update(digest, "instrumentor=" + System.getProperty("jboss.aop.instrumentor"));
+
+      String path = System.getProperty("jboss.aop.path", null);
+      if (path != null)
+      {
+         StringTokenizer t = new StringTokenizer(path, File.pathSeparator);
+         while (t.hasMoreTokens())
+         {
+            File f = new File(t.nextToken());
+            if (f.isDirectory())
+            {
+               File[] files = f.listFiles();
+               Arrays.sort(files);
+               for (int i = 0; i < files.length; i++)
+               {
+                  if (files[i].getName().endsWith("aop.xml")) hashFile(digest, files[i]);
+               }
+            }
+            else
+            {
+               hashFile(digest, f);
+            }
+         }
+      }
+
+      String classPath = System.getProperty("jboss.aop.class.path", null);
+      if (classPath != null)
+      {
+         StringTokenizer t = new StringTokenizer(classPath, File.pathSeparator);
+         while (t.hasMoreTokens())
+         {
+            hashTree(digest, new File(t.nextToken()));
+         }
+      }
+
+      String search = System.getProperty("jboss.aop.search.classpath", null);
+      if (search == null || Boolean.valueOf(search).booleanValue())
+      {
+         Enumeration en = loader.getResources("META-INF/jboss-aop.xml");
+         while (en.hasMoreElements())
+         {
+            URL url = (URL) en.nextElement();
+            update(digest, url.toString());
+            InputStream in = url.openStream();
+            try
+            {
+               update(digest, in);
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+      }
+      return toHex(digest.digest());
+   }
+
+   private static void hashTree(MessageDigest digest, File f) throws IOException
+   {
+      if (f.isDirectory())
+      {
+         File[] files = f.listFiles();
+         Arrays.sort(files);
+         for (int i = 0; i < files.length; i++)
+         {
+            hashTree(digest, files[i]);
+         }
+      }
+      else if (f.exists())
+      {
+         hashFile(digest, f);
+      }
+   }
+
+   private static String hashFile(File f) throws IOException
+   {
+      MessageDigest digest = getDigest();
+      hashFile(digest, f);
+      return toHex(digest.digest());
+   }
+
+   private static void hashFile(MessageDigest digest, File f) throws IOException
+   {
+      update(digest, f.getPath());
+      if (!f.exists()) return;
+      FileInputStream in = new FileInputStream(f);
+      try
+      {
+         update(digest, in);
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   private static void update(MessageDigest digest, String s)
+   {
+      digest.update(s.getBytes());
+      digest.update((byte) 0);
+   }
+
+   private static void update(MessageDigest digest, InputStream in) throws IOException
+   {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+      {
+         digest.update(buffer, 0, read);
+      }
+   }
+
+   private static MessageDigest getDigest()
+   {
+      MessageDigest digest = (MessageDigest) digests.get();
+      if (digest == null)
+      {
+         try
+         {
+            digest = MessageDigest.getInstance("MD5");
+         }
+         catch (NoSuchAlgorithmException e)
+         {
+            throw new RuntimeException(e);
+         }
+         digests.set(digest);
+      }
+      digest.reset();
+      return digest;
+   }
+
+   private static String toHex(byte[] bytes)
+   {
+      StringBuffer buf = new StringBuffer(bytes.length * 2);
+      for (int i = 0; i < bytes.length; i++)
+      {
+         int b = bytes[i] & 0xff;
+         if (b < 0x10) buf.append('0');
+         buf.append(Integer.toHexString(b));
+      }
+      return buf.toString();
+   }
+}
@@ -31,6 +31,7 @@ import org.jboss.aop.advice.AbstractAdvice;
 import org.jboss.aop.advice.AdviceBinding;
 import org.jboss.aop.advice.CFlowInterceptor;
 import org.jboss.aop.advice.Interceptor;
+import org.jboss.aop.advice.InterceptorChainInterner;
 import org.jboss.aop.introduction.InterfaceIntroduction;
 import org.jboss.aop.metadata.ConstructorMetaData;
 import org.jboss.aop.metadata.FieldMetaData;
@@ -67,6 +68,7 @@ public class XmlReport
       pw.println("<aop-report>");
       outputPackage(1, pw, root);
       outputUnboundBindings(1, pw);
+      outputInterceptorChains(1, pw);
       pw.println("</aop-report>");
       pw.flush();
       return writer.toString();
@@ -436,6 +438,15 @@ public class XmlReport
       }
    }
 
+   public static void outputInterceptorChains(int indent, PrintWriter pw)
+   {
+      indenter(pw, indent);
+      pw.println("<interceptor-chains count=\"" + InterceptorChainInterner.getChainCount() +
+            "\" interned=\"" + InterceptorChainInterner.getInternedCount() +
+            "\" shared=\"" + InterceptorChainInterner.getSharedCount() +
+            "\" saved-bytes=\"" + InterceptorChainInterner.getSavedBytes() + "\" />");
+   }
+
    public static void outputMetadata(int indent, PrintWriter pw, ClassAdvisor advisor)
    {
       StringWriter sw = new StringWriter();
@@ -28,12 +28,6 @@ import javassist.NotFoundException;
 
 import org.jboss.aop.instrument.Instrumentor;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.security.DigestOutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 
 /**
@@ -48,28 +42,16 @@ import java.util.HashMap;
  */
 public class JavassistMethodHashing
 {
+   /**
+    * The hash only depends on the name and the descriptor of the method, so it is
+    * computed from those and cached by <code>MethodHashing.createHash()</code>
+    * rather than by resolving the parameter types.
+    */
    public static long methodHash(CtMethod method)
    {
       try
       {
-         CtClass[] parameterTypes = method.getParameterTypes();
-         String methodDesc = method.getName()+"(";
-         for(int j = 0; j < parameterTypes.length; j++)
-         {
-            methodDesc += getTypeString(parameterTypes[j]);
-         }
-         methodDesc += ")"+getTypeString(method.getReturnType());
-         
-         long hash = 0;
-         ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream(512);
-         MessageDigest messagedigest = MessageDigest.getInstance("SHA");
-         DataOutputStream dataoutputstream = new DataOutputStream(new DigestOutputStream(bytearrayoutputstream, messagedigest));
-         dataoutputstream.writeUTF(methodDesc);
-         dataoutputstream.flush();
-         byte abyte0[] = messagedigest.digest();
-         for(int j = 0; j < Math.min(8, abyte0.length); j++)
-            hash += (long)(abyte0[j] & 0xff) << j * 8;
-         return hash;
+         return MethodHashing.createHash(method.getName() + method.getSignature());
       }
       catch (Exception e)
       {
@@ -81,24 +63,9 @@ public class JavassistMethodHashing
    {
       try
       {
-         CtClass[] parameterTypes = method.getParameterTypes();
-         String methodDesc = method.getDeclaringClass().getName()+"(";
-         for(int j = 0; j < parameterTypes.length; j++)
-         {
-            methodDesc += getTypeString(parameterTypes[j]);
-         }
-         methodDesc += ")";
-
-         long hash = 0;
-         ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream(512);
-         MessageDigest messagedigest = MessageDigest.getInstance("SHA");
-         DataOutputStream dataoutputstream = new DataOutputStream(new DigestOutputStream(bytearrayoutputstream, messagedigest));
-         dataoutputstream.writeUTF(methodDesc);
-         dataoutputstream.flush();
-         byte abyte0[] = messagedigest.digest();
-         for(int j = 0; j < Math.min(8, abyte0.length); j++)
-            hash += (long)(abyte0[j] & 0xff) << j * 8;
-         return hash;
+         String signature = method.getSignature();
+         String methodDesc = method.getDeclaringClass().getName() + signature.substring(0, signature.lastIndexOf(')') + 1);
+         return MethodHashing.createHash(methodDesc);
       }
       catch (Exception e)
       {
@@ -106,45 +73,6 @@ public class JavassistMethodHashing
       }
    }
 
-   static String getTypeString(CtClass cl)
-      throws Exception
-   {
-      if (cl.equals(CtClass.byteType))
-      {
-         return "B";
-      } else if (cl.equals(CtClass.charType))
-      {
-         return "C";
-      } else if (cl.equals(CtClass.doubleType))
-      {
-         return "D";
-      } else if (cl.equals(CtClass.floatType))
-      {
-         return "F";
-      } else if (cl.equals(CtClass.intType))
-      {
-         return "I";
-      } else if (cl.equals(CtClass.longType))
-      {
-         return "J";
-      } else if (cl.equals(CtClass.shortType))
-      {
-         return "S";
-      } else if (cl.equals(CtClass.booleanType))
-      {
-         return "Z";
-      } else if (cl.equals(CtClass.voidType))
-      {
-         return "V";
-      } else if (cl.isArray())
-      {
-         return "["+getTypeString(cl.getComponentType());
-      } else
-      {
-         return "L"+cl.getName().replace('.','/')+";";
-      }
-   }
-   
    private static void addDeclaredMethods(HashMap advised, CtClass superclass) throws Exception
    {
       CtMethod[] declaredMethods = superclass.getDeclaredMethods();
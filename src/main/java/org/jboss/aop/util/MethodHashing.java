@@ -25,12 +25,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
-import java.security.DigestOutputStream;
+import java.lang.ref.SoftReference;
 import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+import gnu.trove.TLongObjectHashMap;
+
 /**
  * Create a unique hash for  
  * 
@@ -42,15 +45,65 @@ public class MethodHashing
    // Constants -----------------------------------------------------
    
    // Static --------------------------------------------------------
-   static Map hashMap = new WeakHashMap();
+   /**
+    * Hashes of the declared methods and constructors of a class. Values are soft
+    * references since the tables reference the class through its methods.
+    */
+   static Map classHashes = new WeakHashMap();
 
-   public static Method findMethodByHash(Class clazz, long hash) throws Exception
+   /** Hashes by method descriptor, shared by all classes */
+   static ConcurrentReaderHashMap descriptorHashes = new ConcurrentReaderHashMap();
+
+   static ThreadLocal digests = new ThreadLocal();
+
+   /**
+    * The hashes of the methods and constructors declared by a class
+    */
+   static class DeclaredHashes
    {
-      Method[] methods = clazz.getDeclaredMethods();
-      for (int i = 0; i < methods.length; i++)
+      TLongObjectHashMap methodsByHash = new TLongObjectHashMap();
+      HashMap hashesByMethod = new HashMap();
+      TLongObjectHashMap constructorsByHash = new TLongObjectHashMap();
+      HashMap hashesByConstructor = new HashMap();
+
+      DeclaredHashes(Class clazz) throws Exception
       {
-         if (methodHash(methods[i]) == hash) return methods[i];
+         Method[] methods = clazz.getDeclaredMethods();
+         for (int i = 0; i < methods.length; i++)
+         {
+            long hash = createHash(getMethodDescriptor(methods[i]));
+            methodsByHash.put(hash, methods[i]);
+            hashesByMethod.put(methods[i], new Long(hash));
+         }
+         Constructor[] cons = clazz.getDeclaredConstructors();
+         for (int i = 0; i < cons.length; i++)
+         {
+            long hash = createHash(getConstructorDescriptor(cons[i]));
+            constructorsByHash.put(hash, cons[i]);
+            hashesByConstructor.put(cons[i], new Long(hash));
+         }
       }
+   }
+
+   static DeclaredHashes getDeclaredHashes(Class clazz) throws Exception
+   {
+      synchronized (classHashes)
+      {
+         SoftReference ref = (SoftReference) classHashes.get(clazz);
+         DeclaredHashes hashes = (ref != null) ? (DeclaredHashes) ref.get() : null;
+         if (hashes == null)
+         {
+            hashes = new DeclaredHashes(clazz);
+            classHashes.put(clazz, new SoftReference(hashes));
+         }
+         return hashes;
+      }
+   }
+
+   public static Method findMethodByHash(Class clazz, long hash) throws Exception
+   {
+      Method method = (Method) getDeclaredHashes(clazz).methodsByHash.get(hash);
+      if (method != null) return method;
 
       if (clazz.isInterface())
       {
@@ -58,7 +111,7 @@ public class MethodHashing
          final int numInterfaces = interfaces.length ;
          for(int count = 0 ; count < numInterfaces ; count++)
          {
-            final Method method = findMethodByHash(interfaces[count], hash) ;
+            method = findMethodByHash(interfaces[count], hash) ;
             if (method != null)
             {
                return method ;
@@ -74,11 +127,8 @@ public class MethodHashing
 
    public static Constructor findConstructorByHash(Class clazz, long hash) throws Exception
    {
-      Constructor[] cons = clazz.getDeclaredConstructors();
-      for (int i = 0; i < cons.length; i++)
-      {
-         if (constructorHash(cons[i]) == hash) return cons[i];
-      }
+      Constructor con = (Constructor) getDeclaredHashes(clazz).constructorsByHash.get(hash);
+      if (con != null) return con;
       if (clazz.getSuperclass() != null)
       {
          return findConstructorByHash(clazz.getSuperclass(), hash);
@@ -88,54 +138,70 @@ public class MethodHashing
 
    public static long methodHash(Method method)
       throws Exception
+   {
+      Long hash = (Long) getDeclaredHashes(method.getDeclaringClass()).hashesByMethod.get(method);
+      if (hash != null) return hash.longValue();
+      return createHash(getMethodDescriptor(method));
+   }
+
+   static String getMethodDescriptor(Method method)
    {
       Class[] parameterTypes = method.getParameterTypes();
-      String methodDesc = method.getName()+"(";
+      StringBuffer methodDesc = new StringBuffer(method.getName()).append('(');
       for(int j = 0; j < parameterTypes.length; j++)
       {
-         methodDesc += getTypeString(parameterTypes[j]);
+         methodDesc.append(getTypeString(parameterTypes[j]));
       }
-      methodDesc += ")"+getTypeString(method.getReturnType());
-      return createHash(methodDesc);
+      methodDesc.append(')').append(getTypeString(method.getReturnType()));
+      return methodDesc.toString();
    }
-   
+
+   static String getConstructorDescriptor(Constructor con)
+   {
+      Class[] parameterTypes = con.getParameterTypes();
+      StringBuffer methodDesc = new StringBuffer(con.getName()).append('(');
+      for(int j = 0; j < parameterTypes.length; j++)
+      {
+         methodDesc.append(getTypeString(parameterTypes[j]));
+      }
+      methodDesc.append(')');
+      return methodDesc.toString();
+   }
+
+   /**
+    * Hashes the descriptor. The SHA digest is only computed the first time a
+    * descriptor is seen.
+    */
    public static long createHash(String methodDesc)
    	throws Exception
    {
+      Long cached = (Long) descriptorHashes.get(methodDesc);
+      if (cached != null) return cached.longValue();
+
       long hash = 0;
-      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream(512);
-      MessageDigest messagedigest = MessageDigest.getInstance("SHA");
-      DataOutputStream dataoutputstream = new DataOutputStream(new DigestOutputStream(bytearrayoutputstream, messagedigest));
+      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream(methodDesc.length() + 2);
+      DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
       dataoutputstream.writeUTF(methodDesc);
       dataoutputstream.flush();
-      byte abyte0[] = messagedigest.digest();
+      MessageDigest messagedigest = (MessageDigest) digests.get();
+      if (messagedigest == null)
+      {
+         messagedigest = MessageDigest.getInstance("SHA");
+         digests.set(messagedigest);
+      }
+      byte abyte0[] = messagedigest.digest(bytearrayoutputstream.toByteArray());
       for(int j = 0; j < Math.min(8, abyte0.length); j++)
          hash += (long)(abyte0[j] & 0xff) << j * 8;
+      descriptorHashes.put(methodDesc, new Long(hash));
       return hash;
-      
    }
 
    public static long constructorHash(Constructor method)
       throws Exception
    {
-      Class[] parameterTypes = method.getParameterTypes();
-      String methodDesc = method.getName()+"(";
-      for(int j = 0; j < parameterTypes.length; j++)
-      {
-         methodDesc += getTypeString(parameterTypes[j]);
-      }
-      methodDesc += ")";
-
-      long hash = 0;
-      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream(512);
-      MessageDigest messagedigest = MessageDigest.getInstance("SHA");
-      DataOutputStream dataoutputstream = new DataOutputStream(new DigestOutputStream(bytearrayoutputstream, messagedigest));
-      dataoutputstream.writeUTF(methodDesc);
-      dataoutputstream.flush();
-      byte abyte0[] = messagedigest.digest();
-      for(int j = 0; j < Math.min(8, abyte0.length); j++)
-         hash += (long)(abyte0[j] & 0xff) << j * 8;
-      return hash;
+      Long hash = (Long) getDeclaredHashes(method.getDeclaringClass()).hashesByConstructor.get(method);
+      if (hash != null) return hash.longValue();
+      return createHash(getConstructorDescriptor(method));
    }
 
    /**
@@ -212,20 +278,14 @@ public class MethodHashing
    */
    public static long calculateHash(Method method)
    {
-      Map methodHashes = (Map)hashMap.get(method.getDeclaringClass());
-      
-      if (methodHashes == null)
-      {
-         methodHashes = getInterfaceHashes(method.getDeclaringClass());
-         
-         // Copy and add
-         WeakHashMap newHashMap = new WeakHashMap();
-         newHashMap.putAll(hashMap);
-         newHashMap.put(method.getDeclaringClass(), methodHashes);
-         hashMap = newHashMap;
+      try
+      {
+         return methodHash(method);
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException(e);
       }
-      
-      return ((Long)methodHashes.get(method.toString())).longValue();
    }
 
 }
@@ -21,39 +21,43 @@
   */
 package org.jboss.aop.util;
 
-import java.util.ArrayList;
-
 /**
- * Comment
+ * A stack per thread. The stack is kept in an array owned by the thread, see
+ * {@link ThreadStack}, so push, pop and get only cost the thread local lookup.
  *
  * @author <a href="mailto:bill@jboss.org">Bill Burke</a>
  * @version $Revision: 37406 $
  */
 public class ThreadLocalStack
 {
-   private ThreadLocal local = new ThreadLocal();
-
-   public void push(Object obj)
+   private ThreadLocal local = new ThreadLocal()
    {
-      ArrayList stack = (ArrayList) local.get();
-      if (stack == null)
+      protected Object initialValue()
       {
-         stack = new ArrayList();
-         local.set(stack);
+         return new ThreadStack();
       }
-      stack.add(obj);
+   };
+
+   /**
+    * @return the stack of the current thread
+    */
+   public ThreadStack getStack()
+   {
+      return (ThreadStack) local.get();
+   }
+
+   public void push(Object obj)
+   {
+      getStack().push(obj);
    }
 
    public Object get()
    {
-      ArrayList stack = (ArrayList) local.get();
-      if (stack == null) return null;
-      return stack.get(stack.size() - 1);
+      return getStack().get();
    }
 
    public void pop()
    {
-      ArrayList stack = (ArrayList) local.get();
-      stack.remove(stack.size() - 1);
+      getStack().pop();
    }
 }
@@ -0,0 +1,83 @@
+/*
+  * JBoss, Home of Professional Open Source
+  * Copyright 2005, JBoss Inc., and individual contributors as indicated
+  * by the @authors tag. See the copyright.txt in the distribution for a
+  * full listing of individual contributors.
+  *
+  * This is free software; you can redistribute it and/or modify it
+  * under the terms of the GNU Lesser General Public License as
+  * published by the Free Software Foundation; either version 2.1 of
+  * the License, or (at your option) any later version.
+  *
+  * This software is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  * Lesser General Public License for more details.
+  *
+  * You should have received a copy of the GNU Lesser General Public
+  * License along with this software; if not, write to the Free
+  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+package org.jboss.aop.util;
+
+/**
+ * The stack of a single thread, handed out by {@link ThreadLocalStack#getStack()}.
+ * Callers that push and pop around a call can keep hold of it, so that only one
+ * thread local lookup is needed per call frame. Must only be used by the thread
+ * it belongs to.
+ *
+ * @version $Revision$
+ */
+public final class ThreadStack
+{
+   private static final int INITIAL_CAPACITY = 8;
+   /** Once emptied, stacks that grew beyond this capacity are shrunk again */
+   private static final int TRIM_CAPACITY = 64;
+
+   private Object[] elements = new Object[INITIAL_CAPACITY];
+   private int size;
+   private int highWaterMark;
+
+   public void push(Object obj)
+   {
+      if (size == elements.length)
+      {
+         Object[] newElements = new Object[elements.length * 2];
+         System.arraycopy(elements, 0, newElements, 0, size);
+         elements = newElements;
+      }
+      elements[size++] = obj;
+      if (size > highWaterMark) highWaterMark = size;
+   }
+
+   /**
+    * @return the top of the stack, or null if the stack is empty
+    */
+   public Object get()
+   {
+      return (size == 0) ? null : elements[size - 1];
+   }
+
+   public void pop()
+   {
+      if (size == 0) throw new IllegalStateException("Stack is empty");
+      elements[--size] = null;
+      if (size == 0 && highWaterMark > TRIM_CAPACITY)
+      {
+         // A deep recursion has come back out, don't keep the large array around
+         elements = new Object[INITIAL_CAPACITY];
+         highWaterMark = 0;
+      }
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+}